@@ -0,0 +1,87 @@
+package com.athaydes.rawhttp.benchmarks;
+
+import com.athaydes.rawhttp.core.BodyReader.BodyType;
+import com.athaydes.rawhttp.core.EagerBodyReader;
+import com.athaydes.rawhttp.core.body.ChunkedBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Eagerly reading HTTP message bodies of each {@link BodyType}, and encoding bodies with {@link ChunkedBody}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BodyBenchmark {
+
+    @Param({"CONTENT_LENGTH", "CHUNKED", "CLOSE_TERMINATED"})
+    public BodyType bodyType;
+
+    @Param({"1024", "65536"})
+    public int bodySize;
+
+    @Param({"8192"})
+    public int chunkLength;
+
+    private byte[] body;
+    private byte[] encodedBody;
+    private final byte[] sink = new byte[8192];
+
+    @Setup
+    public void setup() throws IOException {
+        // text content, as is typical of HTTP bodies
+        body = new byte[bodySize];
+        for (int i = 0; i < bodySize; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        encodedBody = bodyType == BodyType.CHUNKED ? encodeChunked() : body;
+    }
+
+    private byte[] encodeChunked() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bodySize + 64);
+        InputStream encoded = new ChunkedBody(null, new ByteArrayInputStream(body), chunkLength)
+                .toBodyReader().asStream();
+        int count;
+        while ((count = encoded.read(sink)) > 0) {
+            out.write(sink, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public EagerBodyReader readEagerly() throws IOException {
+        Long length = bodyType == BodyType.CONTENT_LENGTH ? (long) bodySize : null;
+        return new EagerBodyReader(bodyType, new ByteArrayInputStream(encodedBody), length, false);
+    }
+
+    @Benchmark
+    public int encodeChunkedBody() throws IOException {
+        InputStream encoded = new ChunkedBody(null, new ByteArrayInputStream(body), chunkLength)
+                .toBodyReader().asStream();
+        int total = 0;
+        int count;
+        while ((count = encoded.read(sink)) > 0) {
+            total += count;
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.athaydes.rawhttp.benchmarks;
+
+import com.athaydes.rawhttp.core.HeaderName;
+import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building {@link RawHttpHeaders} and looking up headers in them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeadersBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String headSize;
+
+    private final RawHttp http = new RawHttp();
+    private RawHttpHeaders headers;
+    private String[] names;
+    private String[] values;
+
+    @Setup
+    public void setup() {
+        headers = http.parseResponse(Messages.response(headSize)).getHeaders();
+        List<String> nameList = new ArrayList<>();
+        List<String> valueList = new ArrayList<>();
+        headers.forEach((name, value) -> {
+            nameList.add(name);
+            valueList.add(value);
+        });
+        names = nameList.toArray(new String[0]);
+        values = valueList.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public RawHttpHeaders build() {
+        RawHttpHeaders.Builder builder = RawHttpHeaders.Builder.newBuilder();
+        for (int i = 0; i < names.length; i++) {
+            builder.with(names[i], values[i]);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public RawHttpHeaders modifyCopy() {
+        return RawHttpHeaders.Builder.newBuilder(headers)
+                .overwrite(HeaderName.CONNECTION, "close")
+                .build();
+    }
+
+    @Benchmark
+    public List<String> lookupByString() {
+        // headers are case-insensitive, so use a different case than the stored name
+        return headers.get("content-type");
+    }
+
+    @Benchmark
+    public List<String> lookupByHeaderName() {
+        return headers.get(HeaderName.CONTENT_TYPE);
+    }
+
+    @Benchmark
+    public Optional<String> lookupFirstMissing() {
+        return headers.getFirst(HeaderName.TRANSFER_ENCODING);
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.athaydes.rawhttp.benchmarks;
+
+/**
+ * Realistic HTTP message heads used by the benchmarks.
+ */
+final class Messages {
+
+    private Messages() {
+        // not instantiable
+    }
+
+    /**
+     * A request as sent by a simple HTTP client, such as curl.
+     */
+    static final String SMALL_REQUEST = "GET /hello.txt HTTP/1.1\r\n" +
+            "User-Agent: curl/7.16.3 libcurl/7.16.3 OpenSSL/0.9.7l zlib/1.2.3\r\n" +
+            "Host: www.example.com\r\n" +
+            "Accept: */*\r\n" +
+            "\r\n";
+
+    /**
+     * A request as sent by a web browser.
+     */
+    static final String MEDIUM_REQUEST = "GET /articles/2017/12/announcing-rawhttp?ref=home HTTP/1.1\r\n" +
+            "Host: www.example.com\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Upgrade-Insecure-Requests: 1\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/62.0.3202.94 Safari/537.36\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,image/apng,*/*;q=0.8\r\n" +
+            "Referer: https://www.example.com/\r\n" +
+            "Accept-Encoding: gzip, deflate, br\r\n" +
+            "Accept-Language: en-GB,en-US;q=0.9,en;q=0.8\r\n" +
+            "Cookie: _ga=GA1.2.1234567890.1512345678; _gid=GA1.2.987654321.1512345678\r\n" +
+            "If-None-Match: W/\"5a2f1b3c-1f4e\"\r\n" +
+            "\r\n";
+
+    /**
+     * A request going through proxies and carrying large cookies, as typically seen by API gateways.
+     */
+    static final String LARGE_REQUEST;
+
+    /**
+     * A small response, as sent by an API.
+     */
+    static final String SMALL_RESPONSE = "HTTP/1.1 200 OK\r\n" +
+            "Content-Type: application/json\r\n" +
+            "Content-Length: 0\r\n" +
+            "\r\n";
+
+    /**
+     * A response as sent by a typical web server.
+     */
+    static final String MEDIUM_RESPONSE = "HTTP/1.1 200 OK\r\n" +
+            "Accept-Ranges: bytes\r\n" +
+            "Cache-Control: max-age=604800\r\n" +
+            "Content-Type: text/html; charset=UTF-8\r\n" +
+            "Date: Mon, 04 Dec 2017 21:19:04 GMT\r\n" +
+            "ETag: \"1541025663+ident\"\r\n" +
+            "Expires: Mon, 11 Dec 2017 21:19:04 GMT\r\n" +
+            "Last-Modified: Sat, 02 Dec 2017 02:10:22 GMT\r\n" +
+            "Server: ECS (lga/1389)\r\n" +
+            "Vary: Accept-Encoding\r\n" +
+            "X-Cache: HIT\r\n" +
+            "Content-Length: 0\r\n" +
+            "\r\n";
+
+    /**
+     * A response carrying many security and caching headers, and several cookies.
+     */
+    static final String LARGE_RESPONSE;
+
+    static {
+        StringBuilder request = new StringBuilder(MEDIUM_REQUEST.substring(0, MEDIUM_REQUEST.length() - 2));
+        for (int i = 0; i < 4; i++) {
+            request.append("X-Forwarded-For: 203.0.113.").append(i).append(", 198.51.100.").append(i).append("\r\n");
+            request.append("Via: 1.1 proxy-").append(i).append(".example.com\r\n");
+        }
+        request.append("Authorization: Bearer ").append(repeat("eyJhbGciOiJIUzI1NiJ9", 20)).append("\r\n");
+        for (int i = 0; i < 10; i++) {
+            request.append("X-Custom-Header-").append(i).append(": value-").append(i).append("\r\n");
+        }
+        request.append("Cookie: session=").append(repeat("0123456789abcdef", 64)).append("\r\n");
+        LARGE_REQUEST = request.append("\r\n").toString();
+
+        StringBuilder response = new StringBuilder(MEDIUM_RESPONSE.substring(0, MEDIUM_RESPONSE.length() - 2));
+        response.append("Strict-Transport-Security: max-age=31536000; includeSubDomains; preload\r\n")
+                .append("Content-Security-Policy: default-src 'self'; script-src 'self' https://cdn.example.com; " +
+                        "style-src 'self' 'unsafe-inline'; img-src * data:\r\n")
+                .append("X-Content-Type-Options: nosniff\r\n")
+                .append("X-Frame-Options: DENY\r\n")
+                .append("X-XSS-Protection: 1; mode=block\r\n")
+                .append("Referrer-Policy: strict-origin-when-cross-origin\r\n");
+        for (int i = 0; i < 8; i++) {
+            response.append("Set-Cookie: cookie").append(i).append('=').append(repeat("abcdef", 10))
+                    .append("; Path=/; Secure; HttpOnly\r\n");
+        }
+        LARGE_RESPONSE = response.append("\r\n").toString();
+    }
+
+    /**
+     * @param size one of "small", "medium" or "large"
+     * @return a request head of the given size
+     */
+    static String request(String size) {
+        switch (size) {
+            case "small":
+                return SMALL_REQUEST;
+            case "medium":
+                return MEDIUM_REQUEST;
+            case "large":
+                return LARGE_REQUEST;
+            default:
+                throw new IllegalArgumentException("Unknown size: " + size);
+        }
+    }
+
+    /**
+     * @param size one of "small", "medium" or "large"
+     * @return a response head of the given size
+     */
+    static String response(String size) {
+        switch (size) {
+            case "small":
+                return SMALL_RESPONSE;
+            case "medium":
+                return MEDIUM_RESPONSE;
+            case "large":
+                return LARGE_RESPONSE;
+            default:
+                throw new IllegalArgumentException("Unknown size: " + size);
+        }
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.athaydes.rawhttp.benchmarks;
+
+import com.athaydes.rawhttp.core.BufferedHttpInputStream;
+import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpRequest;
+import com.athaydes.rawhttp.core.RawHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Parsing of HTTP message heads, from a plain stream (as when parsing a single message) and from a
+ * {@link BufferedHttpInputStream} (as done by the client and server implementations).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String headSize;
+
+    private final RawHttp http = new RawHttp();
+    private byte[] request;
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        request = Messages.request(headSize).getBytes(US_ASCII);
+        response = Messages.response(headSize).getBytes(US_ASCII);
+    }
+
+    @Benchmark
+    public RawHttpRequest parseRequest() throws IOException {
+        return http.parseRequest(new ByteArrayInputStream(request));
+    }
+
+    @Benchmark
+    public RawHttpRequest parseRequestBuffered() throws IOException {
+        return http.parseRequest(new BufferedHttpInputStream(new ByteArrayInputStream(request)));
+    }
+
+    @Benchmark
+    public RawHttpResponse<Void> parseResponse() throws IOException {
+        return http.parseResponse(new ByteArrayInputStream(response));
+    }
+
+    @Benchmark
+    public RawHttpResponse<Void> parseResponseBuffered() throws IOException {
+        return http.parseResponse(new BufferedHttpInputStream(new ByteArrayInputStream(response)));
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.athaydes.rawhttp.benchmarks;
+
+import com.athaydes.rawhttp.core.EagerHttpRequest;
+import com.athaydes.rawhttp.core.EagerHttpResponse;
+import com.athaydes.rawhttp.core.RawHttp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of HTTP messages with {@code HttpMessage.writeTo}, to a stream and to a channel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteToBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String headSize;
+
+    @Param({"0", "1024"})
+    public int bodySize;
+
+    private EagerHttpRequest request;
+    private EagerHttpResponse<Void> response;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+    private final DiscardingChannel channel = new DiscardingChannel();
+
+    @Setup
+    public void setup() throws IOException {
+        RawHttp http = new RawHttp();
+        char[] body = new char[bodySize];
+        Arrays.fill(body, 'x');
+        String contentLength = "Content-Length: " + bodySize + "\r\n\r\n";
+
+        String requestHead = Messages.request(headSize);
+        request = http.parseRequest(requestHead.substring(0, requestHead.length() - 2) +
+                contentLength + new String(body)).eagerly();
+
+        // the response heads given by Messages declare an empty body, so replace the Content-Length header
+        String responseHead = Messages.response(headSize).replace("Content-Length: 0\r\n", "");
+        response = http.parseResponse(responseHead.substring(0, responseHead.length() - 2) +
+                contentLength + new String(body)).eagerly();
+    }
+
+    @Benchmark
+    public int writeRequestToStream() throws IOException {
+        out.reset();
+        request.writeTo(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeResponseToStream() throws IOException {
+        out.reset();
+        response.writeTo(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public long writeResponseToChannel() throws IOException {
+        response.writeTo(channel);
+        return channel.written;
+    }
+
+    private static final class DiscardingChannel implements WritableByteChannel {
+        long written;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            written += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -3,6 +3,9 @@ package com.athaydes.rawhttp.core;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * HTTP message body reader.
@@ -44,4 +47,62 @@ public abstract class BodyReader implements Closeable {
      */
     public abstract InputStream asStream();
 
+    /**
+     * @return the stream which produces the decoded HTTP message body.
+     * Unlike {@link #asStream()}, if the body has the "chunked" transfer-coding, the stream returned by this method
+     * produces the body's payload, not the raw chunks.
+     * Notice that the stream may be closed if this {@link BodyReader} is closed.
+     */
+    public InputStream asDecodedStream() {
+        return asStream();
+    }
+
+    /**
+     * Write the body of the HTTP message, exactly as produced by {@link #asStream()}, to the given channel.
+     * <p>
+     * Implementations may avoid copying the body through the heap where possible.
+     *
+     * @param channel    to write the body to
+     * @param bufferSize size of the buffer to use for copying the body, if necessary
+     * @throws IOException if an error occurs while reading or writing the body
+     */
+    public void writeTo(WritableByteChannel channel, int bufferSize) throws IOException {
+        copy(asStream(), channel, bufferSize);
+    }
+
+    /**
+     * @return true if {@link #writeTo(WritableByteChannel, int)} can write the body without copying it through
+     * the heap, in which case callers should prefer it over reading the body from {@link #asStream()}.
+     */
+    boolean transfersDirectly() {
+        return false;
+    }
+
+    static void copy(InputStream inputStream, WritableByteChannel channel, int bufferSize) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        while (true) {
+            int actuallyRead = inputStream.read(buffer);
+            if (actuallyRead < 0) {
+                break;
+            }
+            byteBuffer.clear();
+            byteBuffer.limit(actuallyRead);
+            writeFully(channel, byteBuffer);
+        }
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void writeFully(GatheringByteChannel channel, ByteBuffer... buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
 }
@@ -0,0 +1,146 @@
+package com.athaydes.rawhttp.core;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An {@link InputStream} that produces at most a given number of bytes from another stream.
+ * <p>
+ * This is used as a view over the body of a HTTP message with a Content-Length header, so that reading it to
+ * the end never reads into whatever follows the body in the underlying stream.
+ */
+class BoundedInputStream extends InputStream {
+
+    private final InputStream inputStream;
+    private long remaining;
+
+    BoundedInputStream(InputStream inputStream, long length) {
+        this.inputStream = inputStream;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int b = inputStream.read();
+        if (b >= 0) {
+            remaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+        int bytesRead = inputStream.read(b, off, (int) Math.min(len, remaining));
+        if (bytesRead > 0) {
+            remaining -= bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || remaining <= 0) {
+            return 0;
+        }
+        long skipped = inputStream.skip(Math.min(n, remaining));
+        if (skipped > 0) {
+            remaining -= skipped;
+        }
+        return skipped;
+    }
+
+    /**
+     * @return true if the underlying stream reads from a file, so that {@link #transferTo(WritableByteChannel, int)}
+     * does not need to copy bytes into the application's memory
+     */
+    boolean isFileBacked() {
+        return inputStream instanceof FileInputStream;
+    }
+
+    /**
+     * Transfer the remaining bytes of this stream to the given channel.
+     * <p>
+     * If the underlying stream is a {@link FileInputStream}, the bytes are transferred directly from the file to the
+     * channel, which many operating systems can do without copying them into the application's memory.
+     *
+     * @param channel    to write to
+     * @param bufferSize size of the buffer to use if the bytes must be copied
+     * @throws IOException if an error occurs while reading or writing
+     */
+    void transferTo(WritableByteChannel channel, int bufferSize) throws IOException {
+        if (inputStream instanceof FileInputStream) {
+            FileChannel fileChannel = ((FileInputStream) inputStream).getChannel();
+            long position = fileChannel.position();
+            try {
+                while (remaining > 0) {
+                    long transferred = fileChannel.transferTo(position, remaining, channel);
+                    if (transferred <= 0) {
+                        // end of file, or the channel cannot take more bytes right now: let the copy loop handle it
+                        break;
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            } finally {
+                fileChannel.position(position);
+            }
+        }
+        BodyReader.copy(this, channel, bufferSize);
+    }
+
+    /**
+     * Transfer as many of the remaining bytes of this stream as the given channel accepts without blocking,
+     * directly from the file the underlying stream reads from.
+     *
+     * @param channel to write to
+     * @return the number of bytes transferred
+     * @throws IOException if an error occurs while reading or writing, or the file ends before this stream
+     * @see #isFileBacked()
+     */
+    long transferAvailable(WritableByteChannel channel) throws IOException {
+        FileChannel fileChannel = ((FileInputStream) inputStream).getChannel();
+        long position = fileChannel.position();
+        long transferred = remaining > 0 ? fileChannel.transferTo(position, remaining, channel) : 0L;
+        if (transferred > 0) {
+            fileChannel.position(position + transferred);
+            remaining -= transferred;
+        } else if (remaining > 0 && position >= fileChannel.size()) {
+            throw new EOFException("File ended before the end of the body (" + remaining + " bytes missing)");
+        }
+        return transferred;
+    }
+
+    /**
+     * @return the number of bytes remaining in this stream
+     */
+    long remaining() {
+        return remaining;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(remaining, inputStream.available());
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+}
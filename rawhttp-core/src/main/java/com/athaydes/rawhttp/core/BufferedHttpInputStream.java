@@ -0,0 +1,314 @@
+package com.athaydes.rawhttp.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * A buffered {@link InputStream} that can efficiently read the metadata (start-line and headers)
+ * of HTTP messages.
+ * <p>
+ * The metadata is scanned for line terminators directly over a re-usable byte buffer. Any bytes read ahead of
+ * the end of the metadata are kept in the buffer and returned first by subsequent reads, so the body of
+ * a HTTP message, as well as any HTTP messages following it, can be read from this same stream.
+ * <p>
+ * For that reason, a single instance of this class should be used for the whole lifetime of a connection.
+ * {@link RawHttp} re-uses any instance of this class it is given, instead of wrapping it again.
+ * <p>
+ * Instances of this class are not thread-safe.
+ */
+public class BufferedHttpInputStream extends InputStream {
+
+    /**
+     * The default size of the buffer used by instances of this class.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final int EXACT_BUFFER_SIZE = 256;
+
+    private final InputStream in;
+    private final boolean readAhead;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    // bounds of the last metadata lines read, relative to metadataStart
+    private int metadataStart;
+    private int[] lineBounds = new int[32];
+    private int lineCount;
+    private boolean scanning;
+
+    /**
+     * Create a new {@link BufferedHttpInputStream} using a buffer of the default size.
+     *
+     * @param in underlying stream
+     */
+    public BufferedHttpInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a new {@link BufferedHttpInputStream}.
+     *
+     * @param in         underlying stream
+     * @param bufferSize initial size of the buffer. The buffer grows if a HTTP message's metadata does
+     *                   not fit in it.
+     */
+    public BufferedHttpInputStream(InputStream in, int bufferSize) {
+        this(in, bufferSize, true);
+    }
+
+    private BufferedHttpInputStream(InputStream in, int bufferSize, boolean readAhead) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Adapt the given stream to a {@link BufferedHttpInputStream}.
+     * <p>
+     * If the stream is not already an instance of this class, the returned stream never reads more bytes from it
+     * than strictly necessary, so that the given stream remains positioned exactly after whatever has been read
+     * through the returned stream.
+     *
+     * @param inputStream stream to adapt
+     * @return the given stream if it is already an instance of this class, or a wrapper around it otherwise
+     */
+    static BufferedHttpInputStream wrap(InputStream inputStream) {
+        if (inputStream instanceof BufferedHttpInputStream) {
+            return (BufferedHttpInputStream) inputStream;
+        }
+        return new BufferedHttpInputStream(inputStream, EXACT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * Read the metadata lines of a HTTP message, up to and including the empty line that terminates them
+     * (or until the end of the stream is reached).
+     * <p>
+     * The lines can be accessed with {@link #getBuffer()}, {@link #getMetadataStart()} and {@link #getLineBounds()}
+     * until this stream is read from again.
+     *
+     * @param createError               error factory - used in case an error is encountered
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @param maxSize                   maximum number of bytes the metadata may take, including line terminators
+     * @return the number of metadata lines read
+     * @throws IOException if an error occurs while reading from the underlying stream
+     */
+    int readMetadataLines(BiFunction<String, Integer, RuntimeException> createError,
+                          boolean allowNewLineWithoutReturn,
+                          int maxSize) throws IOException {
+        scanning = true;
+        metadataStart = position;
+        lineCount = 0;
+        try {
+            int lineStart = 0;
+            boolean wasNewLine = true;
+            int lineNumber = 1;
+            while (true) {
+                if (position == limit && fill() < 0) {
+                    int lineEnd = position - metadataStart;
+                    if (lineEnd > lineStart) {
+                        addLine(lineStart, lineEnd);
+                    }
+                    break;
+                }
+                if (position - metadataStart == maxSize) {
+                    throw createError.apply("Message head is too big (more than " + maxSize + " bytes)", lineNumber);
+                }
+                byte b = buffer[position++];
+                if (b == '\r') {
+                    // expect new-line
+                    if (position == limit && fill() < 0) {
+                        if (!wasNewLine) {
+                            addLine(lineStart, position - 1 - metadataStart);
+                        }
+                        break;
+                    }
+                    if (buffer[position] == '\n') {
+                        position++;
+                        lineNumber++;
+                        if (wasNewLine) break;
+                        addLine(lineStart, position - 2 - metadataStart);
+                        lineStart = position - metadataStart;
+                        wasNewLine = true;
+                    } else {
+                        close();
+                        throw createError.apply("Illegal character after return", lineNumber);
+                    }
+                } else if (b == '\n') {
+                    if (!allowNewLineWithoutReturn) {
+                        throw createError.apply("Illegal new-line character without preceding return", lineNumber);
+                    }
+
+                    // unexpected, but let's accept new-line without returns
+                    lineNumber++;
+                    if (wasNewLine) break;
+                    addLine(lineStart, position - 1 - metadataStart);
+                    lineStart = position - metadataStart;
+                    wasNewLine = true;
+                } else {
+                    wasNewLine = false;
+                }
+            }
+        } finally {
+            scanning = false;
+        }
+        return lineCount;
+    }
+
+    private void addLine(int start, int end) {
+        int index = lineCount * 2;
+        if (index == lineBounds.length) {
+            lineBounds = Arrays.copyOf(lineBounds, lineBounds.length * 2);
+        }
+        lineBounds[index] = start;
+        lineBounds[index + 1] = end;
+        lineCount++;
+    }
+
+    /**
+     * @return the number of metadata lines last read.
+     * @see #readMetadataLines(BiFunction, boolean, int)
+     */
+    int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the buffer containing the metadata lines last read.
+     * @see #readMetadataLines(BiFunction, boolean, int)
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the index, in the buffer, of the first byte of the metadata lines last read.
+     * @see #readMetadataLines(BiFunction, boolean, int)
+     */
+    int getMetadataStart() {
+        return metadataStart;
+    }
+
+    /**
+     * @return the bounds of the metadata lines last read, relative to {@link #getMetadataStart()}.
+     * The start of line {@code i} is at index {@code 2 * i} of the array, and its end (excluding line terminators)
+     * at index {@code 2 * i + 1}.
+     * @see #readMetadataLines(BiFunction, boolean, int)
+     */
+    int[] getLineBounds() {
+        return lineBounds;
+    }
+
+    /**
+     * Read more bytes from the underlying stream into the buffer.
+     * <p>
+     * Unread bytes (and the metadata being scanned, if any) are kept, but may be moved to the beginning
+     * of the buffer.
+     *
+     * @return the number of bytes read, or -1 if the end of the stream has been reached
+     */
+    private int fill() throws IOException {
+        int keepFrom = scanning ? metadataStart : position;
+        if (keepFrom == limit) {
+            // nothing to keep
+            position -= keepFrom;
+            limit = 0;
+            metadataStart -= keepFrom;
+        } else if (limit == buffer.length) {
+            if (keepFrom > 0) {
+                System.arraycopy(buffer, keepFrom, buffer, 0, limit - keepFrom);
+                position -= keepFrom;
+                limit -= keepFrom;
+                metadataStart -= keepFrom;
+            } else {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
+        int bytesRead;
+        if (readAhead) {
+            bytesRead = in.read(buffer, limit, buffer.length - limit);
+        } else {
+            int b = in.read();
+            if (b < 0) {
+                bytesRead = -1;
+            } else {
+                buffer[limit] = (byte) b;
+                bytesRead = 1;
+            }
+        }
+        if (bytesRead > 0) {
+            limit += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit) {
+            if (!readAhead) {
+                return in.read();
+            }
+            if (fill() < 0) {
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int available = limit - position;
+        if (available == 0) {
+            if (!readAhead || len >= buffer.length) {
+                // no point in copying the bytes through the buffer
+                return in.read(b, off, len);
+            }
+            if (fill() < 0) {
+                return -1;
+            }
+            available = limit - position;
+        }
+        int count = Math.min(available, len);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        int available = limit - position;
+        if (available > 0) {
+            int count = (int) Math.min(available, n);
+            position += count;
+            return count;
+        }
+        return in.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,303 @@
+package com.athaydes.rawhttp.core;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * An {@link InputStream} that decodes a HTTP message body which has the "chunked" transfer-coding.
+ * <p>
+ * The chunks are read lazily from the underlying stream, one at a time, so that bodies of any size can be
+ * decoded in constant memory. Once the end of this stream is reached, the underlying stream is positioned
+ * right after the end of the chunked body, and the trailer headers become available via
+ * {@link #getTrailerHeaders()}.
+ * <p>
+ * See <a href="https://tools.ietf.org/html/rfc7230#section-4.1">Section 4.1</a>
+ * of RFC-7230 for details.
+ */
+public class ChunkedBodyInputStream extends InputStream {
+
+    // enough for any positive long value
+    private static final int MAX_CHUNK_SIZE_DIGITS = 16;
+
+    private final InputStream inputStream;
+    private final boolean allowNewLineWithoutReturn;
+    private final int maxTrailerSize;
+
+    // bytes remaining in the current chunk
+    private long remaining = 0;
+
+    @Nullable
+    private RawHttpHeaders trailerHeaders;
+
+    /**
+     * Create a new {@link ChunkedBodyInputStream}.
+     *
+     * @param inputStream               stream producing the chunked body
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     */
+    public ChunkedBodyInputStream(InputStream inputStream, boolean allowNewLineWithoutReturn) {
+        this(inputStream, allowNewLineWithoutReturn, RawHttpOptions.DEFAULT_MAX_HEAD_SIZE);
+    }
+
+    /**
+     * Create a new {@link ChunkedBodyInputStream}.
+     *
+     * @param inputStream               stream producing the chunked body
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @param maxTrailerSize            maximum size, in bytes, of the trailer headers
+     */
+    public ChunkedBodyInputStream(InputStream inputStream, boolean allowNewLineWithoutReturn, int maxTrailerSize) {
+        this.inputStream = inputStream;
+        this.allowNewLineWithoutReturn = allowNewLineWithoutReturn;
+        this.maxTrailerSize = maxTrailerSize;
+    }
+
+    /**
+     * @return the trailer headers of the chunked body, once the end of this stream has been reached,
+     * or empty otherwise.
+     */
+    public Optional<RawHttpHeaders> getTrailerHeaders() {
+        return Optional.ofNullable(trailerHeaders);
+    }
+
+    /**
+     * @return true if there are bytes left in the current chunk, false if this stream's end has been reached.
+     */
+    private boolean ensureChunk() throws IOException {
+        if (remaining > 0) {
+            return true;
+        }
+        if (trailerHeaders != null) {
+            return false;
+        }
+        AtomicBoolean hasExtensions = new AtomicBoolean(false);
+        long chunkSize = readChunkSize(inputStream, allowNewLineWithoutReturn, hasExtensions);
+        if (hasExtensions.get()) {
+            // extensions are not exposed by this stream, but they must be consumed
+            parseExtensions(inputStream, allowNewLineWithoutReturn);
+        }
+        if (chunkSize == 0) {
+            trailerHeaders = readTrailerHeaders(inputStream, allowNewLineWithoutReturn, maxTrailerSize);
+            return false;
+        }
+        remaining = chunkSize;
+        return true;
+    }
+
+    private void chunkBytesRead(int count) throws IOException {
+        remaining -= count;
+        if (remaining == 0) {
+            readChunkDataEnd(inputStream, allowNewLineWithoutReturn);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int b = inputStream.read();
+        if (b < 0) {
+            throw new IllegalStateException("Unexpected EOF while reading chunk data");
+        }
+        chunkBytesRead(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int bytesRead = inputStream.read(b, off, (int) Math.min(len, remaining));
+        if (bytesRead < 0) {
+            throw new IllegalStateException("Unexpected EOF while reading chunk data");
+        }
+        chunkBytesRead(bytesRead);
+        return bytesRead;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(remaining, inputStream.available());
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Read the chunk-size line of a chunk, up to the end of the line or the start of the chunk extensions.
+     *
+     * @param inputStream               stream producing the chunked body
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @param hasExtensions             set to true if the chunk has extensions, which must then be read with
+     *                                  {@link #parseExtensions(InputStream, boolean)}
+     * @return the chunk size, which is never negative
+     * @throws IOException if an error occurs while reading from the stream
+     */
+    static long readChunkSize(InputStream inputStream,
+                              boolean allowNewLineWithoutReturn,
+                              AtomicBoolean hasExtensions) throws IOException {
+        char[] chars = new char[MAX_CHUNK_SIZE_DIGITS];
+        int b;
+        int i = 0;
+        while ((b = inputStream.read()) >= 0) {
+            if (b == '\r') {
+                int next = inputStream.read();
+                if (next == '\n') {
+                    break;
+                } else {
+                    throw new IllegalStateException("Illegal character after return (parsing chunk-size)");
+                }
+            }
+            if (b == '\n') {
+                if (!allowNewLineWithoutReturn) {
+                    throw new IllegalStateException("Illegal character after chunk-size " +
+                            "(new-line character without preceding return)");
+                }
+                // unexpected, but allow it
+                break;
+            }
+            if (b == ';') {
+                hasExtensions.set(true);
+                break;
+            }
+            if (i == MAX_CHUNK_SIZE_DIGITS) {
+                throw new IllegalStateException("Invalid chunk-size (too big, more than " +
+                        MAX_CHUNK_SIZE_DIGITS + " hex-digits)");
+            }
+            chars[i++] = (char) b;
+        }
+
+        if (i == 0) {
+            throw new IllegalStateException("Missing chunk-size");
+        }
+
+        if (chars[0] == '-' || chars[0] == '+') {
+            throw new IllegalStateException("Invalid chunk-size (sign is not allowed)");
+        }
+
+        try {
+            // fails if the value does not fit in a long
+            return Long.parseLong(new String(chars, 0, i), 16);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid chunk-size (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Consume the CRLF that follows the data of a chunk.
+     *
+     * @param inputStream               stream producing the chunked body
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @throws IOException if an error occurs while reading from the stream
+     */
+    static void readChunkDataEnd(InputStream inputStream,
+                                 boolean allowNewLineWithoutReturn) throws IOException {
+        int b = inputStream.read();
+        if (b == '\r') {
+            int next = inputStream.read();
+            if (next != '\n') {
+                throw new IllegalStateException("Illegal character after return (parsing chunk-size)");
+            }
+        } else if (b == '\n') {
+            if (!allowNewLineWithoutReturn) {
+                throw new IllegalStateException("Illegal character after chunk-data " +
+                        "(new-line character without preceding return)");
+            }
+        } else {
+            throw new IllegalStateException("Illegal character after chunk-data (missing CRLF)");
+        }
+    }
+
+    /**
+     * Parse the extensions of a chunk, up to the end of the chunk-size line.
+     *
+     * @param inputStream               stream producing the chunked body
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @return the chunk extensions
+     * @throws IOException if an error occurs while reading from the stream
+     */
+    static RawHttpHeaders parseExtensions(InputStream inputStream,
+                                          boolean allowNewLineWithoutReturn) throws IOException {
+        StringBuilder currentName = new StringBuilder();
+        StringBuilder currentValue = new StringBuilder();
+        boolean parsingValue = false;
+        RawHttpHeaders.Builder extensions = RawHttpHeaders.Builder.newBuilder();
+        int b;
+        while ((b = inputStream.read()) >= 0) {
+            if (b == '\r') {
+                // expect new-line
+                int next = inputStream.read();
+                if (next < 0 || next == '\n') {
+                    break;
+                } else {
+                    inputStream.close();
+                    throw new IllegalStateException("Illegal character after return in chunked body");
+                }
+            } else if (b == '\n') {
+                if (!allowNewLineWithoutReturn) {
+                    throw new IllegalStateException("Illegal new-line character without preceding return");
+                }
+                // unexpected, but let's accept new-line without returns
+                break;
+            } else if (b == '=') {
+                if (!parsingValue) {
+                    parsingValue = true;
+                } else {
+                    currentValue.append((char) b);
+                }
+            } else if (b == ';') {
+                extensions.with(currentName.toString().trim(), currentValue.toString().trim());
+                currentName = new StringBuilder();
+                currentValue = new StringBuilder();
+                parsingValue = false;
+            } else {
+                if (parsingValue) {
+                    currentValue.append((char) b);
+                } else {
+                    currentName.append((char) b);
+                }
+            }
+        }
+
+        if (currentName.length() > 0 || currentValue.length() > 0) {
+            extensions.with(currentName.toString().trim(), currentValue.toString().trim());
+        }
+
+        return extensions.build();
+    }
+
+    /**
+     * Read the trailer headers that follow the last chunk of a chunked body.
+     *
+     * @param inputStream               stream producing the chunked body
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @param maxSize                   maximum size, in bytes, of the trailer headers
+     * @return the trailer headers
+     * @throws IOException if an error occurs while reading from the stream
+     */
+    static RawHttpHeaders readTrailerHeaders(InputStream inputStream,
+                                             boolean allowNewLineWithoutReturn,
+                                             int maxSize) throws IOException {
+        BiFunction<String, Integer, RuntimeException> errorCreator =
+                (msg, lineNumber) -> new IllegalStateException(msg + " (parsing chunked body headers)");
+
+        BufferedHttpInputStream trailer = BufferedHttpInputStream.wrap(inputStream);
+        trailer.readMetadataLines(errorCreator, allowNewLineWithoutReturn, maxSize);
+        return RawHttp.parseHeaders(trailer, 0, errorCreator).build();
+    }
+
+}
@@ -8,54 +8,138 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.BiFunction;
 
+import static com.athaydes.rawhttp.core.ChunkedBodyInputStream.parseExtensions;
+import static com.athaydes.rawhttp.core.ChunkedBodyInputStream.readChunkDataEnd;
+import static com.athaydes.rawhttp.core.ChunkedBodyInputStream.readChunkSize;
+import static com.athaydes.rawhttp.core.ChunkedBodyInputStream.readTrailerHeaders;
 import static com.athaydes.rawhttp.core.RawHttpHeaders.Builder.emptyRawHttpHeaders;
+import static java.util.Objects.requireNonNull;
 
 /**
  * An eager implementation of {@link BodyReader}.
  * <p>
  * Because this implementation eagerly consumes the HTTP message, it is not considered "live"
  * (i.e. it can be stored after the HTTP connection is closed).
+ * <p>
+ * Bodies larger than a certain size (see {@link RawHttpOptions#maxBodySizeInMemory()}) are not kept on the heap,
+ * but in a memory-mapped temporary file, which allows bodies of any size to be read eagerly.
+ * Such bodies should be read via {@link #asStream()} rather than {@link #asBytes()}.
+ * This includes chunked bodies, whose decoded data is then kept in the temporary file without the chunk framing,
+ * so their chunks are not available via {@link #asChunkedBodyContents()} (but their trailer headers are still
+ * available via {@link #getTrailerHeaders()}).
  */
 public class EagerBodyReader extends BodyReader {
 
+    /**
+     * The default maximum size of a body for it to be kept on the heap.
+     */
+    public static final long DEFAULT_MAX_BODY_SIZE_IN_MEMORY = 64L * 1024L * 1024L;
+
+    // some JVMs cannot allocate arrays of exactly Integer.MAX_VALUE elements
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    // chunk data is read in pieces, so that memory is only allocated as the data actually arrives
+    private static final int CHUNK_READ_SIZE = 64 * 1024;
+
+    @Nullable
     private final byte[] bytes;
 
+    @Nullable
+    private final MappedBody mappedBody;
+
     @Nullable
     private final InputStream rawInputStream;
 
     @Nullable
     private final ChunkedBodyContents chunkedBody;
 
+    @Nullable
+    private final RawHttpHeaders trailerHeaders;
+
     public EagerBodyReader(BodyType bodyType,
                            @Nonnull InputStream inputStream,
                            @Nullable Long bodyLength,
                            boolean allowNewLineWithoutReturn) throws IOException {
+        this(bodyType, inputStream, bodyLength, allowNewLineWithoutReturn, DEFAULT_MAX_BODY_SIZE_IN_MEMORY);
+    }
+
+    public EagerBodyReader(BodyType bodyType,
+                           @Nonnull InputStream inputStream,
+                           @Nullable Long bodyLength,
+                           boolean allowNewLineWithoutReturn,
+                           long maxBodySizeInMemory) throws IOException {
+        this(bodyType, inputStream, bodyLength, allowNewLineWithoutReturn, maxBodySizeInMemory,
+                RawHttpOptions.DEFAULT_MAX_HEAD_SIZE);
+    }
+
+    /**
+     * Create an instance of this class by reading the body of a HTTP message from the given stream.
+     *
+     * @param bodyType                  type of the body
+     * @param inputStream               stream producing the body
+     * @param bodyLength                length of the body, if known
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @param maxBodySizeInMemory       maximum size of a body for it to be kept on the heap. Larger bodies
+     *                                  are kept in a memory-mapped temporary file
+     * @param maxTrailerSize            maximum size, in bytes, of the trailer headers of a chunked body
+     * @throws IOException if an error occurs while reading the body
+     */
+    public EagerBodyReader(BodyType bodyType,
+                           @Nonnull InputStream inputStream,
+                           @Nullable Long bodyLength,
+                           boolean allowNewLineWithoutReturn,
+                           long maxBodySizeInMemory,
+                           int maxTrailerSize) throws IOException {
         super(bodyType);
         this.rawInputStream = inputStream;
 
+        long maxArraySize = Math.min(maxBodySizeInMemory, MAX_ARRAY_SIZE);
+
         switch (bodyType) {
             case CONTENT_LENGTH:
                 if (bodyLength == null || bodyLength < 0) {
                     throw new IllegalArgumentException("Invalid length (null OR < 0)");
                 }
-                this.bytes = readBytesUpToLength(inputStream, Math.toIntExact(bodyLength));
+                if (bodyLength <= maxArraySize) {
+                    this.bytes = readBytesUpToLength(inputStream, bodyLength.intValue());
+                    this.mappedBody = null;
+                } else {
+                    this.bytes = null;
+                    this.mappedBody = MappedBody.store(new byte[0], 0, inputStream, bodyLength);
+                }
                 this.chunkedBody = null;
+                this.trailerHeaders = null;
                 break;
             case CHUNKED:
-                this.chunkedBody = readChunkedBody(inputStream, allowNewLineWithoutReturn);
-                this.bytes = chunkedBody.getData();
+                DecodedChunkedBody decoded = readChunkedBody(inputStream, allowNewLineWithoutReturn,
+                        maxArraySize, maxTrailerSize);
+                this.chunkedBody = decoded.contents;
+                this.bytes = decoded.contents == null ? null : decoded.contents.getData();
+                this.mappedBody = decoded.mappedBody;
+                this.trailerHeaders = decoded.trailerHeaders;
                 break;
             case CLOSE_TERMINATED:
-                this.bytes = readBytesWhileAvailable(inputStream);
+                ByteArrayOutputStream out = readBytesWhileAvailable(inputStream, maxArraySize);
+                if (out.size() > maxArraySize) {
+                    byte[] prefix = out.toByteArray();
+                    this.bytes = null;
+                    this.mappedBody = MappedBody.store(prefix, prefix.length, inputStream, -1);
+                } else {
+                    this.bytes = out.toByteArray();
+                    this.mappedBody = null;
+                }
                 this.chunkedBody = null;
+                this.trailerHeaders = null;
                 break;
             default:
                 throw new IllegalStateException("Unknown body type: " + bodyType);
@@ -70,10 +154,29 @@ public class EagerBodyReader extends BodyReader {
      * @param bytes plain HTTP message's body
      */
     public EagerBodyReader(byte[] bytes) {
-        super(BodyType.CONTENT_LENGTH);
+        this(BodyType.CONTENT_LENGTH, bytes, null, null, null);
+    }
+
+    /**
+     * Create an instance of this class from a body that has already been read.
+     *
+     * @param bodyType    type of the body
+     * @param bytes          decoded body, if it is kept on the heap
+     * @param mappedBody     decoded body, if it is kept in a temporary file
+     * @param chunkedBody    chunks of the body, if the body is chunked and kept on the heap
+     * @param trailerHeaders trailer headers of the body, if the body is chunked
+     */
+    EagerBodyReader(BodyType bodyType,
+                    @Nullable byte[] bytes,
+                    @Nullable MappedBody mappedBody,
+                    @Nullable ChunkedBodyContents chunkedBody,
+                    @Nullable RawHttpHeaders trailerHeaders) {
+        super(bodyType);
         this.bytes = bytes;
+        this.mappedBody = mappedBody;
         this.rawInputStream = null;
-        this.chunkedBody = null;
+        this.chunkedBody = chunkedBody;
+        this.trailerHeaders = trailerHeaders;
     }
 
     @Override
@@ -100,193 +203,122 @@ public class EagerBodyReader extends BodyReader {
         return bytes;
     }
 
-    private static byte[] readBytesWhileAvailable(InputStream inputStream) throws IOException {
+    private static ByteArrayOutputStream readBytesWhileAvailable(InputStream inputStream,
+                                                                 long maxLength) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         byte[] buffer = new byte[4096];
-        while (true) {
+        while (out.size() <= maxLength) {
             int actuallyRead = inputStream.read(buffer);
             if (actuallyRead < 0) {
                 break;
             }
             out.write(buffer, 0, actuallyRead);
         }
-        return out.toByteArray();
+        return out;
     }
 
-    private static ChunkedBodyContents readChunkedBody(InputStream inputStream,
-                                                       boolean allowNewLineWithoutReturn) throws IOException {
+    private static DecodedChunkedBody readChunkedBody(InputStream inputStream,
+                                                      boolean allowNewLineWithoutReturn,
+                                                      long maxBodySize,
+                                                      int maxTrailerSize) throws IOException {
         List<Chunk> chunks = new ArrayList<>();
-        int chunkSize = 1;
-        while (chunkSize > 0) {
-            AtomicBoolean hasExtensions = new AtomicBoolean(false);
-            chunkSize = readChunkSize(inputStream, allowNewLineWithoutReturn, hasExtensions);
-            if (chunkSize < 0) {
-                throw new IllegalStateException("unexpected EOF, could not read chunked body");
-            }
-            Chunk chunk = readChunk(inputStream, chunkSize, allowNewLineWithoutReturn, hasExtensions);
-            chunks.add(chunk);
-        }
-
-        BiFunction<String, Integer, RuntimeException> errorCreator =
-                (msg, lineNumber) -> new IllegalStateException(msg + " (parsing chunked body headers)");
-
-        List<String> trailer = RawHttp.parseMetadataLines(inputStream, errorCreator, allowNewLineWithoutReturn);
-        RawHttpHeaders trailerHeaders = RawHttp.parseHeaders(trailer, errorCreator).build();
-
-        return new ChunkedBodyContents(chunks, trailerHeaders);
-    }
-
-    private static int readChunkSize(InputStream inputStream,
-                                     boolean allowNewLineWithoutReturn,
-                                     AtomicBoolean hasExtensions) throws IOException {
-        char[] chars = new char[4];
-        int b;
-        int i = 0;
-        while ((b = inputStream.read()) >= 0 && i < 4) {
-            if (b == '\r') {
-                int next = inputStream.read();
-                if (next == '\n') {
-                    break;
-                } else {
-                    throw new IllegalStateException("Illegal character after return (parsing chunk-size)");
-                }
-            }
-            if (b == '\n') {
-                if (!allowNewLineWithoutReturn) {
-                    throw new IllegalStateException("Illegal character after chunk-size " +
-                            "(new-line character without preceding return)");
+        @Nullable MappedBody.Writer spill = null;
+        try {
+            long bodySize = 0;
+            long chunkSize = 1;
+            while (chunkSize > 0) {
+                AtomicBoolean hasExtensions = new AtomicBoolean(false);
+                chunkSize = readChunkSize(inputStream, allowNewLineWithoutReturn, hasExtensions);
+                RawHttpHeaders extensions = hasExtensions.get() ?
+                        parseExtensions(inputStream, allowNewLineWithoutReturn) :
+                        emptyRawHttpHeaders();
+                if (spill == null && chunkSize > maxBodySize - bodySize) {
+                    // the body is too big to be kept on the heap, move the data read so far to a temporary file
+                    spill = new MappedBody.Writer();
+                    for (Chunk chunk : chunks) {
+                        spill.write(ByteBuffer.wrap(chunk.getData()));
+                    }
+                    chunks.clear();
                 }
-                // unexpected, but allow it
-                break;
-            }
-            if (b == ';') {
-                hasExtensions.set(true);
-                break;
-            }
-            chars[i++] = (char) b;
-        }
-        if (i == 4) {
-            // ensure end of chunk-size or new-line
-            if (b == '\r') {
-                int next = inputStream.read();
-                if (next != '\n') {
-                    throw new IllegalStateException("Illegal character after return (parsing chunk-size)");
+                if (spill == null) {
+                    // the chunk size was already checked against the maximum body size
+                    chunks.add(new Chunk(extensions, readChunkData(inputStream, (int) chunkSize)));
+                    bodySize += chunkSize;
+                } else {
+                    writeChunkData(inputStream, chunkSize, spill);
                 }
-            } else if (b == '\n') {
-                if (!allowNewLineWithoutReturn) {
-                    throw new IllegalStateException("Illegal character after chunk-size " +
-                            "(new-line character without preceding return)");
+                if (chunkSize > 0) {
+                    readChunkDataEnd(inputStream, allowNewLineWithoutReturn);
                 }
-            } else if (b == ';') {
-                hasExtensions.set(true);
-            } else {
-                throw new IllegalStateException("Invalid chunk-size (too big, more than 4 hex-digits)");
             }
-        }
 
-        if (i == 0) {
-            throw new IllegalStateException("Missing chunk-size");
-        }
+            RawHttpHeaders trailerHeaders = readTrailerHeaders(inputStream, allowNewLineWithoutReturn,
+                    maxTrailerSize);
 
-        try {
-            return Integer.parseInt(new String(chars, 0, i), 16);
-        } catch (NumberFormatException e) {
-            throw new IllegalStateException("Invalid chunk-size (" + e.getMessage() + ")");
+            if (spill == null) {
+                return new DecodedChunkedBody(new ChunkedBodyContents(chunks, trailerHeaders), null, trailerHeaders);
+            }
+            return new DecodedChunkedBody(null, spill.finish(), trailerHeaders);
+        } finally {
+            if (spill != null) {
+                spill.close();
+            }
         }
     }
 
-    private static Chunk readChunk(InputStream inputStream,
-                                   int chunkSize,
-                                   boolean allowNewLineWithoutReturn,
-                                   AtomicBoolean hasExtensions) throws IOException {
-        RawHttpHeaders extensions = hasExtensions.get() ?
-                parseExtensions(inputStream, allowNewLineWithoutReturn) :
-                emptyRawHttpHeaders();
-
-        byte[] data = new byte[chunkSize];
-
-        if (chunkSize > 0) {
-            int bytesRead;
-            int totalBytesRead = 0;
-            while ((bytesRead = inputStream.read(data, totalBytesRead, chunkSize - totalBytesRead)) >= 0) {
-                totalBytesRead += bytesRead;
-                if (totalBytesRead == chunkSize) {
-                    break;
-                }
+    private static byte[] readChunkData(InputStream inputStream, int size) throws IOException {
+        // do not trust the chunk size to allocate memory, grow the array as data is received instead
+        byte[] data = new byte[Math.min(size, CHUNK_READ_SIZE)];
+        int totalBytesRead = 0;
+        while (totalBytesRead < size) {
+            if (totalBytesRead == data.length) {
+                data = Arrays.copyOf(data, (int) Math.min(size, 2L * data.length));
             }
-
-            if (totalBytesRead < chunkSize) {
+            int bytesRead = inputStream.read(data, totalBytesRead, data.length - totalBytesRead);
+            if (bytesRead < 0) {
                 throw new IllegalStateException("Unexpected EOF while reading chunk data");
             }
-
-            // consume CRLF
-            int b = inputStream.read();
-            if (b == '\r') {
-                int next = inputStream.read();
-                if (next != '\n') {
-                    throw new IllegalStateException("Illegal character after return (parsing chunk-size)");
-                }
-            } else if (b == '\n') {
-                if (!allowNewLineWithoutReturn) {
-                    throw new IllegalStateException("Illegal character after chunk-data " +
-                            "(new-line character without preceding return)");
-                }
-            } else {
-                throw new IllegalStateException("Illegal character after chunk-data (missing CRLF)");
-            }
+            totalBytesRead += bytesRead;
         }
-
-        return new Chunk(extensions, data);
+        return data;
     }
 
-    private static RawHttpHeaders parseExtensions(InputStream inputStream,
-                                                  boolean allowNewLineWithoutReturn) throws IOException {
-        StringBuilder currentName = new StringBuilder();
-        StringBuilder currentValue = new StringBuilder();
-        boolean parsingValue = false;
-        RawHttpHeaders.Builder extensions = RawHttpHeaders.Builder.newBuilder();
-        int b;
-        while ((b = inputStream.read()) >= 0) {
-            if (b == '\r') {
-                // expect new-line
-                int next = inputStream.read();
-                if (next < 0 || next == '\n') {
-                    break;
-                } else {
-                    inputStream.close();
-                    throw new IllegalStateException("Illegal character after return in chunked body");
-                }
-            } else if (b == '\n') {
-                if (!allowNewLineWithoutReturn) {
-                    throw new IllegalStateException("Illegal new-line character without preceding return");
-                }
-                // unexpected, but let's accept new-line without returns
-                break;
-            } else if (b == '=') {
-                if (!parsingValue) {
-                    parsingValue = true;
-                } else {
-                    currentValue.append((char) b);
-                }
-            } else if (b == ';') {
-                extensions.with(currentName.toString().trim(), currentValue.toString().trim());
-                currentName = new StringBuilder();
-                currentValue = new StringBuilder();
-                parsingValue = false;
-            } else {
-                if (parsingValue) {
-                    currentValue.append((char) b);
-                } else {
-                    currentName.append((char) b);
-                }
+    private static void writeChunkData(InputStream inputStream, long size,
+                                       MappedBody.Writer writer) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(size, CHUNK_READ_SIZE)];
+        long remaining = size;
+        while (remaining > 0) {
+            int bytesRead = inputStream.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+            if (bytesRead < 0) {
+                throw new IllegalStateException("Unexpected EOF while reading chunk data");
             }
+            writer.write(ByteBuffer.wrap(buffer, 0, bytesRead));
+            remaining -= bytesRead;
         }
+    }
 
-        if (currentName.length() > 0 || currentValue.length() > 0) {
-            extensions.with(currentName.toString().trim(), currentValue.toString().trim());
-        }
+    /**
+     * A chunked body that has been read and decoded.
+     */
+    private static final class DecodedChunkedBody {
 
-        return extensions.build();
+        // the chunks of the body, if it is kept on the heap
+        @Nullable
+        final ChunkedBodyContents contents;
+
+        // the decoded body, if it is kept in a temporary file
+        @Nullable
+        final MappedBody mappedBody;
+
+        final RawHttpHeaders trailerHeaders;
+
+        DecodedChunkedBody(@Nullable ChunkedBodyContents contents,
+                           @Nullable MappedBody mappedBody,
+                           RawHttpHeaders trailerHeaders) {
+            this.contents = contents;
+            this.mappedBody = mappedBody;
+            this.trailerHeaders = trailerHeaders;
+        }
     }
 
     @Override
@@ -299,22 +331,80 @@ public class EagerBodyReader extends BodyReader {
      * Notice that this method does not decode the body, so if the body is chunked, for example,
      * the bytes will represent the chunked body, not the decoded body.
      * Use {@link #asChunkedBodyContents()} then {@link ChunkedBodyContents#getData()} to decode the body in such cases.
+     * @throws IllegalStateException if the body is too large to fit in an array
      */
     public byte[] asBytes() {
-        return bytes;
+        if (bytes != null) {
+            return bytes;
+        }
+        return requireNonNull(mappedBody).toByteArray();
+    }
+
+    /**
+     * @return the length of the HTTP message's body, in bytes.
+     */
+    public long getLength() {
+        if (bytes != null) {
+            return bytes.length;
+        }
+        return requireNonNull(mappedBody).length();
     }
 
     /**
      * @return the body of the HTTP message as a {@link ChunkedBodyContents} if the body indeed used
-     * the chunked transfer coding. If the body was not chunked, this method returns an empty value.
+     * the chunked transfer coding. If the body was not chunked, or was too large to be kept on the heap,
+     * this method returns an empty value.
      */
     public Optional<ChunkedBodyContents> asChunkedBodyContents() {
         return Optional.ofNullable(chunkedBody);
     }
 
+    /**
+     * @return the trailer headers of the HTTP message's body if it used the chunked transfer coding,
+     * or an empty value otherwise.
+     */
+    public Optional<RawHttpHeaders> getTrailerHeaders() {
+        return Optional.ofNullable(trailerHeaders);
+    }
+
     @Override
     public InputStream asStream() {
-        return new ByteArrayInputStream(bytes);
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return requireNonNull(mappedBody).asStream();
+    }
+
+    /**
+     * @return the bytes of the body if they are kept in the heap, or null if they are stored elsewhere
+     */
+    @Nullable
+    byte[] bytesInMemory() {
+        return bytes;
+    }
+
+    /**
+     * @return new buffers which together contain the body, without copying it
+     */
+    ByteBuffer[] asByteBuffers() {
+        if (bytes != null) {
+            return new ByteBuffer[]{ByteBuffer.wrap(bytes)};
+        }
+        return requireNonNull(mappedBody).duplicateRegions();
+    }
+
+    @Override
+    boolean transfersDirectly() {
+        return mappedBody != null;
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, int bufferSize) throws IOException {
+        if (bytes != null) {
+            writeFully(channel, ByteBuffer.wrap(bytes));
+        } else {
+            requireNonNull(mappedBody).writeTo(channel);
+        }
     }
 
     /**
@@ -324,7 +414,7 @@ public class EagerBodyReader extends BodyReader {
      * @return String representing the HTTP message's body.
      */
     public String asString(Charset charset) {
-        return new String(bytes, charset);
+        return new String(asBytes(), charset);
     }
 
     /**
@@ -46,8 +46,7 @@ public class EagerHttpResponse<Response> extends RawHttpResponse<Response> {
 
         RawHttpHeaders headers;
         if (bodyReader != null) {
-            RawHttpHeaders trailingHeaders = bodyReader.asChunkedBodyContents()
-                    .map(ChunkedBodyContents::getTrailerHeaders)
+            RawHttpHeaders trailingHeaders = bodyReader.getTrailerHeaders()
                     .orElse(emptyRawHttpHeaders());
             headers = RawHttpHeaders.Builder.newBuilder(response.getHeaders())
                     .merge(trailingHeaders)
@@ -0,0 +1,189 @@
+package com.athaydes.rawhttp.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A growable byte buffer into which the head of a HTTP message (start-line and headers) is serialized.
+ * <p>
+ * Characters are written as single ISO-8859-1 bytes, the encoding used by {@link RawHttp} to parse HTTP message
+ * heads, so that no intermediate Strings or encoders are needed.
+ * <p>
+ * A buffer is kept per Thread, so that serializing a message does not allocate memory in the common case.
+ */
+final class HeadBuffer {
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    // larger buffers are not kept for re-use, so that a single large message does not retain memory forever
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<HeadBuffer> BUFFERS = ThreadLocal.withInitial(HeadBuffer::new);
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(US_ASCII);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length;
+    private boolean inUse;
+
+    private HeadBuffer() {
+    }
+
+    /**
+     * Obtain an empty buffer. It must be given back with {@link #release()} once it is no longer used.
+     *
+     * @return the current Thread's buffer, or a new one if the current Thread's buffer is in use
+     */
+    static HeadBuffer acquire() {
+        HeadBuffer buffer = BUFFERS.get();
+        if (buffer.inUse) {
+            buffer = new HeadBuffer();
+        }
+        buffer.inUse = true;
+        buffer.length = 0;
+        return buffer;
+    }
+
+    void release() {
+        inUse = false;
+        if (bytes.length > MAX_RETAINED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * @return the array backing this buffer, whose first {@link #length()} bytes have been written to.
+     * The array may change when more bytes are written.
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return a {@link ByteBuffer} wrapping the bytes written to this buffer
+     */
+    ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    /**
+     * Make sure that the given number of bytes can be written after the current length without growing.
+     *
+     * @param count number of bytes
+     * @return the (possibly new) array backing this buffer
+     */
+    byte[] ensureSpace(int count) {
+        int required = length + count;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+        return bytes;
+    }
+
+    /**
+     * Mark the given number of bytes, written directly to the {@link #array()}, as part of this buffer.
+     *
+     * @param count number of bytes written
+     */
+    void advance(int count) {
+        length += count;
+    }
+
+    HeadBuffer append(byte b) {
+        ensureSpace(1);
+        bytes[length++] = b;
+        return this;
+    }
+
+    HeadBuffer append(byte[] source) {
+        ensureSpace(source.length);
+        System.arraycopy(source, 0, bytes, length, source.length);
+        length += source.length;
+        return this;
+    }
+
+    HeadBuffer append(String text) {
+        int count = text.length();
+        byte[] target = ensureSpace(count);
+        int position = length;
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            target[position++] = c <= 0xFF ? (byte) c : (byte) '?';
+        }
+        length = position;
+        return this;
+    }
+
+    HeadBuffer append(int number) {
+        if (number < 0) {
+            return append(Integer.toString(number));
+        }
+        int digits = 1;
+        for (int n = number; n >= 10; n /= 10) {
+            digits++;
+        }
+        ensureSpace(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /**
+     * Append a component of a URI, percent-encoding any non-ASCII characters as UTF-8
+     * (as done by {@link java.net.URI#toASCIIString()}).
+     *
+     * @param component raw URI component
+     * @return this
+     */
+    HeadBuffer appendUriComponent(String component) {
+        for (int i = 0; i < component.length(); i++) {
+            if (component.charAt(i) > 0x7F) {
+                return appendPercentEncoded(component);
+            }
+        }
+        return append(component);
+    }
+
+    private HeadBuffer appendPercentEncoded(String component) {
+        for (int i = 0; i < component.length(); i++) {
+            char c = component.charAt(i);
+            if (c <= 0x7F) {
+                append((byte) c);
+            } else {
+                int end = i + 1;
+                if (Character.isHighSurrogate(c) && end < component.length()) {
+                    end++;
+                }
+                for (byte b : component.substring(i, end).getBytes(UTF_8)) {
+                    append((byte) '%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+                }
+                i = end - 1;
+            }
+        }
+        return this;
+    }
+
+    HeadBuffer crlf() {
+        ensureSpace(2);
+        bytes[length++] = '\r';
+        bytes[length++] = '\n';
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, ISO_8859_1);
+    }
+
+}
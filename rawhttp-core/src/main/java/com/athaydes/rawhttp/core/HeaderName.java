@@ -0,0 +1,144 @@
+package com.athaydes.rawhttp.core;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * The name of a HTTP header.
+ * <p>
+ * Instances of this class pre-compute the case-insensitive hash code and the encoded bytes of the header name,
+ * so that they can be used to lookup and write headers efficiently.
+ * <p>
+ * Constants are provided for the headers that this library uses itself. Other header names can be obtained
+ * via {@link #of(String)}.
+ *
+ * @see RawHttpHeaders#get(HeaderName)
+ */
+public final class HeaderName {
+
+    private static final Map<String, HeaderName> WELL_KNOWN = new HashMap<>();
+
+    /**
+     * The Connection header.
+     */
+    public static final HeaderName CONNECTION = wellKnown("Connection");
+
+    /**
+     * The Content-Length header.
+     */
+    public static final HeaderName CONTENT_LENGTH = wellKnown("Content-Length");
+
+    /**
+     * The Content-Type header.
+     */
+    public static final HeaderName CONTENT_TYPE = wellKnown("Content-Type");
+
+    /**
+     * The Date header.
+     */
+    public static final HeaderName DATE = wellKnown("Date");
+
+    /**
+     * The ETag header.
+     */
+    public static final HeaderName ETAG = wellKnown("ETag");
+
+    /**
+     * The Host header.
+     */
+    public static final HeaderName HOST = wellKnown("Host");
+
+    /**
+     * The If-Modified-Since header.
+     */
+    public static final HeaderName IF_MODIFIED_SINCE = wellKnown("If-Modified-Since");
+
+    /**
+     * The If-None-Match header.
+     */
+    public static final HeaderName IF_NONE_MATCH = wellKnown("If-None-Match");
+
+    /**
+     * The Last-Modified header.
+     */
+    public static final HeaderName LAST_MODIFIED = wellKnown("Last-Modified");
+
+    /**
+     * The Transfer-Encoding header.
+     */
+    public static final HeaderName TRANSFER_ENCODING = wellKnown("Transfer-Encoding");
+
+    private final String name;
+    private final int hash;
+    private final byte[] bytes;
+
+    private HeaderName(String name) {
+        this.name = name;
+        this.hash = RawHttpHeaders.hashIgnoreCase(name);
+        this.bytes = name.getBytes(US_ASCII);
+    }
+
+    private static HeaderName wellKnown(String name) {
+        HeaderName headerName = new HeaderName(name);
+        WELL_KNOWN.put(name.toUpperCase(), headerName);
+        return headerName;
+    }
+
+    /**
+     * Get the {@link HeaderName} with the given name.
+     * <p>
+     * If the name is one of the well-known header names (regardless of case), the corresponding constant is
+     * returned, otherwise a new instance is created.
+     *
+     * @param name of the header
+     * @return header name
+     */
+    public static HeaderName of(String name) {
+        @Nullable HeaderName headerName = WELL_KNOWN.get(name.toUpperCase());
+        return headerName == null ? new HeaderName(name) : headerName;
+    }
+
+    /**
+     * @return the header name, in its canonical case.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the case-insensitive hash of the header name, as used by {@link RawHttpHeaders}.
+     */
+    int hash() {
+        return hash;
+    }
+
+    /**
+     * @return the header name encoded as US-ASCII bytes. The returned array must not be modified.
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HeaderName that = (HeaderName) o;
+        return hash == that.hash && RawHttpHeaders.equalsIgnoreCase(name, that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
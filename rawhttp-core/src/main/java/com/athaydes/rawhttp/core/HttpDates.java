@@ -0,0 +1,53 @@
+package com.athaydes.rawhttp.core;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Formatting and parsing of the dates used in HTTP headers such as {@code Date} and {@code Last-Modified}.
+ * <p>
+ * Dates are always formatted in the preferred format of RFC 7231, known as IMF-fixdate, as in
+ * {@code Sun, 06 Nov 1994 08:49:37 GMT}. Notice that {@link DateTimeFormatter#RFC_1123_DATE_TIME} is not
+ * suitable for this, as it does not pad the day of the month to two digits.
+ */
+public final class HttpDates {
+
+    /**
+     * Formatter of dates in the IMF-fixdate format.
+     */
+    public static final DateTimeFormatter IMF_FIXDATE = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    private static final DateTimeFormatter RFC_1123 = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private HttpDates() {
+        // not instantiable
+    }
+
+    /**
+     * @param instant to format
+     * @return the instant formatted as an IMF-fixdate, with a precision of one second
+     */
+    public static String format(Instant instant) {
+        return IMF_FIXDATE.format(instant);
+    }
+
+    /**
+     * Parse a date sent in a HTTP header.
+     * <p>
+     * Dates in the IMF-fixdate format are accepted, as are other RFC 1123 dates (for example, dates with a single
+     * digit day of the month or with a numeric time-zone offset).
+     *
+     * @param date to parse
+     * @return the parsed instant
+     * @throws DateTimeParseException if the date is not valid
+     */
+    public static Instant parse(String date) {
+        return Instant.from(RFC_1123.parse(date.trim()));
+    }
+
+}
@@ -6,7 +6,9 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Optional;
 
 /**
@@ -62,7 +64,29 @@ public abstract class HttpMessage {
     }
 
     private String messageWithoutBody() {
-        return String.join("\r\n", getStartLine().toString(), getHeaders().toString());
+        HeadBuffer buffer = HeadBuffer.acquire();
+        try {
+            writeHead(buffer);
+            return buffer.toString();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Serialize the start-line and headers of this message directly as bytes, without building intermediate Strings.
+     */
+    void writeHead(HeadBuffer buffer) {
+        StartLine startLine = getStartLine();
+        if (startLine instanceof MethodLine) {
+            ((MethodLine) startLine).writeTo(buffer);
+        } else if (startLine instanceof StatusCodeLine) {
+            ((StatusCodeLine) startLine).writeTo(buffer);
+        } else {
+            buffer.append(startLine.toString());
+        }
+        buffer.crlf();
+        getHeaders().writeTo(buffer);
     }
 
     /**
@@ -94,18 +118,89 @@ public abstract class HttpMessage {
      * @throws IOException if an error occurs while writing the message
      */
     public void writeTo(OutputStream out, int bufferSize) throws IOException {
-        out.write(messageWithoutBody().getBytes(StandardCharsets.US_ASCII));
-        Optional<? extends BodyReader> body = getBody();
-        if (body.isPresent()) {
+        HeadBuffer buffer = HeadBuffer.acquire();
+        try {
+            writeHead(buffer);
+            Optional<? extends BodyReader> body = getBody();
+            if (!body.isPresent()) {
+                out.write(buffer.array(), 0, buffer.length());
+                return;
+            }
+            // send the head together with the first bytes of the body, so small messages need a single write
             InputStream in = body.get().asStream();
-            byte[] buffer = new byte[bufferSize];
-            while (true) {
-                int actuallyRead = in.read(buffer);
-                if (actuallyRead < 0) {
-                    break;
+            int headLength = buffer.length();
+            byte[] bytes = buffer.ensureSpace(bufferSize);
+            int actuallyRead = in.read(bytes, headLength, bufferSize);
+            out.write(bytes, 0, headLength + Math.max(actuallyRead, 0));
+            while (actuallyRead >= 0) {
+                actuallyRead = in.read(bytes, 0, bufferSize);
+                if (actuallyRead > 0) {
+                    out.write(bytes, 0, actuallyRead);
+                }
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Write this HTTP message to the given channel.
+     * <p>
+     * Unlike {@link #writeTo(OutputStream)}, this method can avoid copying the body of the message through the heap.
+     * For example, the contents of a {@link com.athaydes.rawhttp.core.body.FileBody} are transferred directly
+     * from the file to the channel by the operating system, where supported.
+     *
+     * @param out to write this HTTP message to
+     * @throws IOException if an error occurs while writing the message
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        writeTo(out, 4096);
+    }
+
+    /**
+     * Write this HTTP message to the given channel.
+     *
+     * @param out        to write this HTTP message to
+     * @param bufferSize size of the buffer to use for writing, if the body needs to be copied
+     * @throws IOException if an error occurs while writing the message
+     * @see #writeTo(WritableByteChannel)
+     */
+    public void writeTo(WritableByteChannel out, int bufferSize) throws IOException {
+        HeadBuffer buffer = HeadBuffer.acquire();
+        try {
+            writeHead(buffer);
+            Optional<? extends BodyReader> body = getBody();
+            if (!body.isPresent()) {
+                BodyReader.writeFully(out, buffer.asByteBuffer());
+                return;
+            }
+            BodyReader bodyReader = body.get();
+            if (bodyReader.transfersDirectly()) {
+                BodyReader.writeFully(out, buffer.asByteBuffer());
+                bodyReader.writeTo(out, bufferSize);
+                return;
+            }
+            @Nullable byte[] bodyBytes = bodyReader instanceof EagerBodyReader
+                    ? ((EagerBodyReader) bodyReader).bytesInMemory()
+                    : null;
+            if (bodyBytes != null && bodyBytes.length > bufferSize && out instanceof GatheringByteChannel) {
+                BodyReader.writeFully((GatheringByteChannel) out, buffer.asByteBuffer(), ByteBuffer.wrap(bodyBytes));
+                return;
+            }
+            // send the head together with the first bytes of the body, so small messages need a single write
+            InputStream in = bodyReader.asStream();
+            int headLength = buffer.length();
+            byte[] bytes = buffer.ensureSpace(bufferSize);
+            int actuallyRead = in.read(bytes, headLength, bufferSize);
+            BodyReader.writeFully(out, ByteBuffer.wrap(bytes, 0, headLength + Math.max(actuallyRead, 0)));
+            while (actuallyRead >= 0) {
+                actuallyRead = in.read(bytes, 0, bufferSize);
+                if (actuallyRead > 0) {
+                    BodyReader.writeFully(out, ByteBuffer.wrap(bytes, 0, actuallyRead));
                 }
-                out.write(buffer, 0, actuallyRead);
             }
+        } finally {
+            buffer.release();
         }
     }
 
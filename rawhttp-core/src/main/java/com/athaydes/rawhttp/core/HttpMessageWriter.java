@@ -0,0 +1,194 @@
+package com.athaydes.rawhttp.core;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Incremental writer of a {@link HttpMessage} to a non-blocking channel.
+ * <p>
+ * Unlike {@link HttpMessage#writeTo(WritableByteChannel)}, which only returns once the whole message has been written,
+ * each call to {@link #write(WritableByteChannel)} writes only as many bytes as the channel accepts, so that the
+ * message can be sent from an event loop, as the channel becomes writable, without ever holding the whole message
+ * in memory:
+ * <ul>
+ * <li>bodies kept in memory or in a temporary file are written directly from where they are stored.</li>
+ * <li>bodies read from a file, as a {@link com.athaydes.rawhttp.core.body.FileBody}, are transferred from the file
+ * to the channel by the operating system, where supported.</li>
+ * <li>any other body is read from its stream, one buffer at a time, only after the previous buffer has been
+ * written. Notice that reading from such stream may block.</li>
+ * </ul>
+ * <p>
+ * Instances of this class are not thread-safe.
+ */
+public class HttpMessageWriter implements Closeable {
+
+    private final ByteBuffer[] buffers;
+
+    @Nullable
+    private final BodyReader bodyReader;
+
+    @Nullable
+    private final BoundedInputStream fileBody;
+
+    @Nullable
+    private final InputStream streamBody;
+
+    @Nullable
+    private final ByteBuffer streamBuffer;
+
+    private boolean streamEnded;
+
+    /**
+     * Create a writer for the given message.
+     *
+     * @param message    to write
+     * @param bufferSize size of the buffer to use for writing, if the body needs to be copied
+     * @throws IOException if an error occurs while reading the first bytes of the body
+     */
+    public HttpMessageWriter(HttpMessage message, int bufferSize) throws IOException {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1: " + bufferSize);
+        }
+        byte[] head;
+        HeadBuffer headBuffer = HeadBuffer.acquire();
+        try {
+            message.writeHead(headBuffer);
+            head = Arrays.copyOf(headBuffer.array(), headBuffer.length());
+        } finally {
+            headBuffer.release();
+        }
+
+        Optional<? extends BodyReader> body = message.getBody();
+        this.bodyReader = body.orElse(null);
+        @Nullable InputStream bodyStream = bodyReader instanceof LazyBodyReader ? bodyReader.asStream() : null;
+
+        if (bodyReader == null) {
+            this.buffers = new ByteBuffer[]{ByteBuffer.wrap(head)};
+            this.fileBody = null;
+            this.streamBody = null;
+            this.streamBuffer = null;
+        } else if (bodyReader instanceof EagerBodyReader) {
+            ByteBuffer[] bodyBuffers = ((EagerBodyReader) bodyReader).asByteBuffers();
+            this.buffers = new ByteBuffer[bodyBuffers.length + 1];
+            buffers[0] = ByteBuffer.wrap(head);
+            System.arraycopy(bodyBuffers, 0, buffers, 1, bodyBuffers.length);
+            this.fileBody = null;
+            this.streamBody = null;
+            this.streamBuffer = null;
+        } else if (bodyStream instanceof BoundedInputStream && ((BoundedInputStream) bodyStream).isFileBacked()) {
+            this.buffers = new ByteBuffer[]{ByteBuffer.wrap(head)};
+            this.fileBody = (BoundedInputStream) bodyStream;
+            this.streamBody = null;
+            this.streamBuffer = null;
+        } else {
+            // send the head together with the first bytes of the body, so small messages need a single write
+            this.buffers = new ByteBuffer[0];
+            this.fileBody = null;
+            this.streamBody = bodyReader.asStream();
+            byte[] bytes = Arrays.copyOf(head, head.length + bufferSize);
+            int actuallyRead = streamBody.read(bytes, head.length, bufferSize);
+            this.streamBuffer = ByteBuffer.wrap(bytes, 0, head.length + Math.max(actuallyRead, 0));
+            this.streamEnded = actuallyRead < 0;
+        }
+    }
+
+    /**
+     * Write as many bytes of the message as the given channel accepts.
+     * <p>
+     * If the channel is in blocking mode, the whole message is written before this method returns.
+     *
+     * @param channel to write to
+     * @return true if the whole message has been written, false if this method must be called again
+     * once the channel can accept more bytes
+     * @throws IOException if an error occurs while reading the body or writing to the channel
+     */
+    public boolean write(WritableByteChannel channel) throws IOException {
+        if (!writeBuffers(channel)) {
+            return false;
+        }
+        if (fileBody != null) {
+            while (fileBody.remaining() > 0) {
+                if (fileBody.transferAvailable(channel) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (streamBody != null && streamBuffer != null) {
+            byte[] bytes = streamBuffer.array();
+            while (true) {
+                if (streamBuffer.hasRemaining()) {
+                    channel.write(streamBuffer);
+                    if (streamBuffer.hasRemaining()) {
+                        return false;
+                    }
+                }
+                if (streamEnded) {
+                    return true;
+                }
+                int actuallyRead = streamBody.read(bytes, 0, bytes.length);
+                if (actuallyRead < 0) {
+                    streamEnded = true;
+                    streamBuffer.limit(0);
+                } else {
+                    streamBuffer.position(0);
+                    streamBuffer.limit(actuallyRead);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean writeBuffers(WritableByteChannel channel) throws IOException {
+        if (!hasRemaining(buffers)) {
+            return true;
+        }
+        if (channel instanceof GatheringByteChannel) {
+            while (hasRemaining(buffers)) {
+                if (((GatheringByteChannel) channel).write(buffers) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Close the body of the message if it is read lazily, as it cannot be written again.
+     *
+     * @throws IOException if an error occurs while closing the body
+     */
+    @Override
+    public void close() throws IOException {
+        if (bodyReader instanceof LazyBodyReader) {
+            bodyReader.close();
+        }
+    }
+
+}
@@ -0,0 +1,752 @@
+package com.athaydes.rawhttp.core;
+
+import com.athaydes.rawhttp.core.BodyReader.BodyType;
+import com.athaydes.rawhttp.core.ChunkedBodyContents.Chunk;
+import com.athaydes.rawhttp.core.errors.InvalidHttpRequest;
+import com.athaydes.rawhttp.core.errors.InvalidHttpResponse;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static com.athaydes.rawhttp.core.RawHttpHeaders.Builder.emptyRawHttpHeaders;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A HTTP message parser that can be fed with fragments of a message as they are received, without blocking.
+ * <p>
+ * The parser keeps its state between calls to {@link #feed(ByteBuffer)}, and reports on each call whether more
+ * bytes are needed, the message head (start-line and headers) is complete or the whole message is complete.
+ * Each byte is only scanned once: the head is parsed directly from the lines collected by this parser, following
+ * the same rules as {@link RawHttp#parseRequest(java.io.InputStream)} and
+ * {@link RawHttp#parseResponse(java.io.InputStream)}, and the body is decoded as it is received.
+ * The messages produced by this parser have eager bodies, unless the body of a message is streamed with
+ * {@link #streamBody()}, in which case its bytes are reported as they are decoded.
+ * <p>
+ * The amount of memory used by the parser is bounded by the options of the given {@link RawHttp} instance:
+ * messages whose head is larger than {@link RawHttpOptions#maxHeadSize()} are rejected, and bodies larger than
+ * {@link RawHttpOptions#maxBodySizeInMemory()} are written to a temporary file as they are received, as done by
+ * {@link EagerBodyReader}.
+ * <p>
+ * Once a message is complete, the next call to {@link #feed(ByteBuffer)} starts parsing the next message, so the
+ * same parser can be used to read all messages sent over a connection. A parser never consumes bytes beyond the end
+ * of the current message.
+ * <p>
+ * Instances of this class are not thread-safe.
+ *
+ * @param <M> type of the HTTP message
+ * @see #requestParser(RawHttp)
+ * @see #responseParser(RawHttp, MethodLine)
+ */
+public abstract class HttpPushParser<M extends HttpMessage> {
+
+    /**
+     * Result of feeding bytes to a {@link HttpPushParser}.
+     */
+    public enum Status {
+        /**
+         * More bytes are needed for the parser to make progress.
+         */
+        NEED_MORE_BYTES,
+
+        /**
+         * The message head is complete, and is available via {@link #getHead()}. The message has a body,
+         * which has not been fully received yet.
+         */
+        HEAD_COMPLETE,
+
+        /**
+         * Decoded bytes of the body of the current message are available via {@link #getBodyBytes()}.
+         * This is only reported for messages whose body is streamed, see {@link #streamBody()}.
+         */
+        BODY_BYTES_AVAILABLE,
+
+        /**
+         * The whole message has been received, and is available via {@link #getMessage()}.
+         */
+        MESSAGE_COMPLETE
+    }
+
+    private enum State {
+        HEAD, BODY, CHUNK_SIZE, CHUNK_EXTENSIONS, CHUNK_DATA, CHUNK_DATA_END, TRAILER, CLOSE_TERMINATED, DONE
+    }
+
+    // enough for any positive long value, as in ChunkedBodyInputStream
+    private static final int MAX_CHUNK_SIZE_DIGITS = 16;
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.wrap(EMPTY);
+
+    final RawHttp http;
+    private final boolean allowNewLineWithoutReturn;
+    private final int maxHeadSize;
+    private final long maxBodySizeInMemory;
+
+    // metadata (head, chunk extensions or trailer) lines, without their terminators
+    private byte[] bytes = new byte[1024];
+    private int length = 0;
+    private int lineStart = 0;
+    private int[] lineBounds = new int[32];
+    private int lineCount = 0;
+    private int lineNumber = 1;
+    private int metadataSize = 0;
+    private boolean afterReturn = false;
+
+    // the decoded body, or the data of the current chunk, unless the body is being written to a temporary file
+    private byte[] body = EMPTY;
+    private int bodyLength = 0;
+    private long bodyCapacity = 0;
+    private boolean spillBody = false;
+    @Nullable
+    private MappedBody.Writer spill;
+
+    // the body of the current message is streamed rather than read eagerly
+    private boolean streaming = false;
+    private boolean canStreamBody = false;
+    private ByteBuffer bodyBytes = EMPTY_BUFFER;
+
+    @Nullable
+    private List<Chunk> chunks;
+    private RawHttpHeaders chunkExtensions = emptyRawHttpHeaders();
+    private long chunkedBodySize = 0;
+    @Nullable
+    private RawHttpHeaders trailerHeaders;
+
+    private State state = State.HEAD;
+    private long remaining = 0;
+    private long chunkSize = 0;
+    private int chunkSizeDigits = 0;
+
+    @Nullable
+    private BodyType bodyType;
+    @Nullable
+    private M head;
+    @Nullable
+    private M message;
+
+    HttpPushParser(RawHttp http) {
+        RawHttpOptions options = http.getOptions();
+        this.http = http;
+        this.allowNewLineWithoutReturn = options.allowNewLineWithoutReturn();
+        this.maxHeadSize = options.maxHeadSize();
+        this.maxBodySizeInMemory = Math.min(options.maxBodySizeInMemory(), EagerBodyReader.MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * Create a parser for HTTP requests.
+     *
+     * @param http to parse the request heads with
+     * @return a request parser
+     */
+    public static HttpPushParser<RawHttpRequest> requestParser(RawHttp http) {
+        return new RequestParser(http);
+    }
+
+    /**
+     * Create a parser for HTTP responses.
+     *
+     * @param http       to parse the response heads with
+     * @param methodLine optional {@link MethodLine} of the request which results in the responses to be parsed.
+     *                   See {@link RawHttp#parseResponse(java.io.InputStream, MethodLine)}.
+     * @return a response parser
+     */
+    public static HttpPushParser<RawHttpResponse<Void>> responseParser(RawHttp http,
+                                                                       @Nullable MethodLine methodLine) {
+        return new ResponseParser(http, methodLine);
+    }
+
+    /**
+     * Parse the head of a message.
+     *
+     * @param bytes      containing the lines of the head
+     * @param lineBounds bounds of the lines, see {@link BufferedHttpInputStream#getLineBounds()}
+     * @param lineCount  number of lines
+     * @return the message, without a body
+     */
+    abstract M parseHead(byte[] bytes, int[] lineBounds, int lineCount);
+
+    abstract boolean hasBody(M head);
+
+    abstract M withBody(M head, @Nullable BodyReader bodyReader);
+
+    abstract RuntimeException createError(String message, int lineNumber);
+
+    /**
+     * Consume bytes from the given buffer, up to the end of the current message.
+     * <p>
+     * Bytes remaining in the buffer when this method returns belong to the next message (or have not been consumed
+     * because the message head has just been completed, or body bytes have been reported), and should be fed to
+     * this parser again. After {@link Status#BODY_BYTES_AVAILABLE} is reported, this method must be called again
+     * even if no bytes remain in the buffer, as the message may have been completed by the reported bytes.
+     *
+     * @param buffer containing the next bytes of the message
+     * @return the parsing status
+     * @throws InvalidHttpRequest   if this is a request parser and the request is invalid
+     * @throws InvalidHttpResponse  if this is a response parser and the response is invalid
+     * @throws UncheckedIOException if the body is too large to be kept in memory, and an error occurs while
+     *                              writing it to a temporary file
+     */
+    public Status feed(ByteBuffer buffer) {
+        if (state == State.DONE) {
+            reset();
+        }
+        bodyBytes = EMPTY_BUFFER;
+        if (buffer.hasRemaining()) {
+            canStreamBody = false;
+        }
+        try {
+            if (state == State.BODY && remaining == 0) {
+                // the last bytes of a streamed body have already been reported
+                return complete();
+            }
+            while (buffer.hasRemaining()) {
+                switch (state) {
+                    case BODY:
+                    case CHUNK_DATA:
+                    case CLOSE_TERMINATED:
+                        int count = state == State.CLOSE_TERMINATED ?
+                                buffer.remaining() :
+                                (int) Math.min(remaining, buffer.remaining());
+                        if (streaming) {
+                            bodyBytes = buffer.slice();
+                            bodyBytes.limit(count);
+                            buffer.position(buffer.position() + count);
+                        } else {
+                            bodyBytes(buffer, count);
+                        }
+                        remaining -= count;
+                        if (state == State.CHUNK_DATA && remaining == 0) {
+                            chunkDataEnd();
+                        }
+                        if (streaming) {
+                            return Status.BODY_BYTES_AVAILABLE;
+                        }
+                        if (state == State.BODY && remaining == 0) {
+                            return complete();
+                        }
+                        break;
+                    case HEAD:
+                        if (metadata(buffer.get())) {
+                            return headComplete();
+                        }
+                        break;
+                    case TRAILER:
+                        if (metadata(buffer.get())) {
+                            return complete();
+                        }
+                        break;
+                    default:
+                        chunkFraming(buffer.get());
+                }
+            }
+        } catch (RuntimeException e) {
+            discardBody();
+            throw e;
+        }
+        return Status.NEED_MORE_BYTES;
+    }
+
+    /**
+     * Notify this parser that the end of the input has been reached, e.g. because the connection was closed.
+     * <p>
+     * This is required to complete messages whose body is terminated by the connection being closed.
+     *
+     * @return {@link Status#MESSAGE_COMPLETE} if a message was completed by the end of input, or
+     * {@link Status#NEED_MORE_BYTES} if no bytes of a new message had been received
+     * @throws InvalidHttpRequest  if this is a request parser and the request is incomplete
+     * @throws InvalidHttpResponse if this is a response parser and the response is incomplete
+     */
+    public Status endOfInput() {
+        bodyBytes = EMPTY_BUFFER;
+        if (state == State.CLOSE_TERMINATED || (state == State.BODY && remaining == 0)) {
+            return complete();
+        }
+        if (state == State.DONE || (state == State.HEAD && metadataSize == 0)) {
+            return Status.NEED_MORE_BYTES;
+        }
+        discardBody();
+        throw createError("Unexpected end of input", state == State.HEAD ? lineNumber : 0);
+    }
+
+    /**
+     * @return the head of the current message (i.e. the message without its body), once
+     * {@link Status#HEAD_COMPLETE} or {@link Status#MESSAGE_COMPLETE} has been reported
+     * @throws IllegalStateException if the head is not complete yet
+     */
+    public M getHead() {
+        if (head == null) {
+            throw new IllegalStateException("Message head is not complete");
+        }
+        return head;
+    }
+
+    /**
+     * @return the current message, including its eagerly-read body, once {@link Status#MESSAGE_COMPLETE}
+     * has been reported. If the body of the message was streamed, the message has no body.
+     * @throws IllegalStateException if the message is not complete yet
+     */
+    public M getMessage() {
+        if (message == null) {
+            throw new IllegalStateException("Message is not complete");
+        }
+        return message;
+    }
+
+    /**
+     * @return the trailer headers of the current message, once {@link Status#MESSAGE_COMPLETE} has been reported
+     * for a message with a chunked body, or empty otherwise
+     */
+    public Optional<RawHttpHeaders> getTrailerHeaders() {
+        return Optional.ofNullable(trailerHeaders);
+    }
+
+    /**
+     * Stream the body of the current message instead of reading it eagerly.
+     * <p>
+     * This method may only be called right after {@link Status#HEAD_COMPLETE} has been reported. From then on,
+     * each call to {@link #feed(ByteBuffer)} that decodes bytes of the body reports
+     * {@link Status#BODY_BYTES_AVAILABLE}, and the bytes can be obtained from {@link #getBodyBytes()}.
+     * The body is not kept by this parser, so bodies of any size can be received in constant memory.
+     *
+     * @throws IllegalStateException if the head of the current message has not just been completed
+     */
+    public void streamBody() {
+        if (!canStreamBody) {
+            throw new IllegalStateException("The body can only be streamed right after the message head is complete");
+        }
+        canStreamBody = false;
+        streaming = true;
+        chunks = null;
+    }
+
+    /**
+     * @return the decoded body bytes reported by the last call to {@link #feed(ByteBuffer)}, if it returned
+     * {@link Status#BODY_BYTES_AVAILABLE}, or an empty buffer otherwise. The returned buffer shares its contents
+     * with the buffer given to {@link #feed(ByteBuffer)}, so it must be consumed before that buffer is reused.
+     */
+    public ByteBuffer getBodyBytes() {
+        return bodyBytes;
+    }
+
+    /**
+     * Discard the current message, if any, so that the next bytes fed to this parser are parsed as the beginning of
+     * a new message.
+     * <p>
+     * This method should also be called when a parser is abandoned in the middle of a message, so that the temporary
+     * file holding a large body, if any, is deleted immediately.
+     */
+    public void reset() {
+        discardBody();
+        clearMetadata();
+        lineNumber = 1;
+        state = State.HEAD;
+        remaining = 0;
+        chunkSize = 0;
+        chunkSizeDigits = 0;
+        chunkExtensions = emptyRawHttpHeaders();
+        chunkedBodySize = 0;
+        trailerHeaders = null;
+        bodyCapacity = 0;
+        spillBody = false;
+        streaming = false;
+        canStreamBody = false;
+        bodyBytes = EMPTY_BUFFER;
+        bodyType = null;
+        head = null;
+        message = null;
+    }
+
+    private void clearMetadata() {
+        length = 0;
+        lineStart = 0;
+        lineCount = 0;
+        metadataSize = 0;
+        afterReturn = false;
+    }
+
+    private void discardBody() {
+        body = EMPTY;
+        bodyLength = 0;
+        chunks = null;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignore) {
+                // the body is being discarded anyway
+            }
+            spill = null;
+        }
+    }
+
+    /**
+     * @return true if the metadata (head or trailer) is complete, false otherwise.
+     */
+    private boolean metadata(byte b) {
+        if (++metadataSize > maxHeadSize) {
+            throw createError((state == State.HEAD ? "Message head" : "Trailer") +
+                    " is too big (more than " + maxHeadSize + " bytes)", lineNumber);
+        }
+        if (afterReturn) {
+            afterReturn = false;
+            if (b != '\n') {
+                throw createError("Illegal character after return", lineNumber);
+            }
+            return metadataLineEnd();
+        }
+        if (b == '\r') {
+            afterReturn = true;
+        } else if (b == '\n') {
+            if (!allowNewLineWithoutReturn) {
+                throw createError("Illegal new-line character without preceding return", lineNumber);
+            }
+            return metadataLineEnd();
+        } else {
+            append(b);
+        }
+        return false;
+    }
+
+    private boolean metadataLineEnd() {
+        if (length > lineStart) {
+            addLine(lineStart, length);
+            lineStart = length;
+            lineNumber++;
+            return false;
+        }
+        lineNumber++;
+        return true;
+    }
+
+    private void addLine(int start, int end) {
+        int index = lineCount * 2;
+        if (index == lineBounds.length) {
+            lineBounds = Arrays.copyOf(lineBounds, lineBounds.length * 2);
+        }
+        lineBounds[index] = start;
+        lineBounds[index + 1] = end;
+        lineCount++;
+    }
+
+    private void append(byte b) {
+        if (length == bytes.length) {
+            // the metadata size is limited, so this cannot overflow
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        bytes[length++] = b;
+    }
+
+    private Status headComplete() {
+        M parsedHead = parseHead(bytes, lineBounds, lineCount);
+        head = parsedHead;
+        clearMetadata();
+
+        if (!hasBody(parsedHead)) {
+            return complete();
+        }
+
+        RawHttpHeaders headers = parsedHead.getHeaders();
+        long contentLength;
+        try {
+            contentLength = headers.contentLength();
+            bodyType = RawHttp.getBodyType(headers, contentLength < 0 ? null : contentLength);
+        } catch (IllegalArgumentException e) {
+            throw createError(e.getMessage(), 0);
+        }
+
+        switch (bodyType) {
+            case CONTENT_LENGTH:
+                if (contentLength == 0) {
+                    // the message is already complete
+                    return complete();
+                }
+                remaining = contentLength;
+                if (contentLength > maxBodySizeInMemory) {
+                    spillBody = true;
+                } else {
+                    bodyCapacity = contentLength;
+                }
+                state = State.BODY;
+                break;
+            case CHUNKED:
+                chunks = new ArrayList<>();
+                state = State.CHUNK_SIZE;
+                break;
+            default:
+                bodyCapacity = maxBodySizeInMemory;
+                state = State.CLOSE_TERMINATED;
+        }
+        canStreamBody = true;
+        return Status.HEAD_COMPLETE;
+    }
+
+    private void bodyBytes(ByteBuffer buffer, int count) {
+        try {
+            if (spill == null && (spillBody || bodyLength + (long) count > maxBodySizeInMemory)) {
+                spill = newSpill();
+                spill.write(ByteBuffer.wrap(body, 0, bodyLength));
+                body = EMPTY;
+                bodyLength = 0;
+            }
+            if (spill != null) {
+                ByteBuffer bodyBuffer = buffer.duplicate();
+                bodyBuffer.limit(buffer.position() + count);
+                spill.write(bodyBuffer);
+                buffer.position(bodyBuffer.position());
+                return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (bodyLength + count > body.length) {
+            // grow the body as bytes are received, do not trust the declared size to allocate memory
+            long newSize = Math.max(2L * body.length, (long) bodyLength + count);
+            body = Arrays.copyOf(body, (int) Math.min(newSize, bodyCapacity));
+        }
+        buffer.get(body, bodyLength, count);
+        bodyLength += count;
+    }
+
+    private static MappedBody.Writer newSpill() {
+        try {
+            return new MappedBody.Writer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void chunkFraming(byte b) {
+        if (afterReturn) {
+            afterReturn = false;
+            if (b != '\n') {
+                throw createError("Illegal character after return", lineNumber);
+            }
+            chunkLineEnd();
+            return;
+        }
+        if (b == '\r') {
+            afterReturn = true;
+            return;
+        }
+        if (b == '\n') {
+            if (!allowNewLineWithoutReturn) {
+                throw createError("Illegal new-line character without preceding return", lineNumber);
+            }
+            chunkLineEnd();
+            return;
+        }
+        switch (state) {
+            case CHUNK_SIZE:
+                int digit = Character.digit(b, 16);
+                if (digit >= 0) {
+                    if (chunkSizeDigits == MAX_CHUNK_SIZE_DIGITS) {
+                        throw createError("Invalid chunk-size (too big, more than " +
+                                MAX_CHUNK_SIZE_DIGITS + " hex-digits)", lineNumber);
+                    }
+                    if (chunkSize > (Long.MAX_VALUE >> 4)) {
+                        throw createError("Invalid chunk-size (too big)", lineNumber);
+                    }
+                    chunkSize = (chunkSize << 4) + digit;
+                    chunkSizeDigits++;
+                } else if (b == ';') {
+                    state = State.CHUNK_EXTENSIONS;
+                } else {
+                    throw createError("Invalid chunk-size", lineNumber);
+                }
+                return;
+            case CHUNK_EXTENSIONS:
+                if (length == maxHeadSize) {
+                    throw createError("Chunk extensions are too big (more than " + maxHeadSize + " bytes)",
+                            lineNumber);
+                }
+                append(b);
+                return;
+            case CHUNK_DATA_END:
+                throw createError("Illegal character after chunk-data (missing CRLF)", lineNumber);
+            default:
+                throw new IllegalStateException("Unexpected state: " + state);
+        }
+    }
+
+    private void chunkLineEnd() {
+        if (state == State.CHUNK_DATA_END) {
+            lineNumber++;
+            state = State.CHUNK_SIZE;
+        } else {
+            chunkSizeLineEnd();
+        }
+    }
+
+    private void chunkSizeLineEnd() {
+        if (chunkSizeDigits == 0) {
+            throw createError("Missing chunk-size", lineNumber);
+        }
+        if (!streaming && spill == null && chunkSize > maxBodySizeInMemory - chunkedBodySize) {
+            spillChunks();
+        }
+        lineNumber++;
+        if (state == State.CHUNK_EXTENSIONS) {
+            chunkExtensions = parseChunkExtensions();
+            length = 0;
+        } else {
+            chunkExtensions = emptyRawHttpHeaders();
+        }
+        chunkedBodySize += chunkSize;
+        if (chunkSize == 0) {
+            addChunk(EMPTY);
+            state = State.TRAILER;
+        } else {
+            remaining = chunkSize;
+            bodyCapacity = chunkSize;
+            state = State.CHUNK_DATA;
+        }
+        chunkSize = 0;
+        chunkSizeDigits = 0;
+    }
+
+    /**
+     * Move the data of the chunks received so far to a temporary file, where the data of the next chunks is
+     * also written, as the chunked body is too big to be kept in memory.
+     */
+    private void spillChunks() {
+        spill = newSpill();
+        if (chunks != null) {
+            try {
+                for (Chunk chunk : chunks) {
+                    spill.write(ByteBuffer.wrap(chunk.getData()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        // the chunks of a body kept in a temporary file are not available, see EagerBodyReader
+        chunks = null;
+    }
+
+    private RawHttpHeaders parseChunkExtensions() {
+        try {
+            return ChunkedBodyInputStream.parseExtensions(
+                    new ByteArrayInputStream(bytes, 0, length), allowNewLineWithoutReturn);
+        } catch (IOException e) {
+            // impossible as the extensions are read from memory
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void chunkDataEnd() {
+        addChunk(body);
+        body = EMPTY;
+        bodyLength = 0;
+        state = State.CHUNK_DATA_END;
+    }
+
+    private void addChunk(byte[] data) {
+        // chunks are not kept when the body is streamed
+        if (chunks != null) {
+            chunks.add(new Chunk(chunkExtensions, data));
+        }
+    }
+
+    private Status complete() {
+        M currentHead = getHead();
+        if (bodyType == BodyType.CHUNKED) {
+            trailerHeaders = RawHttp.parseHeaders(bytes, 0, lineBounds, 0, lineCount,
+                    this::createError).build();
+        }
+        // a streamed body has already been reported
+        message = withBody(currentHead, streaming ? null : eagerBody());
+        body = EMPTY;
+        bodyLength = 0;
+        chunks = null;
+        state = State.DONE;
+        return Status.MESSAGE_COMPLETE;
+    }
+
+    @Nullable
+    private BodyReader eagerBody() {
+        if (spill != null) {
+            try {
+                return new EagerBodyReader(requireNonNull(bodyType), null, spill.finish(), null, trailerHeaders);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                discardBody();
+            }
+        }
+        if (bodyType == BodyType.CHUNKED) {
+            ChunkedBodyContents chunkedBody = new ChunkedBodyContents(requireNonNull(chunks),
+                    requireNonNull(trailerHeaders));
+            return new EagerBodyReader(bodyType, chunkedBody.getData(), null, chunkedBody, trailerHeaders);
+        }
+        if (bodyType != null) {
+            byte[] data = bodyLength == body.length ? body : Arrays.copyOf(body, bodyLength);
+            return new EagerBodyReader(bodyType, data, null, null, null);
+        }
+        return null;
+    }
+
+    private static final class RequestParser extends HttpPushParser<RawHttpRequest> {
+
+        RequestParser(RawHttp http) {
+            super(http);
+        }
+
+        @Override
+        RawHttpRequest parseHead(byte[] bytes, int[] lineBounds, int lineCount) {
+            return http.parseRequest(bytes, 0, lineBounds, lineCount, null);
+        }
+
+        @Override
+        boolean hasBody(RawHttpRequest head) {
+            return RawHttp.requestHasBody(head.getHeaders());
+        }
+
+        @Override
+        RawHttpRequest withBody(RawHttpRequest head, @Nullable BodyReader bodyReader) {
+            return new RawHttpRequest(head.getStartLine(), head.getHeaders(), bodyReader);
+        }
+
+        @Override
+        RuntimeException createError(String message, int lineNumber) {
+            return new InvalidHttpRequest(message, lineNumber);
+        }
+    }
+
+    private static final class ResponseParser extends HttpPushParser<RawHttpResponse<Void>> {
+
+        @Nullable
+        private final MethodLine methodLine;
+
+        ResponseParser(RawHttp http, @Nullable MethodLine methodLine) {
+            super(http);
+            this.methodLine = methodLine;
+        }
+
+        @Override
+        RawHttpResponse<Void> parseHead(byte[] bytes, int[] lineBounds, int lineCount) {
+            return http.parseResponse(bytes, 0, lineBounds, lineCount, methodLine, null);
+        }
+
+        @Override
+        boolean hasBody(RawHttpResponse<Void> head) {
+            return RawHttp.responseHasBody(head.getStartLine(), methodLine);
+        }
+
+        @Override
+        RawHttpResponse<Void> withBody(RawHttpResponse<Void> head, @Nullable BodyReader bodyReader) {
+            return new RawHttpResponse<>(null, null, head.getStartLine(), head.getHeaders(), bodyReader);
+        }
+
+        @Override
+        RuntimeException createError(String message, int lineNumber) {
+            return new InvalidHttpResponse(message, lineNumber);
+        }
+    }
+
+}
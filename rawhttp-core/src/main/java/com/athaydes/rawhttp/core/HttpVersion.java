@@ -1,5 +1,9 @@
 package com.athaydes.rawhttp.core;
 
+import javax.annotation.Nullable;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
 /**
  * Known HTTP Versions.
  * <p>
@@ -12,10 +16,14 @@ public enum HttpVersion {
     HTTP_1_1("HTTP/1.1"),
     HTTP_2("HTTP/2");
 
+    private static final HttpVersion[] VALUES = values();
+
     private final String version;
+    private final byte[] versionBytes;
 
     HttpVersion(String version) {
         this.version = version;
+        this.versionBytes = version.getBytes(US_ASCII);
     }
 
     @Override
@@ -23,6 +31,13 @@ public enum HttpVersion {
         return version;
     }
 
+    /**
+     * @return this version encoded as US-ASCII bytes. The returned array must not be modified.
+     */
+    byte[] bytes() {
+        return versionBytes;
+    }
+
     /**
      * @param other http version
      * @return true if this version is older than the other, false otherwise.
@@ -46,4 +61,32 @@ public enum HttpVersion {
         }
     }
 
+    /**
+     * Parse the HTTP version contained in a region of a byte array, without allocating a String.
+     *
+     * @param bytes containing the HTTP version
+     * @param start index of the first byte of the HTTP version
+     * @param end   index after the last byte of the HTTP version
+     * @return the HTTP version, or null if the bytes do not represent a known HTTP version
+     */
+    @Nullable
+    static HttpVersion parse(byte[] bytes, int start, int end) {
+        for (HttpVersion httpVersion : VALUES) {
+            byte[] expected = httpVersion.versionBytes;
+            if (expected.length == end - start && regionMatches(bytes, start, expected)) {
+                return httpVersion;
+            }
+        }
+        return null;
+    }
+
+    private static boolean regionMatches(byte[] bytes, int start, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 }
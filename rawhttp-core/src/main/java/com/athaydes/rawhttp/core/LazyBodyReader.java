@@ -3,11 +3,17 @@ package com.athaydes.rawhttp.core;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Lazy implementation of {@link BodyReader}.
  * <p>
  * Instances of this class are "live", i.e. they should only be used while the HTTP connection is live.
+ * <p>
+ * If the body's length is known from the message's headers (i.e. its type is
+ * {@link BodyType#CONTENT_LENGTH} or {@link BodyType#CHUNKED}), the streams provided by this class end exactly
+ * at the end of the body, so that other HTTP messages can be read from the same connection afterwards.
+ * If the body is not read fully, it should be drained with {@link #drain()} before doing that.
  *
  * @see #eager()
  */
@@ -15,25 +21,68 @@ public class LazyBodyReader extends BodyReader {
 
     private final InputStream inputStream;
 
+    // view of the inputStream which ends at the end of the body, if possible
+    private final InputStream bodyStream;
+
     @Nullable
     private final Long streamLength;
 
     private final boolean allowNewLineWithoutReturn;
+    private final long maxBodySizeInMemory;
+    private final int maxTrailerSize;
+
+    @Nullable
+    private ChunkedBodyInputStream decodedStream;
 
     public LazyBodyReader(BodyType bodyType,
                           InputStream inputStream,
                           @Nullable Long streamLength,
                           boolean allowNewLineWithoutReturn) {
+        this(bodyType, inputStream, streamLength, allowNewLineWithoutReturn,
+                EagerBodyReader.DEFAULT_MAX_BODY_SIZE_IN_MEMORY);
+    }
+
+    public LazyBodyReader(BodyType bodyType,
+                          InputStream inputStream,
+                          @Nullable Long streamLength,
+                          boolean allowNewLineWithoutReturn,
+                          long maxBodySizeInMemory) {
+        this(bodyType, inputStream, streamLength, allowNewLineWithoutReturn, maxBodySizeInMemory,
+                RawHttpOptions.DEFAULT_MAX_HEAD_SIZE);
+    }
+
+    /**
+     * Create a new {@link LazyBodyReader}.
+     *
+     * @param bodyType                  type of the body
+     * @param inputStream               stream producing the body
+     * @param streamLength              length of the body, if known
+     * @param allowNewLineWithoutReturn whether to accept new-lines that are not preceded by a return
+     * @param maxBodySizeInMemory       maximum size of the body for it to be kept in memory when it is
+     *                                  read eagerly
+     * @param maxTrailerSize            maximum size, in bytes, of the trailer headers of a chunked body
+     * @see EagerBodyReader
+     */
+    public LazyBodyReader(BodyType bodyType,
+                          InputStream inputStream,
+                          @Nullable Long streamLength,
+                          boolean allowNewLineWithoutReturn,
+                          long maxBodySizeInMemory,
+                          int maxTrailerSize) {
         super(bodyType);
         this.inputStream = inputStream;
         this.streamLength = streamLength;
+        this.bodyStream = boundedBodyStream(bodyType, inputStream, streamLength);
         this.allowNewLineWithoutReturn = allowNewLineWithoutReturn;
+        this.maxBodySizeInMemory = maxBodySizeInMemory;
+        this.maxTrailerSize = maxTrailerSize;
     }
 
     @Override
     public EagerBodyReader eager() throws IOException {
         try {
-            return new EagerBodyReader(getBodyType(), inputStream, streamLength, allowNewLineWithoutReturn);
+            return new EagerBodyReader(getBodyType(), bodyStream, streamLength,
+                    allowNewLineWithoutReturn, maxBodySizeInMemory, maxTrailerSize);
         } catch (IOException e) {
             // error while trying to read message body, we cannot keep the connection alive
             try {
@@ -46,9 +95,69 @@ public class LazyBodyReader extends BodyReader {
         }
     }
 
+    private static InputStream boundedBodyStream(BodyType bodyType,
+                                                 InputStream inputStream,
+                                                 @Nullable Long streamLength) {
+        switch (bodyType) {
+            case CONTENT_LENGTH:
+                return streamLength == null ? inputStream : new BoundedInputStream(inputStream, streamLength);
+            case CHUNKED:
+                return new RawChunkedInputStream(inputStream);
+            default:
+                return inputStream;
+        }
+    }
+
     @Override
     public InputStream asStream() {
-        return inputStream;
+        return bodyStream;
+    }
+
+    /**
+     * @return the stream which produces the decoded HTTP message body.
+     * If the body has the "chunked" transfer-coding, the returned stream decodes it lazily, chunk by chunk,
+     * so the body does not need to fit in memory. Once the end of the stream is reached, the trailer headers
+     * can be obtained from {@link ChunkedBodyInputStream#getTrailerHeaders()}.
+     */
+    @Override
+    public InputStream asDecodedStream() {
+        if (getBodyType() == BodyType.CHUNKED) {
+            if (decodedStream == null) {
+                decodedStream = new ChunkedBodyInputStream(bodyStream, allowNewLineWithoutReturn, maxTrailerSize);
+            }
+            return decodedStream;
+        }
+        return asStream();
+    }
+
+    @Override
+    boolean transfersDirectly() {
+        return bodyStream instanceof BoundedInputStream && ((BoundedInputStream) bodyStream).isFileBacked();
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, int bufferSize) throws IOException {
+        if (bodyStream instanceof BoundedInputStream) {
+            ((BoundedInputStream) bodyStream).transferTo(channel, bufferSize);
+        } else {
+            super.writeTo(channel, bufferSize);
+        }
+    }
+
+    /**
+     * Consume whatever is left of the HTTP message body, discarding it.
+     * <p>
+     * After this method returns, the underlying stream is positioned right after the end of the body
+     * (unless the body is {@link BodyType#CLOSE_TERMINATED}, in which case the stream is consumed until its end).
+     *
+     * @throws IOException if an error occurs while reading the body
+     */
+    public void drain() throws IOException {
+        while (true) {
+            if (bodyStream.skip(8192) <= 0 && bodyStream.read() < 0) {
+                break;
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,266 @@
+package com.athaydes.rawhttp.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The contents of a HTTP message body that is too large to be kept on the heap.
+ * <p>
+ * The body is written to a temporary file, which is then memory-mapped and deleted, so that the memory used by the
+ * body is released by the operating system once this object is garbage-collected, without any need to close it.
+ * Bodies larger than 2GB are mapped in several regions.
+ */
+final class MappedBody {
+
+    private static final int MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final ByteBuffer[] regions;
+    private final long length;
+
+    private MappedBody(ByteBuffer[] regions, long length) {
+        this.regions = regions;
+        this.length = length;
+    }
+
+    /**
+     * Store the given bytes, followed by the contents of the given stream.
+     *
+     * @param prefix       bytes already read from the stream
+     * @param prefixLength number of bytes to use from the prefix
+     * @param inputStream  to read the rest of the body from
+     * @param maxLength    maximum number of bytes to store (including the prefix), or a negative number to read the
+     *                     stream until its end
+     * @return the stored body, which may be shorter than {@code maxLength} if the stream ends before that
+     * @throws IOException if an error occurs reading from the stream or writing to the temporary file
+     */
+    static MappedBody store(byte[] prefix, int prefixLength,
+                            InputStream inputStream, long maxLength) throws IOException {
+        try (Writer writer = new Writer()) {
+            // the prefix may be larger than the buffer, so it is written directly
+            writer.write(ByteBuffer.wrap(prefix, 0, prefixLength));
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long length = prefixLength;
+            while (maxLength < 0 || length < maxLength) {
+                int toRead = buffer.remaining();
+                if (maxLength >= 0) {
+                    toRead = (int) Math.min(toRead, maxLength - length);
+                }
+                int bytesRead = inputStream.read(buffer.array(), buffer.position(), toRead);
+                if (bytesRead < 0) {
+                    break;
+                }
+                buffer.position(buffer.position() + bytesRead);
+                length += bytesRead;
+                if (!buffer.hasRemaining()) {
+                    flush(writer, buffer);
+                }
+            }
+            flush(writer, buffer);
+            return writer.finish();
+        }
+    }
+
+    private static void flush(Writer writer, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writer.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @return the length of the body.
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * @return a new stream producing the body.
+     */
+    InputStream asStream() {
+        return new RegionsInputStream(regions);
+    }
+
+    /**
+     * @return new views of the mapped regions, which together contain the body
+     */
+    ByteBuffer[] duplicateRegions() {
+        ByteBuffer[] result = new ByteBuffer[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            result[i] = regions[i].duplicate();
+        }
+        return result;
+    }
+
+    /**
+     * Write the body to the given channel, directly from the mapped regions.
+     *
+     * @param channel to write to
+     * @throws IOException if an error occurs while writing
+     */
+    void writeTo(WritableByteChannel channel) throws IOException {
+        for (ByteBuffer region : regions) {
+            BodyReader.writeFully(channel, region.duplicate());
+        }
+    }
+
+    /**
+     * @return the body copied into a new array.
+     * @throws IllegalStateException if the body is too large to fit in an array
+     */
+    byte[] toByteArray() {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Body is too large to fit in an array (" + length + " bytes), " +
+                    "use asStream() to read it instead");
+        }
+        byte[] result = new byte[(int) length];
+        int offset = 0;
+        for (ByteBuffer region : regions) {
+            ByteBuffer view = region.duplicate();
+            int size = view.remaining();
+            view.get(result, offset, size);
+            offset += size;
+        }
+        return result;
+    }
+
+    /**
+     * Writer of a body to a temporary file, for bodies whose bytes become available incrementally.
+     * <p>
+     * Once all bytes have been written, {@link #finish()} maps the file. Closing the writer deletes the file, so
+     * a writer must always be closed, whether or not it was finished.
+     */
+    static final class Writer implements Closeable {
+
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private long length = 0;
+
+        Writer() throws IOException {
+            this.file = File.createTempFile("rawhttp-body", ".tmp");
+            try {
+                this.randomAccessFile = new RandomAccessFile(file, "rw");
+            } catch (IOException e) {
+                deleteFile();
+                throw e;
+            }
+            this.channel = randomAccessFile.getChannel();
+        }
+
+        /**
+         * Write all the remaining bytes of the given buffer.
+         *
+         * @param buffer to write
+         * @throws IOException if an error occurs while writing to the temporary file
+         */
+        void write(ByteBuffer buffer) throws IOException {
+            length += buffer.remaining();
+            BodyReader.writeFully(channel, buffer);
+        }
+
+        /**
+         * Map the bytes written so far.
+         *
+         * @return the stored body
+         * @throws IOException if an error occurs while mapping the temporary file
+         */
+        MappedBody finish() throws IOException {
+            List<ByteBuffer> regions = new ArrayList<>((int) (length / MAX_REGION_SIZE) + 1);
+            for (long position = 0; position < length; position += MAX_REGION_SIZE) {
+                long regionSize = Math.min(MAX_REGION_SIZE, length - position);
+                regions.add(channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize));
+            }
+            return new MappedBody(regions.toArray(new ByteBuffer[0]), length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                randomAccessFile.close();
+            } finally {
+                deleteFile();
+            }
+        }
+
+        private void deleteFile() {
+            // the mapped regions remain valid after the file is deleted (except on Windows, where the file
+            // cannot be deleted while mapped)
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static final class RegionsInputStream extends InputStream {
+
+        private final ByteBuffer[] regions;
+        private int index = 0;
+
+        RegionsInputStream(ByteBuffer[] regions) {
+            // each stream needs its own positions
+            this.regions = new ByteBuffer[regions.length];
+            for (int i = 0; i < regions.length; i++) {
+                this.regions[i] = regions[i].duplicate();
+            }
+        }
+
+        private boolean ensureRemaining() {
+            while (index < regions.length && !regions[index].hasRemaining()) {
+                index++;
+            }
+            return index < regions.length;
+        }
+
+        @Override
+        public int read() {
+            if (!ensureRemaining()) {
+                return -1;
+            }
+            return regions[index].get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureRemaining()) {
+                return -1;
+            }
+            ByteBuffer region = regions[index];
+            int count = Math.min(len, region.remaining());
+            region.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = 0;
+            while (skipped < n && ensureRemaining()) {
+                ByteBuffer region = regions[index];
+                int count = (int) Math.min(n - skipped, region.remaining());
+                region.position(region.position() + count);
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return ensureRemaining() ? regions[index].remaining() : 0;
+        }
+
+    }
+
+}
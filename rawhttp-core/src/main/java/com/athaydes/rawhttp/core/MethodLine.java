@@ -1,7 +1,7 @@
 package com.athaydes.rawhttp.core;
 
+import javax.annotation.Nullable;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.Optional;
 
 /**
@@ -65,16 +65,28 @@ public class MethodLine implements StartLine {
      */
     @Override
     public String toString() {
-        URI pathURI;
-        String path = (uri.getPath() == null || uri.getPath().trim().isEmpty())
-                ? "/" : uri.getPath();
+        HeadBuffer buffer = HeadBuffer.acquire();
         try {
-            // only path and query are sent to the server
-            pathURI = new URI(null, null, null, -1, path, uri.getQuery(), null);
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
+            writeTo(buffer);
+            return buffer.toString();
+        } finally {
+            buffer.release();
         }
+    }
 
-        return method + " " + pathURI + " " + httpVersion;
+    void writeTo(HeadBuffer buffer) {
+        // only path and query are sent to the server
+        @Nullable String path = uri.getRawPath();
+        buffer.append(method).append((byte) ' ');
+        if (path == null || path.isEmpty()) {
+            buffer.append((byte) '/');
+        } else {
+            buffer.appendUriComponent(path);
+        }
+        @Nullable String query = uri.getRawQuery();
+        if (query != null) {
+            buffer.append((byte) '?').appendUriComponent(query);
+        }
+        buffer.append((byte) ' ').append(httpVersion.bytes());
     }
-}
\ No newline at end of file
+}
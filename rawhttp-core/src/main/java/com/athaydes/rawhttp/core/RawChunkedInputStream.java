@@ -0,0 +1,184 @@
+package com.athaydes.rawhttp.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} that produces the raw bytes of a HTTP message body which has the "chunked"
+ * transfer-coding, including the chunks' framing and the trailer, stopping exactly at the end of the body.
+ * <p>
+ * The framing is only followed as far as needed to find the end of the body. Validating and decoding the body
+ * is left to {@link ChunkedBodyInputStream} and {@link EagerBodyReader}, so this stream never fails on invalid
+ * framing: it simply ends right after the first byte that it cannot make sense of.
+ */
+class RawChunkedInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 0;
+    private static final int CHUNK_EXTENSIONS = 1;
+    private static final int CHUNK_DATA = 2;
+    private static final int CHUNK_DATA_END = 3;
+    private static final int TRAILER_LINE_START = 4;
+    private static final int TRAILER_LINE = 5;
+    private static final int DONE = 6;
+
+    private final InputStream inputStream;
+
+    private int state = CHUNK_SIZE;
+    private long chunkSize = 0;
+    private boolean hasChunkSize = false;
+
+    // bytes remaining in the current chunk's data
+    private long remaining = 0;
+
+    RawChunkedInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (state == DONE) {
+            return -1;
+        }
+        int b = inputStream.read();
+        if (b < 0) {
+            state = DONE;
+            return -1;
+        }
+        if (state == CHUNK_DATA) {
+            chunkDataRead(1);
+        } else {
+            process(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (state == DONE) {
+            return -1;
+        }
+        if (state == CHUNK_DATA) {
+            int bytesRead = inputStream.read(b, off, (int) Math.min(len, remaining));
+            if (bytesRead < 0) {
+                state = DONE;
+            } else {
+                chunkDataRead(bytesRead);
+            }
+            return bytesRead;
+        }
+
+        // the framing is read byte by byte, so that we never read beyond it
+        int count = 0;
+        while (count < len && state != CHUNK_DATA && state != DONE) {
+            int next = inputStream.read();
+            if (next < 0) {
+                state = DONE;
+                break;
+            }
+            b[off + count++] = (byte) next;
+            process(next);
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (state == CHUNK_DATA) {
+            long skipped = inputStream.skip(Math.min(n, remaining));
+            if (skipped > 0) {
+                chunkDataRead(skipped);
+            }
+            return skipped;
+        }
+        return super.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (state == CHUNK_DATA) {
+            return (int) Math.min(remaining, inputStream.available());
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private void chunkDataRead(long count) {
+        remaining -= count;
+        if (remaining == 0) {
+            state = CHUNK_DATA_END;
+        }
+    }
+
+    private void process(int b) {
+        switch (state) {
+            case CHUNK_SIZE:
+                int digit = Character.digit(b, 16);
+                if (digit >= 0) {
+                    if (chunkSize > (Long.MAX_VALUE >> 4)) {
+                        state = DONE;
+                        break;
+                    }
+                    chunkSize = (chunkSize << 4) + digit;
+                    hasChunkSize = true;
+                } else if (b == '\n') {
+                    chunkSizeLineEnd();
+                } else if (b != '\r') {
+                    state = CHUNK_EXTENSIONS;
+                }
+                break;
+            case CHUNK_EXTENSIONS:
+                if (b == '\n') {
+                    chunkSizeLineEnd();
+                }
+                break;
+            case CHUNK_DATA_END:
+                if (b == '\n') {
+                    state = CHUNK_SIZE;
+                } else if (b != '\r') {
+                    state = DONE;
+                }
+                break;
+            case TRAILER_LINE_START:
+                if (b == '\n') {
+                    state = DONE;
+                } else if (b != '\r') {
+                    state = TRAILER_LINE;
+                }
+                break;
+            case TRAILER_LINE:
+                if (b == '\n') {
+                    state = TRAILER_LINE_START;
+                }
+                break;
+            default:
+                state = DONE;
+        }
+    }
+
+    private void chunkSizeLineEnd() {
+        if (!hasChunkSize) {
+            state = DONE;
+        } else if (chunkSize == 0) {
+            state = TRAILER_LINE_START;
+        } else {
+            remaining = chunkSize;
+            state = CHUNK_DATA;
+        }
+        chunkSize = 0;
+        hasChunkSize = false;
+    }
+
+}
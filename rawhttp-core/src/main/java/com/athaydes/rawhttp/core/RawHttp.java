@@ -12,13 +12,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.function.BiFunction;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
 
@@ -38,6 +39,10 @@ import static java.util.stream.Collectors.toList;
  */
 public class RawHttp {
 
+    private static final String[] COMMON_METHODS = {
+            "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH", "TRACE", "CONNECT"
+    };
+
     private final RawHttpOptions options;
 
     /**
@@ -56,6 +61,13 @@ public class RawHttp {
         this.options = options;
     }
 
+    /**
+     * @return the options used by this instance
+     */
+    public RawHttpOptions getOptions() {
+        return options;
+    }
+
     /**
      * Parses the given HTTP request.
      *
@@ -65,7 +77,8 @@ public class RawHttp {
      */
     public final RawHttpRequest parseRequest(String request) {
         try {
-            return parseRequest(new ByteArrayInputStream(request.getBytes(UTF_8)));
+            return parseRequest(new BufferedHttpInputStream(
+                    new ByteArrayInputStream(request.getBytes(UTF_8))));
         } catch (IOException e) {
             // IOException should be impossible
             throw new RuntimeException(e);
@@ -82,12 +95,17 @@ public class RawHttp {
      */
     public final RawHttpRequest parseRequest(File file) throws IOException {
         try (FileInputStream stream = new FileInputStream(file)) {
-            return parseRequest(stream).eagerly();
+            return parseRequest(new BufferedHttpInputStream(stream)).eagerly();
         }
     }
 
     /**
      * Parses the HTTP request produced by the given stream.
+     * <p>
+     * If the stream is a {@link BufferedHttpInputStream}, it is read from directly, otherwise the stream is
+     * never read beyond the end of the request's metadata before the body is consumed.
+     * When parsing several requests from the same connection, prefer to wrap the connection's stream
+     * into a single {@link BufferedHttpInputStream}, which is much more efficient.
      *
      * @param inputStream producing a HTTP request
      * @return a parsed HTTP request object
@@ -95,24 +113,42 @@ public class RawHttp {
      * @throws IOException        if a problem occurs accessing the stream
      */
     public RawHttpRequest parseRequest(InputStream inputStream) throws IOException {
-        List<String> metadataLines = parseMetadataLines(inputStream,
-                InvalidHttpRequest::new,
-                options.allowNewLineWithoutReturn());
+        BufferedHttpInputStream stream = BufferedHttpInputStream.wrap(inputStream);
+        int lineCount = stream.readMetadataLines(InvalidHttpRequest::new,
+                options.allowNewLineWithoutReturn(), options.maxHeadSize());
+
+        return parseRequest(stream.getBuffer(), stream.getMetadataStart(), stream.getLineBounds(), lineCount, stream);
+    }
 
-        if (metadataLines.isEmpty()) {
+    /**
+     * Parses a HTTP request from its metadata lines.
+     *
+     * @param bytes      containing the metadata lines
+     * @param offset     index, in the bytes, which the line bounds are relative to
+     * @param lineBounds bounds of the lines, as returned by {@link BufferedHttpInputStream#getLineBounds()}
+     * @param lineCount  number of lines
+     * @param bodyStream stream producing the body of the request, or null to parse only the head of the request
+     * @return a parsed HTTP request object, which has no body if the body stream is null
+     * @throws InvalidHttpRequest if the request is invalid
+     */
+    RawHttpRequest parseRequest(byte[] bytes, int offset, int[] lineBounds, int lineCount,
+                                @Nullable InputStream bodyStream) {
+        if (lineCount == 0) {
             throw new InvalidHttpRequest("No content", 0);
         }
 
-        MethodLine methodLine = parseMethodLine(metadataLines.remove(0));
-        RawHttpHeaders.Builder headersBuilder = parseHeaders(metadataLines, InvalidHttpRequest::new);
+        MethodLine methodLine = parseMethodLine(bytes,
+                offset + lineBounds[0], offset + lineBounds[1], ISO_8859_1);
+        RawHttpHeaders.Builder headersBuilder = parseHeaders(bytes, offset, lineBounds, 1, lineCount,
+                InvalidHttpRequest::new);
 
         // do a little cleanup to make sure the request is actually valid
         methodLine = verifyHost(methodLine, headersBuilder);
 
         RawHttpHeaders headers = headersBuilder.build();
 
-        boolean hasBody = requestHasBody(headers);
-        @Nullable BodyReader bodyReader = createBodyReader(inputStream, headers, hasBody);
+        @Nullable BodyReader bodyReader = bodyStream == null ? null :
+                createBodyReader(bodyStream, headers, requestHasBody(headers));
 
         return new RawHttpRequest(methodLine, headers, bodyReader);
     }
@@ -127,7 +163,7 @@ public class RawHttp {
     public final RawHttpResponse<Void> parseResponse(String response) {
         try {
             return parseResponse(
-                    new ByteArrayInputStream(response.getBytes(UTF_8)),
+                    new BufferedHttpInputStream(new ByteArrayInputStream(response.getBytes(UTF_8))),
                     null);
         } catch (IOException e) {
             // IOException should be impossible
@@ -145,7 +181,7 @@ public class RawHttp {
      */
     public final RawHttpResponse<Void> parseResponse(File file) throws IOException {
         try (FileInputStream stream = new FileInputStream(file)) {
-            return parseResponse(stream, null).eagerly();
+            return parseResponse(new BufferedHttpInputStream(stream), null).eagerly();
         }
     }
 
@@ -163,6 +199,9 @@ public class RawHttp {
 
     /**
      * Parses the HTTP response produced by the given stream.
+     * <p>
+     * If the stream is a {@link BufferedHttpInputStream}, it is read from directly, otherwise the stream is
+     * never read beyond the end of the response's metadata before the body is consumed.
      *
      * @param inputStream producing a HTTP response
      * @param methodLine  optional {@link MethodLine} of the request which results in this response.
@@ -175,19 +214,40 @@ public class RawHttp {
      */
     public RawHttpResponse<Void> parseResponse(InputStream inputStream,
                                                @Nullable MethodLine methodLine) throws IOException {
-        List<String> metadataLines = parseMetadataLines(inputStream,
-                InvalidHttpResponse::new,
-                options.allowNewLineWithoutReturn());
+        BufferedHttpInputStream stream = BufferedHttpInputStream.wrap(inputStream);
+        int lineCount = stream.readMetadataLines(InvalidHttpResponse::new,
+                options.allowNewLineWithoutReturn(), options.maxHeadSize());
 
-        if (metadataLines.isEmpty()) {
+        return parseResponse(stream.getBuffer(), stream.getMetadataStart(), stream.getLineBounds(), lineCount,
+                methodLine, stream);
+    }
+
+    /**
+     * Parses a HTTP response from its metadata lines.
+     *
+     * @param bytes      containing the metadata lines
+     * @param offset     index, in the bytes, which the line bounds are relative to
+     * @param lineBounds bounds of the lines, as returned by {@link BufferedHttpInputStream#getLineBounds()}
+     * @param lineCount  number of lines
+     * @param methodLine optional {@link MethodLine} of the request which results in this response
+     * @param bodyStream stream producing the body of the response, or null to parse only the head of the response
+     * @return a parsed HTTP response object, which has no body if the body stream is null
+     * @throws InvalidHttpResponse if the response is invalid
+     */
+    RawHttpResponse<Void> parseResponse(byte[] bytes, int offset, int[] lineBounds, int lineCount,
+                                        @Nullable MethodLine methodLine,
+                                        @Nullable InputStream bodyStream) {
+        if (lineCount == 0) {
             throw new InvalidHttpResponse("No content", 0);
         }
 
-        StatusCodeLine statusCodeLine = parseStatusCodeLine(metadataLines.remove(0));
-        RawHttpHeaders headers = parseHeaders(metadataLines, InvalidHttpResponse::new).build();
+        StatusCodeLine statusCodeLine = parseStatusCodeLine(bytes,
+                offset + lineBounds[0], offset + lineBounds[1], ISO_8859_1);
+        RawHttpHeaders headers = parseHeaders(bytes, offset, lineBounds, 1, lineCount,
+                InvalidHttpResponse::new).build();
 
-        boolean hasBody = responseHasBody(statusCodeLine, methodLine);
-        @Nullable BodyReader bodyReader = createBodyReader(inputStream, headers, hasBody);
+        @Nullable BodyReader bodyReader = bodyStream == null ? null :
+                createBodyReader(bodyStream, headers, responseHasBody(statusCodeLine, methodLine));
 
         return new RawHttpResponse<>(null, null, statusCodeLine, headers, bodyReader);
     }
@@ -197,66 +257,17 @@ public class RawHttp {
         @Nullable BodyReader bodyReader;
 
         if (hasBody) {
-            @Nullable Long bodyLength = null;
-            OptionalLong headerLength = parseContentLength(headers);
-            if (headerLength.isPresent()) {
-                bodyLength = headerLength.getAsLong();
-            }
+            long contentLength = headers.contentLength();
+            @Nullable Long bodyLength = contentLength < 0 ? null : contentLength;
             BodyType bodyType = getBodyType(headers, bodyLength);
-            bodyReader = new LazyBodyReader(bodyType, inputStream, bodyLength, options.allowNewLineWithoutReturn());
+            bodyReader = new LazyBodyReader(bodyType, inputStream, bodyLength,
+                    options.allowNewLineWithoutReturn(), options.maxBodySizeInMemory(), options.maxHeadSize());
         } else {
             bodyReader = null;
         }
         return bodyReader;
     }
 
-    static List<String> parseMetadataLines(InputStream inputStream,
-                                           BiFunction<String, Integer, RuntimeException> createError,
-                                           boolean allowNewLineWithoutReturn) throws IOException {
-        List<String> metadataLines = new ArrayList<>();
-        StringBuilder metadataBuilder = new StringBuilder();
-        boolean wasNewLine = true;
-        int lineNumber = 1;
-        int b;
-        while ((b = inputStream.read()) >= 0) {
-            if (b == '\r') {
-                // expect new-line
-                int next = inputStream.read();
-                if (next < 0 || next == '\n') {
-                    lineNumber++;
-                    if (wasNewLine) break;
-                    metadataLines.add(metadataBuilder.toString());
-                    if (next < 0) break;
-                    metadataBuilder = new StringBuilder();
-                    wasNewLine = true;
-                } else {
-                    inputStream.close();
-                    throw createError.apply("Illegal character after return", lineNumber);
-                }
-            } else if (b == '\n') {
-                if (!allowNewLineWithoutReturn) {
-                    throw createError.apply("Illegal new-line character without preceding return", lineNumber);
-                }
-
-                // unexpected, but let's accept new-line without returns
-                lineNumber++;
-                if (wasNewLine) break;
-                metadataLines.add(metadataBuilder.toString());
-                metadataBuilder = new StringBuilder();
-                wasNewLine = true;
-            } else {
-                metadataBuilder.append((char) b);
-                wasNewLine = false;
-            }
-        }
-
-        if (metadataBuilder.length() > 0) {
-            metadataLines.add(metadataBuilder.toString());
-        }
-
-        return metadataLines;
-    }
-
     /**
      * Get the body type of a HTTP message with the given headers.
      * <p>
@@ -269,9 +280,17 @@ public class RawHttp {
      */
     public static BodyType getBodyType(RawHttpHeaders headers,
                                        @Nullable Long bodyLength) {
-        return bodyLength == null ?
-                parseContentEncoding(headers).orElse(BodyType.CLOSE_TERMINATED) :
-                BodyType.CONTENT_LENGTH;
+        if (bodyLength != null) {
+            return BodyType.CONTENT_LENGTH;
+        }
+        if (headers.isChunked()) {
+            return BodyType.CHUNKED;
+        }
+        Optional<String> encoding = last(headers.get(HeaderName.TRANSFER_ENCODING));
+        if (encoding.isPresent()) {
+            throw new IllegalArgumentException("Transfer-Encoding is not supported: " + encoding);
+        }
+        return BodyType.CLOSE_TERMINATED;
     }
 
     /**
@@ -285,7 +304,7 @@ public class RawHttp {
         // Content-Length or Transfer-Encoding header field.  Request message
         // framing is independent of method semantics, even if the method does
         // not define any use for a message body.
-        return headers.contains("Content-Length") || headers.contains("Transfer-Encoding");
+        return headers.contains(HeaderName.CONTENT_LENGTH) || headers.contains(HeaderName.TRANSFER_ENCODING);
     }
 
     /**
@@ -340,19 +359,6 @@ public class RawHttp {
         return minCode <= statusCode && statusCode <= maxCode;
     }
 
-    private static Optional<BodyType> parseContentEncoding(RawHttpHeaders headers) {
-        Optional<String> encoding = last(headers.get("Transfer-Encoding"));
-        if (encoding.isPresent()) {
-            if (encoding.get().equalsIgnoreCase("chunked")) {
-                return Optional.of(BodyType.CHUNKED);
-            } else {
-                throw new IllegalArgumentException("Transfer-Encoding is not supported: " + encoding);
-            }
-        } else {
-            return Optional.empty();
-        }
-    }
-
     private static Optional<String> last(Collection<String> items) {
         String result = null;
         for (String item : items) {
@@ -369,51 +375,67 @@ public class RawHttp {
      * @throws InvalidHttpResponse if the status code line is invalid
      */
     public static StatusCodeLine parseStatusCodeLine(String line) {
-        if (line.trim().isEmpty()) {
+        byte[] bytes = line.getBytes(UTF_8);
+        return parseStatusCodeLine(bytes, 0, bytes.length, UTF_8);
+    }
+
+    /**
+     * Parses a HTTP response's status code line contained in a region of a byte array.
+     * <p>
+     * The line is split into at most 3 parts (HTTP version, status code and reason phrase) at the first two
+     * sequences of whitespace characters.
+     *
+     * @param bytes   containing the status code line
+     * @param start   index of the first byte of the line
+     * @param end     index after the last byte of the line
+     * @param charset charset used to decode the reason phrase
+     * @return the status code line
+     * @throws InvalidHttpResponse if the status code line is invalid
+     */
+    static StatusCodeLine parseStatusCodeLine(byte[] bytes, int start, int end, Charset charset) {
+        if (isBlank(bytes, start, end)) {
             throw new InvalidHttpResponse("Empty status line", 1);
         }
-        String[] parts = line.split("\\s+", 3);
 
-        String httpVersion = "HTTP/1.1";
-        String statusCode;
+        int i = start;
+        int firstEnd = nextWhitespace(bytes, i, end);
+        i = skipWhitespace(bytes, firstEnd, end);
+
+        @Nullable HttpVersion version;
+        int statusStart, statusEnd;
         String reason = "";
 
-        switch (parts.length) {
+        if (i == end && firstEnd == end) {
             // accept just a status code
-            case 1:
-                statusCode = parts[0];
-                break;
-            case 2:
-                httpVersion = parts[0];
-                statusCode = parts[1];
-                break;
-            case 3:
-                httpVersion = parts[0];
-                statusCode = parts[1];
-                reason = parts[2];
-                break;
-            default:
-                // should never happen, we limit the split to 3 parts
-                throw new IllegalStateException();
+            version = HttpVersion.HTTP_1_1;
+            statusStart = start;
+            statusEnd = firstEnd;
+        } else {
+            version = HttpVersion.parse(bytes, start, firstEnd);
+            statusStart = i;
+            statusEnd = nextWhitespace(bytes, i, end);
+            if (statusEnd < end) {
+                int reasonStart = skipWhitespace(bytes, statusEnd, end);
+                reason = new String(bytes, reasonStart, end - reasonStart, charset);
+            }
         }
 
-        HttpVersion version;
-        try {
-            version = HttpVersion.parse(httpVersion);
-        } catch (IllegalArgumentException e) {
+        if (version == null) {
             throw new InvalidHttpResponse("Invalid HTTP version", 1);
         }
 
+        int statusCode;
         try {
-            return new StatusCodeLine(version, Integer.parseInt(statusCode), reason);
+            statusCode = parseInt(bytes, statusStart, statusEnd);
         } catch (NumberFormatException e) {
             throw new InvalidHttpResponse("Invalid status", 1);
         }
 
+        return new StatusCodeLine(version, statusCode, reason);
     }
 
     private MethodLine verifyHost(MethodLine methodLine, RawHttpHeaders.Builder headers) {
-        List<String> host = headers.build().get("Host");
+        List<String> host = headers.build().get(HeaderName.HOST);
         if (host.isEmpty()) {
             if (!options.insertHostHeaderIfMissing()) {
                 throw new InvalidHttpRequest("Host header is missing", 1);
@@ -421,7 +443,7 @@ public class RawHttp {
                 throw new InvalidHttpRequest("Host not given either in method line or Host header", 1);
             } else {
                 // add the Host header to make sure the request is legal
-                headers.with("Host", methodLine.getUri().getHost());
+                headers.with(HeaderName.HOST, methodLine.getUri().getHost());
             }
             return methodLine;
         } else if (host.size() == 1) {
@@ -431,7 +453,7 @@ public class RawHttp {
             try {
                 MethodLine newMethodLine = methodLine.withHost(host.iterator().next());
                 // cleanup the host header
-                headers.overwrite("Host", newMethodLine.getUri().getHost());
+                headers.overwrite(HeaderName.HOST, newMethodLine.getUri().getHost());
                 return newMethodLine;
             } catch (IllegalArgumentException e) {
                 int lineNumber = headers.getHeaderNames().stream()
@@ -457,25 +479,143 @@ public class RawHttp {
      * @throws InvalidHttpRequest if the method line is invalid
      */
     public static MethodLine parseMethodLine(String methodLine) {
-        if (methodLine.isEmpty()) {
+        byte[] bytes = methodLine.getBytes(UTF_8);
+        return parseMethodLine(bytes, 0, bytes.length, UTF_8);
+    }
+
+    /**
+     * Parses a HTTP request's method line contained in a region of a byte array.
+     * <p>
+     * The line must consist of 2 or 3 parts (method, URI and, optionally, HTTP version)
+     * separated by whitespace characters.
+     *
+     * @param bytes   containing the method line
+     * @param start   index of the first byte of the line
+     * @param end     index after the last byte of the line
+     * @param charset charset used to decode the method and URI
+     * @return the method line
+     * @throws InvalidHttpRequest if the method line is invalid
+     */
+    static MethodLine parseMethodLine(byte[] bytes, int start, int end, Charset charset) {
+        if (start == end) {
             throw new InvalidHttpRequest("Empty method line", 1);
-        } else {
-            String[] parts = methodLine.split("\\s+");
-            if (parts.length == 2 || parts.length == 3) {
-                String method = parts[0];
-                URI uri = createUri(parts[1]);
-                String version = parts.length == 3 ? parts[2] : "HTTP/1.1";
-                HttpVersion httpVersion;
-                try {
-                    httpVersion = HttpVersion.parse(version);
-                } catch (IllegalArgumentException e) {
-                    throw new InvalidHttpRequest("Invalid HTTP version", 1);
-                }
-                return new MethodLine(method, uri, httpVersion);
-            } else {
+        }
+
+        // bounds of each part: method, URI, version
+        int[] parts = new int[6];
+        int partsCount = 0;
+        int i = start;
+
+        if (isWhitespace(bytes[i])) {
+            i = skipWhitespace(bytes, i, end);
+            if (i < end) {
+                // leading whitespace results in an empty method
+                parts[0] = parts[1] = start;
+                partsCount++;
+            }
+        }
+
+        while (i < end) {
+            if (partsCount == 3) {
                 throw new InvalidHttpRequest("Invalid method line", 1);
             }
+            int partEnd = nextWhitespace(bytes, i, end);
+            parts[partsCount * 2] = i;
+            parts[partsCount * 2 + 1] = partEnd;
+            partsCount++;
+            i = skipWhitespace(bytes, partEnd, end);
+        }
+
+        if (partsCount != 2 && partsCount != 3) {
+            throw new InvalidHttpRequest("Invalid method line", 1);
+        }
+
+        String method = methodName(bytes, parts[0], parts[1], charset);
+        URI uri = createUri(new String(bytes, parts[2], parts[3] - parts[2], charset));
+        @Nullable HttpVersion httpVersion = partsCount == 3 ?
+                HttpVersion.parse(bytes, parts[4], parts[5]) :
+                HttpVersion.HTTP_1_1;
+        if (httpVersion == null) {
+            throw new InvalidHttpRequest("Invalid HTTP version", 1);
+        }
+        return new MethodLine(method, uri, httpVersion);
+    }
+
+    private static String methodName(byte[] bytes, int start, int end, Charset charset) {
+        // avoid allocating a new String for the most common methods
+        for (String method : COMMON_METHODS) {
+            if (method.length() == end - start && asciiRegionMatches(bytes, start, method)) {
+                return method;
+            }
+        }
+        return new String(bytes, start, end - start, charset);
+    }
+
+    private static boolean asciiRegionMatches(byte[] bytes, int start, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes[start + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        // same characters as String.trim()
+        for (int i = start; i < end; i++) {
+            if ((bytes[i] & 0xFF) > ' ') {
+                return false;
+            }
         }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && isWhitespace(bytes[i])) i++;
+        return i;
+    }
+
+    private static int nextWhitespace(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && !isWhitespace(bytes[i])) i++;
+        return i;
+    }
+
+    /**
+     * Same as {@link Integer#parseInt(String)}, but parsing ASCII digits directly from a byte array.
+     */
+    private static int parseInt(byte[] bytes, int start, int end) {
+        if (start == end) {
+            throw new NumberFormatException("empty");
+        }
+        boolean negative = false;
+        int i = start;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+            if (i == end) {
+                throw new NumberFormatException("sign without digits");
+            }
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("not a digit");
+            }
+            result = result * 10 + digit;
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("overflow");
+            }
+        }
+        if (negative) {
+            result = -result;
+        }
+        if (result > Integer.MAX_VALUE) {
+            throw new NumberFormatException("overflow");
+        }
+        return (int) result;
     }
 
     /**
@@ -485,10 +625,11 @@ public class RawHttp {
      *
      * @param headers HTTP message's headers
      * @return the value of the Content-Length header, if any, or empty otherwise.
+     * @see RawHttpHeaders#contentLength()
      */
     public static OptionalLong parseContentLength(RawHttpHeaders headers) {
-        Optional<String> contentLength = headers.getFirst("Content-Length");
-        return contentLength.map(s -> OptionalLong.of(Long.parseLong(s))).orElseGet(OptionalLong::empty);
+        long contentLength = headers.contentLength();
+        return contentLength < 0 ? OptionalLong.empty() : OptionalLong.of(contentLength);
     }
 
     private static URI createUri(String part) {
@@ -532,4 +673,79 @@ public class RawHttp {
         return builder;
     }
 
+    /**
+     * Parses the HTTP messages' headers from the metadata lines last read by the given stream.
+     * <p>
+     * This method is equivalent to {@link #parseHeaders(List, BiFunction)}, but works directly
+     * on the bytes of the lines.
+     *
+     * @param stream      stream which has just read the metadata lines
+     * @param firstLine   index of the first header line
+     * @param createError error factory - used in case an error is encountered
+     * @return modifiable {@link RawHttpHeaders.Builder}
+     */
+    static RawHttpHeaders.Builder parseHeaders(
+            BufferedHttpInputStream stream,
+            int firstLine,
+            BiFunction<String, Integer, RuntimeException> createError) {
+        return parseHeaders(stream.getBuffer(), stream.getMetadataStart(), stream.getLineBounds(),
+                firstLine, stream.getLineCount(), createError);
+    }
+
+    /**
+     * Parses the HTTP messages' headers from the given metadata lines.
+     *
+     * @param bytes       containing the metadata lines
+     * @param offset      index, in the bytes, which the line bounds are relative to
+     * @param lineBounds  bounds of the lines, as returned by {@link BufferedHttpInputStream#getLineBounds()}
+     * @param firstLine   index of the first header line
+     * @param lineCount   number of lines
+     * @param createError error factory - used in case an error is encountered
+     * @return modifiable {@link RawHttpHeaders.Builder}
+     */
+    static RawHttpHeaders.Builder parseHeaders(
+            byte[] bytes,
+            int offset,
+            int[] lineBounds,
+            int firstLine,
+            int lineCount,
+            BiFunction<String, Integer, RuntimeException> createError) {
+        RawHttpHeaders.Builder builder = RawHttpHeaders.Builder.newBuilder();
+        int lineNumber = 2;
+        for (int line = firstLine; line < lineCount; line++) {
+            int start = offset + lineBounds[line * 2];
+            int end = offset + lineBounds[line * 2 + 1];
+
+            // trim
+            while (start < end && (bytes[start] & 0xFF) <= ' ') start++;
+            while (end > start && (bytes[end - 1] & 0xFF) <= ' ') end--;
+
+            if (start == end) {
+                break;
+            }
+
+            int colon = start;
+            while (colon < end && bytes[colon] != ':') colon++;
+            if (colon == end) {
+                throw createError.apply("Invalid header", lineNumber);
+            }
+
+            int valueStart = colon + 1;
+            if (valueStart < end && isWhitespace(bytes[valueStart])) {
+                valueStart++;
+            }
+
+            builder.with(new String(bytes, start, colon - start, ISO_8859_1),
+                    new String(bytes, valueStart, end - valueStart, ISO_8859_1));
+            lineNumber++;
+        }
+
+        return builder;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        // same characters as the regex \s
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
 }
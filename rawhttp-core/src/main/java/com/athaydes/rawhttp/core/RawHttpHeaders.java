@@ -1,18 +1,20 @@
 package com.athaydes.rawhttp.core;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
-import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.unmodifiableList;
-import static java.util.Collections.unmodifiableMap;
-import static java.util.stream.Collectors.toMap;
+import static java.util.Collections.unmodifiableSet;
 
 /**
  * A Collection of HTTP headers.
@@ -22,19 +24,48 @@ import static java.util.stream.Collectors.toMap;
  * <p>
  * The headers are also kept in the order that they were added, except in cases where the same header is added multiple
  * times, in which case the new values are grouped together with the previous ones.
+ * <p>
+ * Instances of this class are immutable. They share their contents with the {@link Builder} that created them
+ * until the builder is modified, so building, modifying and re-building headers does not require copying all
+ * headers every time.
  *
  * @see HttpMessage
  */
 public class RawHttpHeaders {
 
-    private final Map<String, Header> headersByCapitalizedName;
-
-    private static final Header NULL_HEADER = new Header("").freeze();
-
-    private RawHttpHeaders(Map<String, Header> headersByCapitalizedName) {
-        Map<String, Header> headers = new LinkedHashMap<>(headersByCapitalizedName);
-        headers.entrySet().forEach(entry -> entry.setValue(entry.getValue().freeze()));
-        this.headersByCapitalizedName = unmodifiableMap(headers);
+    private static final RawHttpHeaders EMPTY = new RawHttpHeaders(
+            new String[0], new String[0], new int[0], 0, 0, new int[1]);
+
+    private static final long NOT_PARSED = Long.MIN_VALUE;
+    private static final byte UNKNOWN = 0, FALSE = 1, TRUE = 2;
+
+    // parallel arrays, containing the headers grouped by name.
+    // All entries in a group share the same name instance, that of the first header added to the group.
+    private final String[] names;
+    private final String[] values;
+    private final int[] hashes;
+    private final int size;
+    private final int groupCount;
+
+    // open-addressing hash table containing (position + 1) of the first entry of each group,
+    // keyed by the case-insensitive header name
+    private final int[] index;
+
+    // typed values of well-known headers, parsed on first access.
+    // Instances are shared between Threads, which may race to parse the same value: that is harmless, as they all
+    // compute the same result, but the fields must be volatile so that a long is never read half-written.
+    private volatile long contentLength = NOT_PARSED;
+    private volatile byte chunked = UNKNOWN;
+    private volatile byte connectionClose = UNKNOWN;
+
+    private RawHttpHeaders(String[] names, String[] values, int[] hashes,
+                           int size, int groupCount, int[] index) {
+        this.names = names;
+        this.values = values;
+        this.hashes = hashes;
+        this.size = size;
+        this.groupCount = groupCount;
+        this.index = index;
     }
 
     /**
@@ -42,7 +73,15 @@ public class RawHttpHeaders {
      * @return values for the header, or the empty list if this header is not present.
      */
     public List<String> get(String headerName) {
-        return headersByCapitalizedName.getOrDefault(headerName.toUpperCase(), NULL_HEADER).values;
+        return valuesAt(find(headerName, hashIgnoreCase(headerName)));
+    }
+
+    /**
+     * @param headerName header name
+     * @return values for the header, or the empty list if this header is not present.
+     */
+    public List<String> get(HeaderName headerName) {
+        return valuesAt(find(headerName.getName(), headerName.hash()));
     }
 
     /**
@@ -50,12 +89,17 @@ public class RawHttpHeaders {
      * @return the first value of the header, if any.
      */
     public Optional<String> getFirst(String headerName) {
-        List<String> values = get(headerName);
-        if (values.isEmpty()) {
-            return Optional.empty();
-        } else {
-            return Optional.of(values.get(0));
-        }
+        int start = find(headerName, hashIgnoreCase(headerName));
+        return start < 0 ? Optional.empty() : Optional.of(values[start]);
+    }
+
+    /**
+     * @param headerName header name
+     * @return the first value of the header, if any.
+     */
+    public Optional<String> getFirst(HeaderName headerName) {
+        int start = find(headerName.getName(), headerName.hash());
+        return start < 0 ? Optional.empty() : Optional.of(values[start]);
     }
 
     /**
@@ -64,16 +108,18 @@ public class RawHttpHeaders {
      * @see #getUniqueHeaderNames()
      */
     public List<String> getHeaderNames() {
-        List<String> result = new ArrayList<>(headersByCapitalizedName.size());
-        forEach((name, v) -> result.add(name));
-        return result;
+        return new ArrayList<>(Arrays.asList(names).subList(0, size));
     }
 
     /**
      * @return the unique names of all headers (names are upper-cased).
      */
     public Set<String> getUniqueHeaderNames() {
-        return headersByCapitalizedName.keySet();
+        Set<String> result = new LinkedHashSet<>(groupCount);
+        for (int i = 0; i < size; i = groupEnd(names, size, i)) {
+            result.add(names[i].toUpperCase());
+        }
+        return unmodifiableSet(result);
     }
 
     /**
@@ -83,15 +129,91 @@ public class RawHttpHeaders {
      * @return true if the header is present, false otherwise.
      */
     public boolean contains(String headerName) {
-        return getUniqueHeaderNames().contains(headerName.toUpperCase());
+        return find(headerName, hashIgnoreCase(headerName)) >= 0;
+    }
+
+    /**
+     * Check if the given header name is present in this set of headers.
+     *
+     * @param headerName header name
+     * @return true if the header is present, false otherwise.
+     */
+    public boolean contains(HeaderName headerName) {
+        return find(headerName.getName(), headerName.hash()) >= 0;
+    }
+
+    /**
+     * Get the value of the Content-Length header.
+     * <p>
+     * If more than one value is available, the first one is used. The value is parsed only once.
+     *
+     * @return the value of the Content-Length header, or -1 if this header is not present.
+     * @throws NumberFormatException if the value of the Content-Length header is not a valid, non-negative number
+     */
+    public long contentLength() {
+        long result = contentLength;
+        if (result == NOT_PARSED) {
+            int start = find(HeaderName.CONTENT_LENGTH.getName(), HeaderName.CONTENT_LENGTH.hash());
+            if (start < 0) {
+                result = -1L;
+            } else {
+                result = Long.parseLong(values[start]);
+                if (result < 0) {
+                    throw new NumberFormatException("Negative Content-Length: " + values[start]);
+                }
+            }
+            contentLength = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the last value of the Transfer-Encoding header is "chunked", false otherwise.
+     */
+    public boolean isChunked() {
+        byte result = chunked;
+        if (result == UNKNOWN) {
+            int start = find(HeaderName.TRANSFER_ENCODING.getName(), HeaderName.TRANSFER_ENCODING.hash());
+            boolean isChunked = start >= 0 &&
+                    values[groupEnd(names, size, start) - 1].equalsIgnoreCase("chunked");
+            chunked = result = isChunked ? TRUE : FALSE;
+        }
+        return result == TRUE;
+    }
+
+    /**
+     * @return true if the Connection header contains the "close" option, false otherwise.
+     */
+    public boolean isConnectionClose() {
+        byte result = connectionClose;
+        if (result == UNKNOWN) {
+            boolean isClose = false;
+            int start = find(HeaderName.CONNECTION.getName(), HeaderName.CONNECTION.hash());
+            if (start >= 0) {
+                int end = groupEnd(names, size, start);
+                for (int i = start; i < end && !isClose; i++) {
+                    for (String option : values[i].split(",")) {
+                        if (option.trim().equalsIgnoreCase("close")) {
+                            isClose = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            connectionClose = result = isClose ? TRUE : FALSE;
+        }
+        return result == TRUE;
     }
 
     /**
      * @return a {@link Map} representation of this set of headers.
      */
     public Map<String, List<String>> asMap() {
-        return headersByCapitalizedName.entrySet().stream()
-                .collect(toMap(Map.Entry::getKey, e -> e.getValue().values));
+        Map<String, List<String>> result = new LinkedHashMap<>(groupCount);
+        for (int i = 0; i < size; i = groupEnd(names, size, i)) {
+            result.put(names[i].toUpperCase(), get(names[i]));
+        }
+        return result;
     }
 
     @Override
@@ -101,17 +223,23 @@ public class RawHttpHeaders {
 
         RawHttpHeaders that = (RawHttpHeaders) o;
 
-        boolean sameKeys = headersByCapitalizedName.keySet().equals(that.headersByCapitalizedName.keySet());
-
-        if (!sameKeys) {
+        if (size != that.size || groupCount != that.groupCount) {
             return false;
         }
 
         // check all values
-        for (Map.Entry<String, Header> entry : headersByCapitalizedName.entrySet()) {
-            if (!that.headersByCapitalizedName.get(entry.getKey()).values.equals(entry.getValue().values)) {
+        for (int start = 0; start < size; ) {
+            int end = groupEnd(names, size, start);
+            int otherStart = that.find(names[start], hashes[start]);
+            if (otherStart < 0 || groupEnd(that.names, that.size, otherStart) - otherStart != end - start) {
                 return false;
             }
+            for (int i = start; i < end; i++) {
+                if (!values[i].equals(that.values[otherStart + i - start])) {
+                    return false;
+                }
+            }
+            start = end;
         }
 
         return true;
@@ -126,14 +254,52 @@ public class RawHttpHeaders {
      * @param consumer accepts the header name and value
      */
     public void forEach(BiConsumer<String, String> consumer) {
-        headersByCapitalizedName.forEach((k, v) ->
-                v.values.forEach(value ->
-                        consumer.accept(v.originalHeaderName, value)));
+        for (int i = 0; i < size; i++) {
+            consumer.accept(names[i], values[i]);
+        }
     }
 
     @Override
     public int hashCode() {
-        return headersByCapitalizedName.hashCode();
+        int result = 0;
+        for (int start = 0; start < size; ) {
+            int end = groupEnd(names, size, start);
+            int valuesHash = 1;
+            for (int i = start; i < end; i++) {
+                valuesHash = 31 * valuesHash + values[i].hashCode();
+            }
+            result += hashes[start] ^ valuesHash;
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+     * Create headers with the same names as these, but different values for the last headers.
+     * <p>
+     * All other data is shared with this instance, so this is much cheaper than using a {@link Builder}.
+     * The caller must ensure that each of the replaced headers appears only once.
+     *
+     * @param lastValues new values of the last headers
+     * @return the new headers
+     */
+    RawHttpHeaders withLastValues(String... lastValues) {
+        String[] newValues = values.clone();
+        System.arraycopy(lastValues, 0, newValues, size - lastValues.length, lastValues.length);
+        return new RawHttpHeaders(names, newValues, hashes, size, groupCount, index);
+    }
+
+    /**
+     * Write these headers, followed by the empty line that terminates the head of a HTTP message, to the
+     * given buffer.
+     *
+     * @param buffer to write to
+     */
+    void writeTo(HeadBuffer buffer) {
+        for (int i = 0; i < size; i++) {
+            buffer.append(names[i]).append((byte) ':').append((byte) ' ').append(values[i]).crlf();
+        }
+        buffer.crlf();
     }
 
     @Override
@@ -144,8 +310,94 @@ public class RawHttpHeaders {
         return builder.append("\r\n").toString();
     }
 
+    private int find(String headerName, int hash) {
+        return find(names, hashes, index, headerName, hash);
+    }
+
+    private List<String> valuesAt(int start) {
+        if (start < 0) {
+            return emptyList();
+        }
+        int end = groupEnd(names, size, start);
+        if (end - start == 1) {
+            return singletonList(values[start]);
+        }
+        return unmodifiableList(Arrays.asList(values).subList(start, end));
+    }
+
+    /**
+     * Compute a hash code for a header name that ignores the case of ASCII letters.
+     * <p>
+     * Unlike {@link String#toUpperCase()}, this method does not allocate any memory.
+     *
+     * @param name header name
+     * @return case-insensitive hash code
+     */
+    static int hashIgnoreCase(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + toUpperCaseAscii(name.charAt(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Compare two header names, ignoring the case of ASCII letters.
+     *
+     * @param name  header name
+     * @param other other header name
+     * @return true if the names are equal ignoring case, false otherwise
+     */
+    static boolean equalsIgnoreCase(String name, String other) {
+        if (name == other) return true;
+        int length = name.length();
+        if (length != other.length()) return false;
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            char d = other.charAt(i);
+            if (c != d && toUpperCaseAscii(c) != toUpperCaseAscii(d)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char toUpperCaseAscii(char c) {
+        return ('a' <= c && c <= 'z') ? (char) (c - 32) : c;
+    }
+
+    private static int find(String[] names, int[] hashes, int[] index, String headerName, int hash) {
+        int mask = index.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int position = entry - 1;
+            if (hashes[position] == hash && equalsIgnoreCase(names[position], headerName)) {
+                return position;
+            }
+        }
+    }
+
+    private static int groupEnd(String[] names, int size, int start) {
+        String name = names[start];
+        int end = start + 1;
+        while (end < size && names[end] == name) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
     /**
      * Builder of {@link RawHttpHeaders}.
+     * <p>
+     * The contents of a builder are only copied when it is modified after being shared with a
+     * {@link RawHttpHeaders} instance (copy-on-write).
      */
     public static class Builder {
 
@@ -156,9 +408,10 @@ public class RawHttpHeaders {
          * @return new builder
          */
         public static Builder newBuilder(RawHttpHeaders headers) {
-            Builder builder = new Builder();
-            headers.headersByCapitalizedName.forEach((k, v) ->
-                    builder.headersByCapitalizedName.put(k, v.unfreeze()));
+            Builder builder = new Builder(headers.names, headers.values, headers.hashes,
+                    headers.size, headers.groupCount, headers.index);
+            builder.shared = true;
+            builder.lastBuilt = headers;
             return builder;
         }
 
@@ -168,7 +421,7 @@ public class RawHttpHeaders {
          * @return new builder
          */
         public static Builder newBuilder() {
-            return new Builder();
+            return new Builder(new String[8], new String[8], new int[8], 0, 0, new int[16]);
         }
 
         /**
@@ -177,14 +430,32 @@ public class RawHttpHeaders {
          * @return empty headers
          */
         public static RawHttpHeaders emptyRawHttpHeaders() {
-            return new RawHttpHeaders(emptyMap());
+            return EMPTY;
         }
 
-        private Builder() {
-            // hide
-        }
+        private String[] names;
+        private String[] values;
+        private int[] hashes;
+        private int size;
+        private int groupCount;
+        private int[] index;
+
+        // whether the arrays are shared with a RawHttpHeaders instance
+        private boolean shared;
 
-        private final Map<String, Header> headersByCapitalizedName = new LinkedHashMap<>();
+        // the last instance built, if this builder has not been modified since
+        @Nullable
+        private RawHttpHeaders lastBuilt;
+
+        private Builder(String[] names, String[] values, int[] hashes,
+                        int size, int groupCount, int[] index) {
+            this.names = names;
+            this.values = values;
+            this.hashes = hashes;
+            this.size = size;
+            this.groupCount = groupCount;
+            this.index = index;
+        }
 
         /**
          * Include the given header in this builder.
@@ -194,8 +465,43 @@ public class RawHttpHeaders {
          * @return this
          */
         public Builder with(String headerName, String value) {
-            headersByCapitalizedName.computeIfAbsent(headerName.toUpperCase(),
-                    (ignore) -> new Header(headerName)).values.add(value);
+            return with(headerName, hashIgnoreCase(headerName), value);
+        }
+
+        /**
+         * Include the given header in this builder.
+         *
+         * @param headerName header name
+         * @param value      header value
+         * @return this
+         */
+        public Builder with(HeaderName headerName, String value) {
+            return with(headerName.getName(), headerName.hash(), value);
+        }
+
+        private Builder with(String headerName, int hash, String value) {
+            beforeChange(size + 1);
+            int start = find(names, hashes, index, headerName, hash);
+            if (start < 0) {
+                set(size, headerName, value, hash);
+                size++;
+                groupCount++;
+                if (groupCount * 2 > index.length) {
+                    reindex(index.length * 2);
+                } else {
+                    insert(index, hash, size);
+                }
+            } else {
+                int end = groupEnd(names, size, start);
+                if (end < size) {
+                    System.arraycopy(names, end, names, end + 1, size - end);
+                    System.arraycopy(values, end, values, end + 1, size - end);
+                    System.arraycopy(hashes, end, hashes, end + 1, size - end);
+                    shiftIndex(end, 1);
+                }
+                set(end, names[start], value, hash);
+                size++;
+            }
             return this;
         }
 
@@ -207,8 +513,34 @@ public class RawHttpHeaders {
          * @return this
          */
         public Builder overwrite(String headerName, String value) {
-            String key = headerName.toUpperCase();
-            headersByCapitalizedName.put(key, new Header(headerName, value));
+            return overwrite(headerName, hashIgnoreCase(headerName), value);
+        }
+
+        /**
+         * Overwrite the given header with the single value provided.
+         *
+         * @param headerName header name
+         * @param value      single value for the header
+         * @return this
+         */
+        public Builder overwrite(HeaderName headerName, String value) {
+            return overwrite(headerName.getName(), headerName.hash(), value);
+        }
+
+        private Builder overwrite(String headerName, int hash, String value) {
+            int start = find(names, hashes, index, headerName, hash);
+            if (start < 0) {
+                return with(headerName, hash, value);
+            }
+            int end = groupEnd(names, size, start);
+            if (end - start == 1 && names[start].equals(headerName) && values[start].equals(value)) {
+                // nothing to change
+                return this;
+            }
+            beforeChange(size);
+            names[start] = headerName;
+            values[start] = value;
+            removeEntries(start + 1, end);
             return this;
         }
 
@@ -218,7 +550,26 @@ public class RawHttpHeaders {
          * @param headerName case-insensitive header name
          */
         public void remove(String headerName) {
-            headersByCapitalizedName.remove(headerName.toUpperCase());
+            remove(headerName, hashIgnoreCase(headerName));
+        }
+
+        /**
+         * Remove the header with the given name (including all values).
+         *
+         * @param headerName header name
+         */
+        public void remove(HeaderName headerName) {
+            remove(headerName.getName(), headerName.hash());
+        }
+
+        private void remove(String headerName, int hash) {
+            int start = find(names, hashes, index, headerName, hash);
+            if (start >= 0) {
+                beforeChange(size);
+                removeEntries(start, groupEnd(names, size, start));
+                groupCount--;
+                reindex(index.length);
+            }
         }
 
         /**
@@ -234,47 +585,92 @@ public class RawHttpHeaders {
 
         /**
          * @return new instance of {@link RawHttpHeaders} with all headers added to this builder.
+         * If this builder has not been modified since the last time this method was called (or since it was
+         * created from an existing instance of {@link RawHttpHeaders}), that same instance is returned.
          */
         public RawHttpHeaders build() {
-            return new RawHttpHeaders(headersByCapitalizedName);
+            if (lastBuilt == null) {
+                lastBuilt = new RawHttpHeaders(names, values, hashes, size, groupCount, index);
+                shared = true;
+            }
+            return lastBuilt;
         }
 
         /**
          * @return the names of all headers added to this builder.
          */
         public List<String> getHeaderNames() {
-            return unmodifiableList(headersByCapitalizedName.values().stream()
-                    .map(h -> h.originalHeaderName).collect(Collectors.toList()));
+            List<String> result = new ArrayList<>(groupCount);
+            for (int i = 0; i < size; i = groupEnd(names, size, i)) {
+                result.add(names[i]);
+            }
+            return unmodifiableList(result);
         }
 
-    }
-
-    private static final class Header {
-        private final String originalHeaderName;
-        private final List<String> values;
+        private void beforeChange(int requiredCapacity) {
+            lastBuilt = null;
+            if (shared || requiredCapacity > names.length) {
+                int capacity = Math.max(8, requiredCapacity > names.length ?
+                        Math.max(requiredCapacity, names.length * 2) : names.length);
+                names = Arrays.copyOf(names, capacity);
+                values = Arrays.copyOf(values, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+                if (shared) {
+                    index = index.length < 16 ? new int[16] : index.clone();
+                    if (groupCount > 0) {
+                        reindex(index.length);
+                    }
+                }
+                shared = false;
+            }
+        }
 
-        Header(String originalHeaderName) {
-            this.originalHeaderName = originalHeaderName;
-            this.values = new ArrayList<>(3);
+        private void set(int position, String name, String value, int hash) {
+            names[position] = name;
+            values[position] = value;
+            hashes[position] = hash;
         }
 
-        Header(String originalHeaderName, String value) {
-            this(originalHeaderName);
-            this.values.add(value);
+        private void removeEntries(int start, int end) {
+            int removed = end - start;
+            if (removed == 0) {
+                return;
+            }
+            System.arraycopy(names, end, names, start, size - end);
+            System.arraycopy(values, end, values, start, size - end);
+            System.arraycopy(hashes, end, hashes, start, size - end);
+            for (int i = size - removed; i < size; i++) {
+                names[i] = null;
+                values[i] = null;
+            }
+            size -= removed;
+            shiftIndex(end, -removed);
         }
 
-        Header(String originalHeaderName, List<String> values) {
-            this.originalHeaderName = originalHeaderName;
-            this.values = values;
+        private void shiftIndex(int from, int delta) {
+            for (int slot = 0; slot < index.length; slot++) {
+                if (index[slot] > from) {
+                    index[slot] += delta;
+                }
+            }
         }
 
-        Header freeze() {
-            return new Header(originalHeaderName, unmodifiableList(values));
+        private void reindex(int capacity) {
+            index = new int[capacity];
+            for (int i = 0; i < size; i = groupEnd(names, size, i)) {
+                insert(index, hashes[i], i + 1);
+            }
         }
 
-        Header unfreeze() {
-            return new Header(originalHeaderName, new ArrayList<>(values));
+        private static void insert(int[] index, int hash, int entry) {
+            int mask = index.length - 1;
+            int slot = spread(hash) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = entry;
         }
+
     }
 
 }
@@ -7,15 +7,26 @@ package com.athaydes.rawhttp.core;
  */
 public class RawHttpOptions {
 
+    /**
+     * The default maximum size of the head (start-line and headers) of a HTTP message.
+     */
+    public static final int DEFAULT_MAX_HEAD_SIZE = 64 * 1024;
+
     private static final RawHttpOptions DEFAULT_INSTANCE = Builder.newBuilder().build();
 
     private final boolean insertHostHeaderIfMissing;
     private final boolean allowNewLineWithoutReturn;
+    private final long maxBodySizeInMemory;
+    private final int maxHeadSize;
 
     private RawHttpOptions(boolean insertHostHeaderIfMissing,
-                           boolean allowNewLineWithoutReturn) {
+                           boolean allowNewLineWithoutReturn,
+                           long maxBodySizeInMemory,
+                           int maxHeadSize) {
         this.insertHostHeaderIfMissing = insertHostHeaderIfMissing;
         this.allowNewLineWithoutReturn = allowNewLineWithoutReturn;
+        this.maxBodySizeInMemory = maxBodySizeInMemory;
+        this.maxHeadSize = maxHeadSize;
     }
 
     /**
@@ -24,6 +35,8 @@ public class RawHttpOptions {
      * <ul>
      * <li>inserts the Host header if missing</li>
      * <li>allows new-line characters to not be prefixed with '\r'</li>
+     * <li>keeps bodies of up to {@link EagerBodyReader#DEFAULT_MAX_BODY_SIZE_IN_MEMORY} bytes in memory</li>
+     * <li>accepts message heads of up to {@link #DEFAULT_MAX_HEAD_SIZE} bytes</li>
      * </ul>
      */
     public static RawHttpOptions defaultInstance() {
@@ -46,6 +59,23 @@ public class RawHttpOptions {
         return allowNewLineWithoutReturn;
     }
 
+    /**
+     * @return the maximum size, in bytes, of a HTTP message body for it to be kept in memory when it is
+     * read eagerly. Larger bodies are stored in a memory-mapped temporary file.
+     * @see EagerBodyReader
+     */
+    public long maxBodySizeInMemory() {
+        return maxBodySizeInMemory;
+    }
+
+    /**
+     * @return the maximum size, in bytes, of the head (start-line and headers) of a HTTP message.
+     * Messages with larger heads are rejected as invalid.
+     */
+    public int maxHeadSize() {
+        return maxHeadSize;
+    }
+
     /**
      * Builder for {@link RawHttpOptions}.
      */
@@ -53,6 +83,8 @@ public class RawHttpOptions {
 
         private boolean insertHostHeaderIfMissing = true;
         private boolean allowNewLineWithoutReturn = true;
+        private long maxBodySizeInMemory = EagerBodyReader.DEFAULT_MAX_BODY_SIZE_IN_MEMORY;
+        private int maxHeadSize = DEFAULT_MAX_HEAD_SIZE;
 
         /**
          * @return a new builder of {@link RawHttpOptions}.
@@ -92,12 +124,46 @@ public class RawHttpOptions {
             return this;
         }
 
+        /**
+         * Configure the maximum size of a HTTP message body for it to be kept in memory when it is read eagerly.
+         * <p>
+         * Larger bodies are stored in a memory-mapped temporary file instead.
+         *
+         * @param maxBodySizeInMemory maximum size, in bytes
+         * @return this
+         */
+        public Builder withMaxBodySizeInMemory(long maxBodySizeInMemory) {
+            if (maxBodySizeInMemory < 0) {
+                throw new IllegalArgumentException("Maximum body size in memory must not be negative");
+            }
+            this.maxBodySizeInMemory = maxBodySizeInMemory;
+            return this;
+        }
+
+        /**
+         * Configure the maximum size of the head (start-line and headers) of a HTTP message.
+         * <p>
+         * Messages with larger heads are rejected as invalid, so that a peer cannot make the parser buffer
+         * an unbounded amount of metadata.
+         *
+         * @param maxHeadSize maximum size, in bytes
+         * @return this
+         */
+        public Builder withMaxHeadSize(int maxHeadSize) {
+            if (maxHeadSize <= 0) {
+                throw new IllegalArgumentException("Maximum head size must be positive");
+            }
+            this.maxHeadSize = maxHeadSize;
+            return this;
+        }
+
         /**
          * @return a configured instance of {@link RawHttpOptions}.
          * @see RawHttp#RawHttp(RawHttpOptions)
          */
         public RawHttpOptions build() {
-            return new RawHttpOptions(insertHostHeaderIfMissing, allowNewLineWithoutReturn);
+            return new RawHttpOptions(insertHostHeaderIfMissing, allowNewLineWithoutReturn,
+                    maxBodySizeInMemory, maxHeadSize);
         }
 
     }
@@ -0,0 +1,188 @@
+package com.athaydes.rawhttp.core;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A template of HTTP responses which share the same status line and headers, and differ only in their bodies.
+ * <p>
+ * The status line and the fixed headers of the template are encoded to bytes only once, when the template is
+ * created. Responses created from a template only need to encode the headers that vary between responses
+ * when they are written:
+ * <ul>
+ * <li>{@code Content-Length}, which is computed from the body of each response.</li>
+ * <li>{@code Date}, if the template was created from a response containing that header. The current date is then
+ * used for each response, with a precision of one second.</li>
+ * </ul>
+ * This makes templates well suited to server endpoints that send the same kind of response very frequently.
+ * <p>
+ * Example usage:
+ * <pre>{@code
+ * ResponseTemplate jsonOk = ResponseTemplate.from(http.parseResponse("HTTP/1.1 200 OK\r\n" +
+ *         "Content-Type: application/json\r\n" +
+ *         "Date: <set on each response>"));
+ *
+ * Router router = request -> jsonOk.withBody(toJson(request));
+ * }</pre>
+ * <p>
+ * Instances of this class are immutable and thread-safe. Responses created by a template can be written any
+ * number of times.
+ */
+public final class ResponseTemplate {
+
+    private static volatile CachedDate cachedDate = new CachedDate(0L);
+
+    private final StatusCodeLine statusCodeLine;
+    private final boolean sendDate;
+
+    // status line and fixed headers, without the empty line that ends the head of the message
+    private final byte[] encodedHead;
+
+    // fixed headers followed by the variable headers, whose values are replaced on each response
+    private final RawHttpHeaders headersWithBody;
+    private final RawHttpHeaders headersWithoutBody;
+
+    private ResponseTemplate(StatusCodeLine statusCodeLine, RawHttpHeaders fixedHeaders, boolean sendDate) {
+        this.statusCodeLine = statusCodeLine;
+        this.sendDate = sendDate;
+
+        HeadBuffer buffer = HeadBuffer.acquire();
+        try {
+            statusCodeLine.writeTo(buffer);
+            buffer.crlf();
+            fixedHeaders.forEach((name, value) ->
+                    buffer.append(name).append((byte) ':').append((byte) ' ').append(value).crlf());
+            this.encodedHead = Arrays.copyOf(buffer.array(), buffer.length());
+        } finally {
+            buffer.release();
+        }
+
+        RawHttpHeaders.Builder withBody = RawHttpHeaders.Builder.newBuilder(fixedHeaders)
+                .with(HeaderName.CONTENT_LENGTH, "0");
+        RawHttpHeaders.Builder withoutBody = RawHttpHeaders.Builder.newBuilder(fixedHeaders);
+        if (sendDate) {
+            withBody.with(HeaderName.DATE, "");
+            withoutBody.with(HeaderName.DATE, "");
+        }
+        this.headersWithBody = withBody.build();
+        this.headersWithoutBody = withoutBody.build();
+    }
+
+    /**
+     * Create a template from the status line and headers of the given response.
+     * <p>
+     * The body of the response is ignored, as are its {@code Content-Length} and {@code Transfer-Encoding}
+     * headers. If the response contains a {@code Date} header, responses created from the template will have
+     * a {@code Date} header with the date they were created.
+     *
+     * @param response to use as a template
+     * @return the template
+     */
+    public static ResponseTemplate from(RawHttpResponse<?> response) {
+        RawHttpHeaders headers = response.getHeaders();
+        RawHttpHeaders.Builder fixedHeaders = RawHttpHeaders.Builder.newBuilder(headers);
+        fixedHeaders.remove(HeaderName.CONTENT_LENGTH);
+        fixedHeaders.remove(HeaderName.TRANSFER_ENCODING);
+        fixedHeaders.remove(HeaderName.DATE);
+        return new ResponseTemplate(response.getStartLine(), fixedHeaders.build(),
+                headers.contains(HeaderName.DATE));
+    }
+
+    /**
+     * @return the status line of the responses created by this template.
+     */
+    public StatusCodeLine getStartLine() {
+        return statusCodeLine;
+    }
+
+    /**
+     * Create a response with the given body.
+     * <p>
+     * The response has a {@code Content-Length} header with the length of the body.
+     *
+     * @param body of the response. The array must not be modified after calling this method.
+     * @return the response
+     */
+    public RawHttpResponse<Void> withBody(byte[] body) {
+        String contentLength = Integer.toString(body.length);
+        if (sendDate) {
+            CachedDate date = currentDate();
+            return new TemplateResponse(this, headersWithBody.withLastValues(contentLength, date.text),
+                    new EagerBodyReader(body), date);
+        }
+        return new TemplateResponse(this, headersWithBody.withLastValues(contentLength),
+                new EagerBodyReader(body), null);
+    }
+
+    /**
+     * Create a response without a body.
+     * <p>
+     * The response has no {@code Content-Length} header, so this method is appropriate for responses that may not
+     * have a body, such as NoContent (204) and NotModified (304).
+     *
+     * @return the response
+     */
+    public RawHttpResponse<Void> withoutBody() {
+        if (sendDate) {
+            CachedDate date = currentDate();
+            return new TemplateResponse(this, headersWithoutBody.withLastValues(date.text), null, date);
+        }
+        return new TemplateResponse(this, headersWithoutBody, null, null);
+    }
+
+    private static CachedDate currentDate() {
+        long second = System.currentTimeMillis() / 1000L;
+        CachedDate date = cachedDate;
+        if (date.second != second) {
+            date = new CachedDate(second);
+            cachedDate = date;
+        }
+        return date;
+    }
+
+    private static final class CachedDate {
+        final long second;
+        final String text;
+        final byte[] bytes;
+
+        CachedDate(long second) {
+            this.second = second;
+            this.text = HttpDates.format(Instant.ofEpochSecond(second));
+            this.bytes = text.getBytes(US_ASCII);
+        }
+    }
+
+    private static final class TemplateResponse extends RawHttpResponse<Void> {
+
+        private static final byte[] CONTENT_LENGTH_PREFIX = "Content-Length: ".getBytes(US_ASCII);
+        private static final byte[] DATE_PREFIX = "Date: ".getBytes(US_ASCII);
+
+        private final ResponseTemplate template;
+
+        @Nullable
+        private final CachedDate date;
+
+        TemplateResponse(ResponseTemplate template, RawHttpHeaders headers,
+                         @Nullable EagerBodyReader bodyReader, @Nullable CachedDate date) {
+            super(null, null, template.statusCodeLine, headers, bodyReader);
+            this.template = template;
+            this.date = date;
+        }
+
+        @Override
+        void writeHead(HeadBuffer buffer) {
+            buffer.append(template.encodedHead);
+            if (getBody().isPresent()) {
+                buffer.append(CONTENT_LENGTH_PREFIX).append((int) getHeaders().contentLength()).crlf();
+            }
+            if (date != null) {
+                buffer.append(DATE_PREFIX).append(date.bytes).crlf();
+            }
+            buffer.crlf();
+        }
+    }
+
+}
@@ -41,4 +41,10 @@ public class StatusCodeLine implements StartLine {
     public String toString() {
         return String.join(" ", httpVersion.toString(), Integer.toString(statusCode), reason);
     }
+
+    void writeTo(HeadBuffer buffer) {
+        buffer.append(httpVersion.bytes()).append((byte) ' ')
+                .append(statusCode).append((byte) ' ')
+                .append(reason);
+    }
 }
@@ -1,15 +1,17 @@
 package com.athaydes.rawhttp.core.body;
 
 import com.athaydes.rawhttp.core.BodyReader;
+import com.athaydes.rawhttp.core.HeaderName;
 import com.athaydes.rawhttp.core.LazyBodyReader;
 import com.athaydes.rawhttp.core.RawHttpHeaders;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.OptionalLong;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
 /**
  * This class encodes the contents of a {@link InputStream} with the "chunked" Transfer-Encoding.
  * <p>
@@ -53,59 +55,120 @@ public class ChunkedBody extends HttpMessageBody {
     @Override
     public RawHttpHeaders headersFrom(RawHttpHeaders headers) {
         RawHttpHeaders.Builder builder = RawHttpHeaders.Builder.newBuilder(headers);
-        getContentType().ifPresent(contentType -> builder.overwrite("Content-Type", contentType));
-        builder.overwrite("Transfer-Encoding", "chunked");
-        builder.remove("Content-Length");
+        getContentType().ifPresent(contentType -> builder.overwrite(HeaderName.CONTENT_TYPE, contentType));
+        builder.overwrite(HeaderName.TRANSFER_ENCODING, "chunked");
+        builder.remove(HeaderName.CONTENT_LENGTH);
         return builder.build();
     }
 
     private static class ChunkedInputStream extends InputStream {
 
+        private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(US_ASCII);
+        private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(US_ASCII);
+
         private final InputStream stream;
         private final int chunkSize;
 
-        private byte[] buffer = new byte[0];
+        // space reserved before the data of each chunk for its size line, e.g. "1000\r\n" for 4096-byte chunks
+        private final int sizeLineSpace;
+
+        // maximum length of an encoded chunk: the size line, the data and the CRLF after the data
+        private final int maxEncodedLength;
+
+        // scratch space holding the encoded chunk being read, allocated on first use and re-used for all chunks
+        @Nullable
+        private byte[] buffer;
         private int index = 0;
+        private int end = 0;
         private boolean terminated = false;
 
         ChunkedInputStream(InputStream stream, int chunkSize) {
             this.stream = stream;
             this.chunkSize = chunkSize;
+            this.sizeLineSpace = Integer.toHexString(chunkSize).length() + 2;
+            this.maxEncodedLength = sizeLineSpace + chunkSize + 2;
         }
 
-        private byte[] nextChunk() throws IOException {
-            byte[] chunkData = new byte[chunkSize];
-            int bytesRead = stream.read(chunkData);
+        /**
+         * Read the next chunk from the stream, encoding it directly into the target array.
+         *
+         * @param target array to write to, which must have space for {@link #maxEncodedLength} bytes from offset
+         * @param offset to start writing from
+         * @return number of bytes written
+         * @throws IOException if an error occurs while reading the stream
+         */
+        private int encodeNextChunk(byte[] target, int offset) throws IOException {
+            int bytesRead = stream.read(target, offset + sizeLineSpace, chunkSize);
             if (bytesRead <= 0) {
                 terminated = true;
-                bytesRead = 0;
+                System.arraycopy(LAST_CHUNK, 0, target, offset, LAST_CHUNK.length);
+                return LAST_CHUNK.length;
             }
 
-            byte[] chunkSizeBytes = (Integer.toString(bytesRead, 16) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            int digits = (35 - Integer.numberOfLeadingZeros(bytesRead)) / 4;
+            int sizeLineLength = digits + 2;
+            if (sizeLineLength < sizeLineSpace) {
+                // the size line of a chunk shorter than the maximum may need less space than was reserved
+                System.arraycopy(target, offset + sizeLineSpace, target, offset + sizeLineLength, bytesRead);
+            }
+            for (int i = offset + digits - 1, n = bytesRead; i >= offset; i--, n >>>= 4) {
+                target[i] = HEX_DIGITS[n & 0xF];
+            }
+            target[offset + digits] = '\r';
+            target[offset + digits + 1] = '\n';
+            int dataEnd = offset + sizeLineLength + bytesRead;
+            target[dataEnd] = '\r';
+            target[dataEnd + 1] = '\n';
+            return sizeLineLength + bytesRead + 2;
+        }
 
-            byte[] chunk = new byte[chunkSizeBytes.length + bytesRead + 2];
-            System.arraycopy(chunkSizeBytes, 0, chunk, 0, chunkSizeBytes.length);
-            if (bytesRead > 0) {
-                System.arraycopy(chunkData, 0, chunk, chunkSizeBytes.length, bytesRead);
+        private boolean fillBuffer() throws IOException {
+            if (terminated) {
+                return false;
             }
-            chunk[chunk.length - 2] = '\r';
-            chunk[chunk.length - 1] = '\n';
-            return chunk;
+            if (buffer == null) {
+                buffer = new byte[maxEncodedLength];
+            }
+            end = encodeNextChunk(buffer, 0);
+            index = 0;
+            return true;
         }
 
         @Override
         public int read() throws IOException {
-            if (index >= buffer.length) {
+            if (index >= end && !fillBuffer()) {
+                return -1;
+            }
+            return buffer[index++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (index >= end) {
                 if (terminated) {
                     return -1;
                 }
-                buffer = nextChunk();
-                if (buffer.length == 0) {
-                    return -1;
+                if (len >= maxEncodedLength) {
+                    // skip the scratch space, as a whole chunk fits in the caller's array
+                    return encodeNextChunk(b, off);
                 }
-                index = 0;
+                fillBuffer();
             }
-            return buffer[index++];
+            int count = Math.min(len, end - index);
+            System.arraycopy(buffer, index, b, off, count);
+            index += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return end - index;
         }
 
         @Override
@@ -4,7 +4,6 @@ import com.athaydes.rawhttp.core.BodyReader;
 import com.athaydes.rawhttp.core.LazyBodyReader;
 
 import javax.annotation.Nullable;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -40,8 +39,10 @@ public class FileBody extends HttpMessageBody {
     @Override
     public LazyBodyReader toBodyReader() {
         try {
+            // not buffered, so that the file can be transferred directly to a channel
+            // (see HttpMessage#writeTo(WritableByteChannel))
             return new LazyBodyReader(BodyReader.BodyType.CONTENT_LENGTH,
-                    new BufferedInputStream(new FileInputStream(file)),
+                    new FileInputStream(file),
                     file.length(),
                     allowNewLineWithoutReturn);
         } catch (FileNotFoundException e) {
@@ -1,5 +1,6 @@
 package com.athaydes.rawhttp.core.body;
 
+import com.athaydes.rawhttp.core.HeaderName;
 import com.athaydes.rawhttp.core.LazyBodyReader;
 import com.athaydes.rawhttp.core.RawHttpHeaders;
 
@@ -46,8 +47,8 @@ public abstract class HttpMessageBody {
      */
     public RawHttpHeaders headersFrom(RawHttpHeaders headers) {
         RawHttpHeaders.Builder builder = RawHttpHeaders.Builder.newBuilder(headers);
-        getContentType().ifPresent(contentType -> builder.overwrite("Content-Type", contentType));
-        getContentLength().ifPresent(length -> builder.overwrite("Content-Length", Long.toString(length)));
+        getContentType().ifPresent(contentType -> builder.overwrite(HeaderName.CONTENT_TYPE, contentType));
+        getContentLength().ifPresent(length -> builder.overwrite(HeaderName.CONTENT_LENGTH, Long.toString(length)));
         return builder.build();
     }
 
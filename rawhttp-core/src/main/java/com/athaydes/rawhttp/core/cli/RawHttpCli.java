@@ -1,5 +1,10 @@
 package com.athaydes.rawhttp.core.cli;
 
+import com.athaydes.rawhttp.core.server.StaticFileRouter;
+import com.athaydes.rawhttp.core.server.TcpRawHttpServer;
+
+import java.io.File;
+
 public class RawHttpCli {
 
     public static final int DEFAULT_SERVER_PORT = 8080;
@@ -89,7 +94,14 @@ public class RawHttpCli {
     }
 
     private static void serve(String directory, int port) {
-        System.out.println("TODO Serving directory " + directory + " at port " + port);
+        File rootDirectory = new File(directory);
+        if (!rootDirectory.isDirectory()) {
+            System.err.println("Error - not a directory: " + directory);
+            return;
+        }
+        TcpRawHttpServer server = new TcpRawHttpServer(port);
+        server.start(new StaticFileRouter(rootDirectory));
+        System.out.println("Serving directory " + rootDirectory.getAbsolutePath() + " at port " + port);
     }
 
 }
@@ -0,0 +1,26 @@
+package com.athaydes.rawhttp.core.client;
+
+import com.athaydes.rawhttp.core.RawHttpRequest;
+import com.athaydes.rawhttp.core.RawHttpResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Definition of a HTTP client that can send out Raw HTTP requests without blocking the calling Thread.
+ * <p>
+ * This is the asynchronous counterpart of {@link RawHttpClient}.
+ *
+ * @param <Response> library-specific HTTP response
+ */
+public interface AsyncRawHttpClient<Response> {
+
+    /**
+     * Send the given HTTP request.
+     *
+     * @param request HTTP request
+     * @return a future HTTP response, which completes exceptionally in case an error occurs while
+     * transmitting the messages
+     */
+    CompletableFuture<RawHttpResponse<Response>> send(RawHttpRequest request);
+
+}
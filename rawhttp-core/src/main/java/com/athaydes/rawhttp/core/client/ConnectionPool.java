@@ -0,0 +1,394 @@
+package com.athaydes.rawhttp.core.client;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A thread-safe pool of client {@link Socket}s.
+ * <p>
+ * Sockets are kept per route (the scheme, host and port of a {@link URI}). A socket is leased with
+ * {@link #lease(URI)}, and must be given back with {@link #release(Socket, URI, boolean)} once it is no longer
+ * used, so that it can be re-used by the next lease for the same route, possibly from another Thread.
+ * <p>
+ * The number of open sockets is limited per route and in total. When a limit is reached, {@link #lease(URI)}
+ * waits for a socket to be released, up to a configurable timeout. Idle sockets are closed once they have been
+ * idle for longer than the idle timeout, and are checked before being re-used, so that sockets closed by the
+ * server are never leased.
+ */
+public class ConnectionPool implements Closeable {
+
+    /**
+     * The default maximum number of sockets per route.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 8;
+
+    /**
+     * The default maximum number of sockets in total.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    /**
+     * The default time, in milliseconds, after which idle sockets are closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30_000L;
+
+    /**
+     * The default maximum time, in milliseconds, to wait for a socket when the pool is exhausted.
+     */
+    public static final long DEFAULT_LEASE_TIMEOUT = 30_000L;
+
+    private final int maxConnectionsPerRoute;
+    private final int maxConnections;
+    private final long idleTimeout;
+    private final long leaseTimeout;
+
+    // all state below is guarded by this
+    private final Map<Route, Deque<IdleSocket>> idleByRoute = new HashMap<>();
+    private final Map<Route, Integer> openByRoute = new HashMap<>();
+    private final Set<Socket> leased = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int openCount = 0;
+    private int idleCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a {@link ConnectionPool} with the default limits.
+     */
+    public ConnectionPool() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT, DEFAULT_LEASE_TIMEOUT);
+    }
+
+    /**
+     * Create a {@link ConnectionPool}.
+     *
+     * @param maxConnectionsPerRoute maximum number of open sockets per route
+     * @param maxConnections         maximum number of open sockets in total
+     * @param idleTimeout            time, in milliseconds, after which idle sockets are closed
+     * @param leaseTimeout           maximum time, in milliseconds, to wait for a socket when the pool is exhausted
+     */
+    public ConnectionPool(int maxConnectionsPerRoute, int maxConnections, long idleTimeout, long leaseTimeout) {
+        if (maxConnectionsPerRoute < 1 || maxConnections < 1) {
+            throw new IllegalArgumentException("Connection limits must be at least 1");
+        }
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.maxConnections = maxConnections;
+        this.idleTimeout = idleTimeout;
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    /**
+     * Lease a socket connected to the host of the given URI.
+     * <p>
+     * An idle socket is re-used if possible, otherwise a new one is opened.
+     *
+     * @param uri to connect to
+     * @return a connected socket, which must be given back with {@link #release(Socket, URI, boolean)}
+     * @throws IOException           if a socket cannot be opened, or none becomes available before the lease timeout
+     * @throws IllegalStateException if this pool has been closed
+     */
+    public Socket lease(URI uri) throws IOException {
+        Route route = Route.of(uri);
+        long deadline = System.currentTimeMillis() + leaseTimeout;
+        while (true) {
+            @Nullable Socket idleSocket;
+            List<Socket> evicted = new ArrayList<>(0);
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Connection pool has been closed");
+                }
+                evictExpired(evicted);
+                idleSocket = pollIdle(route);
+                if (idleSocket == null) {
+                    int openForRoute = openByRoute.getOrDefault(route, 0);
+                    boolean canOpen = openForRoute < maxConnectionsPerRoute &&
+                            (openCount < maxConnections || evictOldest(evicted));
+                    if (canOpen) {
+                        // reserve the connection before opening it outside the lock
+                        openCount++;
+                        openByRoute.put(route, openForRoute + 1);
+                    } else {
+                        long waitTime = deadline - System.currentTimeMillis();
+                        if (waitTime <= 0) {
+                            throw new IOException("Timed out waiting for a connection to " + route);
+                        }
+                        try {
+                            wait(waitTime);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while waiting for a connection");
+                        }
+                        continue;
+                    }
+                }
+            }
+            closeAll(evicted);
+
+            if (idleSocket == null) {
+                return open(route);
+            }
+            if (isStale(idleSocket)) {
+                discard(idleSocket, route);
+                continue;
+            }
+            synchronized (this) {
+                leased.add(idleSocket);
+            }
+            return idleSocket;
+        }
+    }
+
+    /**
+     * Give back a socket previously obtained from {@link #lease(URI)}.
+     *
+     * @param socket   leased socket
+     * @param uri      the socket was leased for
+     * @param reusable whether the socket may be re-used. If false, the socket is closed.
+     */
+    public void release(Socket socket, URI uri, boolean reusable) {
+        Route route = Route.of(uri);
+        synchronized (this) {
+            if (!leased.remove(socket)) {
+                return; // not leased from this pool, or already released
+            }
+            if (reusable && !closed && !socket.isClosed()) {
+                idleByRoute.computeIfAbsent(route, r -> new ArrayDeque<>())
+                        .push(new IdleSocket(socket, System.currentTimeMillis()));
+                idleCount++;
+                notifyAll();
+                return;
+            }
+        }
+        discard(socket, route);
+    }
+
+    /**
+     * @return the number of sockets currently leased
+     */
+    public synchronized int getLeasedCount() {
+        return leased.size();
+    }
+
+    /**
+     * @return the number of idle sockets currently kept in this pool
+     */
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    /**
+     * Close all idle sockets, and make this pool unusable. Leased sockets are closed when they are released.
+     */
+    @Override
+    public void close() {
+        List<Socket> sockets = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (Deque<IdleSocket> idleSockets : idleByRoute.values()) {
+                for (IdleSocket idleSocket : idleSockets) {
+                    sockets.add(idleSocket.socket);
+                }
+            }
+            idleByRoute.clear();
+            openCount -= idleCount;
+            idleCount = 0;
+            openByRoute.clear();
+            notifyAll();
+        }
+        closeAll(sockets);
+    }
+
+    private Socket open(Route route) throws IOException {
+        try {
+            // a channel-backed socket can be checked for staleness without blocking
+            Socket socket = SocketChannel.open(new InetSocketAddress(route.host, route.port)).socket();
+            synchronized (this) {
+                leased.add(socket);
+            }
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                unreserve(route);
+            }
+            throw e;
+        }
+    }
+
+    private void discard(Socket socket, Route route) {
+        synchronized (this) {
+            unreserve(route);
+        }
+        closeAll(Collections.singletonList(socket));
+    }
+
+    // must hold the lock
+    private void unreserve(Route route) {
+        if (closed) {
+            return; // counts were reset when closed
+        }
+        openCount--;
+        openByRoute.computeIfPresent(route, (r, count) -> count == 1 ? null : count - 1);
+        notifyAll();
+    }
+
+    // must hold the lock
+    @Nullable
+    private Socket pollIdle(Route route) {
+        @Nullable Deque<IdleSocket> idleSockets = idleByRoute.get(route);
+        if (idleSockets == null || idleSockets.isEmpty()) {
+            return null;
+        }
+        idleCount--;
+        // the most recently used socket is the least likely to have been closed by the server
+        return idleSockets.pop().socket;
+    }
+
+    // must hold the lock
+    private void evictExpired(List<Socket> evicted) {
+        if (idleCount == 0) {
+            return;
+        }
+        long oldestAllowed = System.currentTimeMillis() - idleTimeout;
+        for (Map.Entry<Route, Deque<IdleSocket>> entry : idleByRoute.entrySet()) {
+            Iterator<IdleSocket> iterator = entry.getValue().descendingIterator();
+            while (iterator.hasNext()) {
+                IdleSocket idleSocket = iterator.next();
+                if (idleSocket.idleSince >= oldestAllowed) {
+                    break; // newer sockets are at the head of the deque
+                }
+                iterator.remove();
+                idleCount--;
+                unreserve(entry.getKey());
+                evicted.add(idleSocket.socket);
+            }
+        }
+    }
+
+    /**
+     * Evict the idle socket, of any route, that has been idle for the longest time.
+     * Must be called while holding the lock.
+     *
+     * @return true if a socket was evicted, false if there were no idle sockets
+     */
+    private boolean evictOldest(List<Socket> evicted) {
+        @Nullable Route oldestRoute = null;
+        @Nullable IdleSocket oldest = null;
+        for (Map.Entry<Route, Deque<IdleSocket>> entry : idleByRoute.entrySet()) {
+            @Nullable IdleSocket candidate = entry.getValue().peekLast();
+            if (candidate != null && (oldest == null || candidate.idleSince < oldest.idleSince)) {
+                oldest = candidate;
+                oldestRoute = entry.getKey();
+            }
+        }
+        if (oldest == null) {
+            return false;
+        }
+        idleByRoute.get(oldestRoute).removeLast();
+        idleCount--;
+        unreserve(oldestRoute);
+        evicted.add(oldest.socket);
+        return true;
+    }
+
+    private static boolean isStale(Socket socket) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return true;
+        }
+        @Nullable SocketChannel channel = socket.getChannel();
+        if (channel == null) {
+            return false;
+        }
+        try {
+            channel.configureBlocking(false);
+            try {
+                // -1 means the server closed the connection, and any bytes received while idle are unexpected
+                return channel.read(ByteBuffer.allocate(1)) != 0;
+            } finally {
+                channel.configureBlocking(true);
+            }
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void closeAll(List<Socket> sockets) {
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+                // the socket is not used anymore anyway
+            }
+        }
+    }
+
+    private static final class IdleSocket {
+        final Socket socket;
+        final long idleSince;
+
+        IdleSocket(Socket socket, long idleSince) {
+            this.socket = socket;
+            this.idleSince = idleSince;
+        }
+    }
+
+    static final class Route {
+        final String scheme;
+        final String host;
+        final int port;
+
+        private Route(String scheme, String host, int port) {
+            this.scheme = scheme;
+            this.host = host;
+            this.port = port;
+        }
+
+        static Route of(URI uri) {
+            String host = uri.getHost();
+            if (host == null) {
+                throw new IllegalArgumentException("Host is not available in the URI");
+            }
+            String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (port == -1) {
+                port = "https".equals(scheme) ? 443 : 80;
+            }
+            return new Route(scheme, host.toLowerCase(Locale.ROOT), port);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Route route = (Route) o;
+            return port == route.port && scheme.equals(route.scheme) && host.equals(route.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * scheme.hashCode() + host.hashCode()) + port;
+        }
+
+        @Override
+        public String toString() {
+            return scheme + "://" + host + ":" + port;
+        }
+    }
+
+}
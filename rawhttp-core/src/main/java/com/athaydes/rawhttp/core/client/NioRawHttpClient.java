@@ -0,0 +1,653 @@
+package com.athaydes.rawhttp.core.client;
+
+import com.athaydes.rawhttp.core.BodyReader.BodyType;
+import com.athaydes.rawhttp.core.HttpMessageWriter;
+import com.athaydes.rawhttp.core.HttpPushParser;
+import com.athaydes.rawhttp.core.HttpVersion;
+import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpOptions;
+import com.athaydes.rawhttp.core.RawHttpRequest;
+import com.athaydes.rawhttp.core.RawHttpResponse;
+import com.athaydes.rawhttp.core.client.ConnectionPool.Route;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking implementation of {@link AsyncRawHttpClient}.
+ * <p>
+ * Requests are sent out by a small, fixed number of event loops, each one driving many connections via a
+ * {@link Selector}, so that a large number of requests can be in flight without a Thread per request.
+ * Responses are parsed by a {@link HttpPushParser} as their bytes arrive, so the returned responses are always eager.
+ * <p>
+ * Connections are re-used if possible (following the {@code Connection} header as described
+ * in <a href="https://tools.ietf.org/html/rfc7230#section-6.3">Section 6.3</a> of RFC-7230). Idle connections
+ * are closed as soon as the server closes them, or once they have been idle for longer than
+ * {@link NioRawHttpClientOptions#getIdleTimeout()}.
+ * <p>
+ * Requests are written by the event loops as the connections become writable, using a {@link HttpMessageWriter},
+ * so request bodies are never fully copied into memory before being sent. Notice that bodies which are not kept in
+ * memory nor read from a file are read from their stream by the event loop, so such streams should not block.
+ * <p>
+ * All requests to the same route (scheme, host and port) are sent by the same event loop, which opens at most
+ * {@link NioRawHttpClientOptions#getMaxConnectionsPerRoute()} connections to the route. Further requests wait for
+ * one of these connections to become available.
+ * <p>
+ * Host names are resolved by a small pool of resolver Threads, so that slow DNS lookups do not block the event loops.
+ * <p>
+ * The returned futures are completed from the event loop Threads, so callbacks attached to them should not block.
+ * Futures are completed exceptionally with a {@link SocketTimeoutException} if a connection cannot be established
+ * within the {@link NioRawHttpClientOptions#getConnectTimeout()}, or if the response is not fully received within
+ * the {@link NioRawHttpClientOptions#getResponseTimeout()}.
+ * <p>
+ * It is possible to configure this client by passing an instance of {@link NioRawHttpClientOptions} to its
+ * constructor.
+ */
+public class NioRawHttpClient implements AsyncRawHttpClient<Void>, Closeable {
+
+    // lookups are rarely slow, so a few Threads are enough to keep slow ones from delaying the others
+    private static final int RESOLVER_THREADS = 4;
+
+    // how often the event loops look for exchanges that timed out
+    private static final long TIMEOUT_CHECK_INTERVAL = 100L;
+
+    private final RawHttp rawHttp;
+    private final int maxConnectionsPerRoute;
+    private final long connectTimeout;
+    private final long responseTimeout;
+    private final long idleTimeout;
+    private final EventLoop[] eventLoops;
+    private final ExecutorService resolver;
+
+    /**
+     * Create a new {@link NioRawHttpClient} with the default options.
+     *
+     * @throws IOException if the event loop cannot be created
+     */
+    public NioRawHttpClient() throws IOException {
+        this(new NioRawHttpClientOptions() {
+        });
+    }
+
+    /**
+     * Create a new {@link NioRawHttpClient}.
+     *
+     * @param rawHttp        http instance to use to parse responses
+     * @param eventLoopCount number of event loops (each running on its own Thread) to send requests with
+     * @throws IOException if the event loops cannot be created
+     */
+    public NioRawHttpClient(RawHttp rawHttp, int eventLoopCount) throws IOException {
+        this(new NioRawHttpClientOptions() {
+            @Override
+            public RawHttp getRawHttp() {
+                return rawHttp;
+            }
+
+            @Override
+            public int getEventLoopCount() {
+                return eventLoopCount;
+            }
+        });
+    }
+
+    /**
+     * Create a new {@link NioRawHttpClient} with the given options.
+     *
+     * @param options for this client
+     * @throws IOException if the event loops cannot be created
+     */
+    public NioRawHttpClient(NioRawHttpClientOptions options) throws IOException {
+        int eventLoopCount = options.getEventLoopCount();
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("Event loop count must be at least 1: " + eventLoopCount);
+        }
+        if (options.getMaxConnectionsPerRoute() < 1) {
+            throw new IllegalArgumentException("Connection limit must be at least 1");
+        }
+        this.rawHttp = options.getRawHttp();
+        this.maxConnectionsPerRoute = options.getMaxConnectionsPerRoute();
+        this.connectTimeout = options.getConnectTimeout();
+        this.responseTimeout = options.getResponseTimeout();
+        this.idleTimeout = options.getIdleTimeout();
+        ThreadPoolExecutor resolver = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "nio-raw-http-client-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resolver.allowCoreThreadTimeOut(true);
+        this.resolver = resolver;
+        this.eventLoops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop(i);
+        }
+    }
+
+    @Override
+    public CompletableFuture<RawHttpResponse<Void>> send(RawHttpRequest request) {
+        CompletableFuture<RawHttpResponse<Void>> future = new CompletableFuture<>();
+        try {
+            Route route = Route.of(request.getUri());
+            long deadline = responseTimeout > 0 ? System.currentTimeMillis() + responseTimeout : Long.MAX_VALUE;
+            Exchange exchange = new Exchange(request, route, future, deadline);
+            eventLoops[Math.floorMod(route.hashCode(), eventLoops.length)].submit(exchange);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Close all connections and stop the event loops. Requests still in flight fail.
+     */
+    @Override
+    public void close() {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.stop();
+        }
+        // pending lookups still run, and fail their exchanges as the event loops are stopped
+        resolver.shutdown();
+    }
+
+    /**
+     * Configuration options for {@link NioRawHttpClient}.
+     */
+    public interface NioRawHttpClientOptions {
+
+        /**
+         * @return the {@link RawHttp} instance to use to parse responses
+         */
+        default RawHttp getRawHttp() {
+            return new RawHttp(RawHttpOptions.Builder.newBuilder()
+                    .doNotAllowNewLineWithoutReturn()
+                    .build());
+        }
+
+        /**
+         * @return the number of event loops (each running on its own Thread) to send requests with
+         */
+        default int getEventLoopCount() {
+            return 1;
+        }
+
+        /**
+         * @return the maximum number of connections open at the same time to each route. Requests sent when
+         * this limit is reached wait for a connection to become available.
+         */
+        default int getMaxConnectionsPerRoute() {
+            return ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        }
+
+        /**
+         * @return the maximum time, in milliseconds, to wait for a connection to be established, or 0 to wait
+         * forever
+         */
+        default long getConnectTimeout() {
+            return 30_000L;
+        }
+
+        /**
+         * @return the maximum time, in milliseconds, between sending a request and receiving its full response,
+         * including any time spent waiting for a connection, or 0 to wait forever
+         */
+        default long getResponseTimeout() {
+            return 60_000L;
+        }
+
+        /**
+         * @return the time, in milliseconds, after which idle connections are closed, or 0 to keep them open
+         * until the server closes them
+         */
+        default long getIdleTimeout() {
+            return ConnectionPool.DEFAULT_IDLE_TIMEOUT;
+        }
+
+    }
+
+    private static final class Exchange {
+        final RawHttpRequest request;
+        final Route route;
+        final CompletableFuture<RawHttpResponse<Void>> future;
+        final long deadline;
+
+        // set by a resolver Thread before the exchange is submitted again to its event loop
+        @Nullable
+        InetSocketAddress address;
+
+        Exchange(RawHttpRequest request, Route route, CompletableFuture<RawHttpResponse<Void>> future, long deadline) {
+            this.request = request;
+            this.route = route;
+            this.future = future;
+            this.deadline = deadline;
+        }
+
+        boolean timeout(long now) {
+            if (now < deadline) {
+                return false;
+            }
+            future.completeExceptionally(new SocketTimeoutException("Response from " + route +
+                    " was not received within the response timeout"));
+            return true;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Exchange> newExchanges = new ConcurrentLinkedQueue<>();
+
+        // only accessed from the event loop Thread
+        private final Map<Route, Deque<Connection>> idleConnections = new HashMap<>();
+        private final Map<Route, Integer> openConnections = new HashMap<>();
+        private final Map<Route, Deque<Exchange>> waitingExchanges = new HashMap<>();
+        private final Deque<Exchange> readyExchanges = new ArrayDeque<>();
+        private final Set<Exchange> resolvingExchanges = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+        private long nextTimeoutCheck = 0L;
+
+        private volatile boolean running = true;
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            Thread thread = new Thread(this, "nio-raw-http-client-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void submit(Exchange exchange) {
+            if (!running) {
+                throw new IllegalStateException("Client has been closed");
+            }
+            newExchanges.add(exchange);
+            selector.wakeup();
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(TIMEOUT_CHECK_INTERVAL);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                connection.onConnectable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            connection.fail(e);
+                        }
+                    }
+                    checkTimeouts();
+                    // idle connections closed by the server have been discarded above, so they are not re-used
+                    startNewExchanges();
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void startNewExchanges() {
+            Exchange exchange;
+            // exchanges that were waiting for a connection go first
+            while ((exchange = readyExchanges.poll()) != null || (exchange = newExchanges.poll()) != null) {
+                start(exchange);
+            }
+        }
+
+        private void start(Exchange exchange) {
+            resolvingExchanges.remove(exchange);
+            if (exchange.future.isDone() || exchange.timeout(System.currentTimeMillis())) {
+                return; // timed out, or cancelled by the caller
+            }
+            @Nullable Connection connection = pollIdle(exchange.route);
+            if (connection == null) {
+                int openCount = openConnections.getOrDefault(exchange.route, 0);
+                if (openCount >= maxConnectionsPerRoute) {
+                    waitingExchanges.computeIfAbsent(exchange.route, r -> new ArrayDeque<>()).add(exchange);
+                    return;
+                }
+                if (exchange.address == null) {
+                    resolve(exchange);
+                    return;
+                }
+            }
+            try {
+                if (connection == null) {
+                    SocketChannel channel = SocketChannel.open();
+                    connection = new Connection(this, channel, exchange.route);
+                    channel.configureBlocking(false);
+                    boolean connected = channel.connect(exchange.address);
+                    connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                    connection.start(exchange, connected);
+                } else {
+                    connection.start(exchange, true);
+                }
+            } catch (IOException | RuntimeException e) {
+                exchange.future.completeExceptionally(e);
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+
+        /**
+         * Resolve the address of the exchange's route in a resolver Thread, then submit the exchange again.
+         */
+        private void resolve(Exchange exchange) {
+            resolvingExchanges.add(exchange);
+            try {
+                resolver.execute(() -> {
+                    InetSocketAddress address = new InetSocketAddress(exchange.route.host, exchange.route.port);
+                    if (address.isUnresolved()) {
+                        exchange.future.completeExceptionally(new UnknownHostException(exchange.route.host));
+                        return;
+                    }
+                    exchange.address = address;
+                    try {
+                        submit(exchange);
+                    } catch (IllegalStateException e) {
+                        exchange.future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                exchange.future.completeExceptionally(new IOException("Client has been closed"));
+            }
+        }
+
+        private void checkTimeouts() {
+            long now = System.currentTimeMillis();
+            if (now < nextTimeoutCheck) {
+                return;
+            }
+            nextTimeoutCheck = now + TIMEOUT_CHECK_INTERVAL;
+
+            // connections that time out are closed, which changes the selector's keys
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                ((Connection) key.attachment()).checkTimeout(now);
+            }
+            for (Deque<Exchange> exchanges : waitingExchanges.values()) {
+                exchanges.removeIf(exchange -> exchange.future.isDone() || exchange.timeout(now));
+            }
+            waitingExchanges.values().removeIf(Deque::isEmpty);
+            resolvingExchanges.removeIf(exchange -> exchange.future.isDone() || exchange.timeout(now));
+        }
+
+        @Nullable
+        private Connection pollIdle(Route route) {
+            @Nullable Deque<Connection> connections = idleConnections.get(route);
+            return connections == null ? null : connections.poll();
+        }
+
+        void idle(Connection connection) {
+            idleConnections.computeIfAbsent(connection.route, r -> new ArrayDeque<>()).push(connection);
+            wakeWaitingExchange(connection.route);
+        }
+
+        void removeIdle(Connection connection) {
+            @Nullable Deque<Connection> connections = idleConnections.get(connection.route);
+            if (connections != null) {
+                connections.remove(connection);
+            }
+        }
+
+        void opened(Route route) {
+            openConnections.merge(route, 1, Integer::sum);
+        }
+
+        void closed(Route route) {
+            openConnections.computeIfPresent(route, (r, count) -> count == 1 ? null : count - 1);
+            wakeWaitingExchange(route);
+        }
+
+        private void wakeWaitingExchange(Route route) {
+            @Nullable Deque<Exchange> exchanges = waitingExchanges.get(route);
+            if (exchanges != null) {
+                readyExchanges.add(exchanges.poll());
+                if (exchanges.isEmpty()) {
+                    waitingExchanges.remove(route);
+                }
+            }
+        }
+
+        private void closeAll() {
+            IOException error = new IOException("Client has been closed");
+            Exchange exchange;
+            while ((exchange = newExchanges.poll()) != null) {
+                exchange.future.completeExceptionally(error);
+            }
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).fail(error);
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException ignore) {
+                // nothing else we can do
+            }
+            for (Deque<Exchange> exchanges : waitingExchanges.values()) {
+                readyExchanges.addAll(exchanges);
+            }
+            readyExchanges.addAll(resolvingExchanges);
+            while ((exchange = readyExchanges.poll()) != null) {
+                exchange.future.completeExceptionally(error);
+            }
+            // exchanges submitted concurrently with this method must not be left pending
+            while ((exchange = newExchanges.poll()) != null) {
+                exchange.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private final class Connection {
+
+        private final EventLoop eventLoop;
+        private final SocketChannel channel;
+        private final Route route;
+        private SelectionKey key;
+        private boolean open = true;
+        private long connectDeadline = Long.MAX_VALUE;
+        private long idleSince;
+
+        @Nullable
+        private Exchange exchange;
+        @Nullable
+        private HttpMessageWriter requestWriter;
+        @Nullable
+        private HttpPushParser<RawHttpResponse<Void>> parser;
+
+        Connection(EventLoop eventLoop, SocketChannel channel, Route route) {
+            this.eventLoop = eventLoop;
+            this.channel = channel;
+            this.route = route;
+            eventLoop.opened(route);
+        }
+
+        void start(Exchange exchange, boolean connected) throws IOException {
+            this.exchange = exchange;
+            this.requestWriter = new HttpMessageWriter(exchange.request, 8192);
+            this.parser = HttpPushParser.responseParser(rawHttp, exchange.request.getStartLine());
+            if (connected) {
+                onWritable();
+            } else if (connectTimeout > 0) {
+                connectDeadline = System.currentTimeMillis() + connectTimeout;
+            }
+        }
+
+        void onConnectable() throws IOException {
+            channel.finishConnect();
+            connectDeadline = Long.MAX_VALUE;
+            onWritable();
+        }
+
+        void onWritable() throws IOException {
+            if (requestWriter == null) {
+                return;
+            }
+            boolean done = requestWriter.write(channel);
+            // keep reading while writing, as the server may respond before the request is fully sent
+            key.interestOps(done ?
+                    SelectionKey.OP_READ :
+                    SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+            if (done) {
+                closeRequestWriter();
+            }
+        }
+
+        void onReadable() throws IOException {
+            ByteBuffer buffer = eventLoop.readBuffer;
+            buffer.clear();
+            int bytesRead = channel.read(buffer);
+            if (exchange == null || parser == null) {
+                // idle connection: the server closed it, or sent something unexpected
+                eventLoop.removeIdle(this);
+                close();
+                return;
+            }
+            if (bytesRead < 0) {
+                if (parser.endOfInput() == HttpPushParser.Status.MESSAGE_COMPLETE) {
+                    complete(parser.getMessage(), false);
+                } else {
+                    fail(new IOException("Connection closed before a response was received"));
+                }
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (parser.feed(buffer) == HttpPushParser.Status.MESSAGE_COMPLETE) {
+                    // bytes after the response are unexpected, so the connection cannot be re-used
+                    complete(parser.getMessage(), !buffer.hasRemaining());
+                    return;
+                }
+            }
+        }
+
+        void checkTimeout(long now) {
+            if (exchange == null) {
+                if (idleTimeout > 0 && now - idleSince >= idleTimeout) {
+                    eventLoop.removeIdle(this);
+                    close();
+                }
+                return;
+            }
+            if (now >= connectDeadline) {
+                fail(new SocketTimeoutException("Connection to " + route +
+                        " was not established within the connect timeout"));
+            } else if (exchange.timeout(now) || exchange.future.isDone()) {
+                // the response is not wanted anymore, as the exchange timed out or was cancelled
+                fail(new IOException("Exchange was cancelled"));
+            }
+        }
+
+        private void complete(RawHttpResponse<Void> response, boolean canReuse) {
+            @Nullable Exchange current = exchange;
+            exchange = null;
+            parser = null;
+            // the server may respond before the request is fully sent, in which case the rest is not needed
+            boolean requestSent = requestWriter == null;
+            closeRequestWriter();
+
+            boolean reusable = canReuse && requestSent &&
+                    !current.request.getHeaders().isConnectionClose() &&
+                    !response.getHeaders().isConnectionClose() &&
+                    !response.getStartLine().getHttpVersion().isOlderThan(HttpVersion.HTTP_1_1) &&
+                    response.getBody().map(b -> b.getBodyType() != BodyType.CLOSE_TERMINATED).orElse(true);
+
+            if (reusable) {
+                // keep reading so that the connection is closed as soon as the server closes it
+                key.interestOps(SelectionKey.OP_READ);
+                idleSince = System.currentTimeMillis();
+                eventLoop.idle(this);
+            } else {
+                close();
+            }
+            current.future.complete(response);
+        }
+
+        void fail(Exception error) {
+            @Nullable Exchange current = exchange;
+            if (parser != null) {
+                // discard the partially received response
+                parser.reset();
+            }
+            exchange = null;
+            parser = null;
+            closeRequestWriter();
+            eventLoop.removeIdle(this);
+            close();
+            if (current != null) {
+                current.future.completeExceptionally(error);
+            }
+        }
+
+        private void closeRequestWriter() {
+            if (requestWriter != null) {
+                try {
+                    requestWriter.close();
+                } catch (IOException ignore) {
+                    // the request body is not used anymore anyway
+                }
+                requestWriter = null;
+            }
+        }
+
+        void close() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // the connection is not used anymore anyway
+            }
+            eventLoop.closed(route);
+        }
+    }
+
+}
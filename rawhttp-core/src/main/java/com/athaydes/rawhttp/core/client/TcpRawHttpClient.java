@@ -1,28 +1,46 @@
 package com.athaydes.rawhttp.core.client;
 
+import com.athaydes.rawhttp.core.BodyReader.BodyType;
+import com.athaydes.rawhttp.core.BufferedHttpInputStream;
+import com.athaydes.rawhttp.core.EagerHttpResponse;
 import com.athaydes.rawhttp.core.HttpVersion;
 import com.athaydes.rawhttp.core.RawHttp;
 import com.athaydes.rawhttp.core.RawHttpOptions;
 import com.athaydes.rawhttp.core.RawHttpRequest;
 import com.athaydes.rawhttp.core.RawHttpResponse;
+import com.athaydes.rawhttp.core.client.ConnectionPool.Route;
 
 import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.URI;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
 /**
  * Simple implementation of {@link RawHttpClient} based on TCP {@link Socket}s.
  */
 public class TcpRawHttpClient implements RawHttpClient<Void>, Closeable {
 
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList(
+            "GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE"));
+
     private final TcpRawHttpClientOptions options;
     private final RawHttp rawHttp;
 
+    // buffered streams of the sockets used by this client, which are kept as long as the socket is open,
+    // so that bytes buffered from a connection are not lost between requests (guarded by itself)
+    private final Map<Socket, Connection> connections = new IdentityHashMap<>();
+
     /**
      * Create a new {@link TcpRawHttpClient} using {@link DefaultOptions}.
      */
@@ -63,16 +81,139 @@ public class TcpRawHttpClient implements RawHttpClient<Void>, Closeable {
     @Override
     public RawHttpResponse<Void> send(RawHttpRequest request) throws IOException {
         Socket socket = options.getSocket(request.getUri());
-        request.writeTo(socket.getOutputStream());
-        return options.onResponse(socket, request.getUri(),
-                rawHttp.parseResponse(socket.getInputStream()));
+        RawHttpResponse<Void> response;
+        try {
+            Connection connection = connectionFor(socket);
+            request.writeTo(connection.out, options.getBufferSize());
+            connection.out.flush();
+            response = rawHttp.parseResponse(connection.in, request.getStartLine());
+        } catch (IOException | RuntimeException e) {
+            options.onError(socket, request.getUri());
+            throw e;
+        }
+        return options.onResponse(socket, request.getUri(), response);
+    }
+
+    /**
+     * Send the given HTTP requests using
+     * <a href="https://tools.ietf.org/html/rfc7230#section-6.3.2">pipelining</a>: all requests are written
+     * out back to back on a single connection, without waiting for each response, and the responses are then
+     * read in the same order as the requests were sent.
+     * <p>
+     * All requests must be sent to the same host and port. As a request can only be safely retried if it is
+     * idempotent, only the last request may use a non-idempotent method, such as {@code POST}.
+     * <p>
+     * If the server closes the connection after some response (e.g. a response containing the
+     * {@code Connection: close} header), the following requests are not answered, so the returned list contains
+     * fewer responses than requests were given. Those requests may be sent again.
+     * <p>
+     * All responses but the last one are read eagerly, as the next response can only be read after the
+     * previous one has been fully received. The last response is given to
+     * {@link TcpRawHttpClientOptions#onResponse(Socket, URI, RawHttpResponse)} as with {@link #send(RawHttpRequest)}.
+     *
+     * @param requests HTTP requests to send
+     * @return the responses, in the same order as the requests
+     * @throws IOException if an error occurs while transmitting the messages
+     */
+    public List<RawHttpResponse<Void>> sendPipelined(List<RawHttpRequest> requests) throws IOException {
+        if (requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        URI uri = requests.get(0).getUri();
+        Route route = Route.of(uri);
+        for (int i = 0; i < requests.size(); i++) {
+            RawHttpRequest request = requests.get(i);
+            if (!route.equals(Route.of(request.getUri()))) {
+                throw new IllegalArgumentException("Pipelined requests must all be sent to " + route +
+                        ", but request " + i + " is sent to " + request.getUri());
+            }
+            if (i < requests.size() - 1 && !IDEMPOTENT_METHODS.contains(request.getMethod())) {
+                throw new IllegalArgumentException("Only the last pipelined request may use the " +
+                        "non-idempotent method " + request.getMethod());
+            }
+        }
+
+        Socket socket = options.getSocket(uri);
+        List<RawHttpResponse<Void>> responses = new ArrayList<>(requests.size());
+        RawHttpResponse<Void> lastResponse;
+        try {
+            Connection connection = connectionFor(socket);
+            // write all requests at once so that they can share TCP packets
+            for (RawHttpRequest request : requests) {
+                request.writeTo(connection.out, options.getBufferSize());
+            }
+            connection.out.flush();
+
+            while (true) {
+                RawHttpRequest request = requests.get(responses.size());
+                RawHttpResponse<Void> response = rawHttp.parseResponse(connection.in, request.getStartLine());
+                if (responses.size() == requests.size() - 1 || isLastOnConnection(response)) {
+                    lastResponse = response;
+                    break;
+                }
+                responses.add(response.eagerly(true));
+            }
+        } catch (IOException | RuntimeException e) {
+            options.onError(socket, uri);
+            throw e;
+        }
+        responses.add(options.onResponse(socket, uri, lastResponse));
+        return responses;
+    }
+
+    private Connection connectionFor(Socket socket) throws IOException {
+        synchronized (connections) {
+            @Nullable Connection connection = connections.get(socket);
+            if (connection != null) {
+                return connection;
+            }
+            // forget the sockets that have been closed since the last socket was opened
+            connections.keySet().removeIf(Socket::isClosed);
+        }
+        Connection connection = new Connection(socket, options);
+        synchronized (connections) {
+            connections.put(socket, connection);
+        }
+        return connection;
+    }
+
+    private static boolean isLastOnConnection(RawHttpResponse<?> response) {
+        return response.getHeaders().isConnectionClose() ||
+                response.getStartLine().getHttpVersion().isOlderThan(HttpVersion.HTTP_1_1) ||
+                response.getBody().map(b -> b.getBodyType() == BodyType.CLOSE_TERMINATED).orElse(false);
     }
 
     @Override
     public void close() throws IOException {
+        synchronized (connections) {
+            connections.clear();
+        }
         options.close();
     }
 
+    /**
+     * The buffered streams used to send requests and receive responses on a socket.
+     */
+    private static final class Connection {
+        final OutputStream out;
+        final BufferedHttpInputStream in;
+
+        Connection(Socket socket, TcpRawHttpClientOptions options) throws IOException {
+            // sockets are configured when they are first used, so that re-used sockets need no system calls
+            if (options.isTcpNoDelay()) {
+                socket.setTcpNoDelay(true);
+            }
+            if (options.getSocketSendBufferSize() > 0) {
+                socket.setSendBufferSize(options.getSocketSendBufferSize());
+            }
+            if (options.getSocketReceiveBufferSize() > 0) {
+                socket.setReceiveBufferSize(options.getSocketReceiveBufferSize());
+            }
+            this.out = new BufferedOutputStream(socket.getOutputStream(), options.getBufferSize());
+            this.in = new BufferedHttpInputStream(socket.getInputStream(), options.getBufferSize());
+        }
+    }
+
     /**
      * Configuration options for {@link TcpRawHttpClient}.
      */
@@ -101,74 +242,122 @@ public class TcpRawHttpClient implements RawHttpClient<Void>, Closeable {
         RawHttpResponse<Void> onResponse(
                 Socket socket, URI uri, RawHttpResponse<Void> httpResponse) throws IOException;
 
+        /**
+         * Callback that will be called when an error occurs while sending out a HTTP request or receiving
+         * its response, instead of {@link #onResponse(Socket, URI, RawHttpResponse)}.
+         * <p>
+         * By default, this method does nothing.
+         *
+         * @param socket the socket used to send out a HTTP request. This socket is always
+         *               the same as provided by a previous call to {@link #getSocket(URI)}.
+         * @param uri    used to make the HTTP request
+         */
+        default void onError(Socket socket, URI uri) {
+        }
+
+        /**
+         * @return whether to set the {@code TCP_NODELAY} option on sockets, disabling Nagle's algorithm.
+         * As requests are written in as few writes as possible, this is enabled by default so that
+         * requests are not delayed waiting for the server to acknowledge previous packets.
+         */
+        default boolean isTcpNoDelay() {
+            return true;
+        }
+
+        /**
+         * @return the size of the send buffer ({@code SO_SNDBUF}) of sockets, or 0 to use the
+         * operating system's default
+         */
+        default int getSocketSendBufferSize() {
+            return 0;
+        }
+
+        /**
+         * @return the size of the receive buffer ({@code SO_RCVBUF}) of sockets, or 0 to use the
+         * operating system's default
+         */
+        default int getSocketReceiveBufferSize() {
+            return 0;
+        }
+
+        /**
+         * @return the size of the buffers used to write requests to, and read responses from, each socket
+         */
+        default int getBufferSize() {
+            return BufferedHttpInputStream.DEFAULT_BUFFER_SIZE;
+        }
+
     }
 
     /**
      * The default Socket provider used by {@link TcpRawHttpClient}.
      * <p>
-     * When resolving a {@link Socket} for a {@link URI}, unless the port is present
-     * in the {@link URI}, port 80 will be used for "http" requests,
-     * and port 43 for "https" requests.
+     * Sockets are obtained from a {@link ConnectionPool}, so that a single client can be used concurrently by many
+     * Threads. Unless the port is present in the {@link URI}, port 80 is used for "http" requests, and port 443
+     * for "https" requests.
      * <p>
      * Sockets are re-used if possible (following the {@code Connection} header as described
      * in <a href="https://tools.ietf.org/html/rfc7230#section-6.3">Section 6.3</a> of RFC-7230).
+     * To make that possible, responses are read eagerly before their socket is given back to the pool.
      */
     public static class DefaultOptions implements TcpRawHttpClientOptions {
 
-        private final Map<String, Socket> socketByHost = new HashMap<>(4);
+        private final ConnectionPool connectionPool;
 
-        @Override
-        public Socket getSocket(URI uri) {
-            String host = Optional.ofNullable(uri.getHost()).orElseThrow(() ->
-                    new RuntimeException("Host is not available in the URI"));
+        /**
+         * Create a {@link DefaultOptions} instance using a {@link ConnectionPool} with the default limits.
+         */
+        public DefaultOptions() {
+            this(new ConnectionPool());
+        }
 
-            @Nullable Socket socket = socketByHost.get(host);
+        /**
+         * Create a {@link DefaultOptions} instance using the given {@link ConnectionPool}.
+         *
+         * @param connectionPool to obtain sockets from
+         */
+        public DefaultOptions(ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+        }
 
-            if (socket == null || socket.isClosed() || !socket.isConnected()) {
-                int port = uri.getPort();
-                if (port == -1) {
-                    port = "https".equalsIgnoreCase(uri.getScheme()) ?
-                            43 : 80;
-                }
-                try {
-                    socket = new Socket(host, port);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                socketByHost.put(host, socket);
+        @Override
+        public Socket getSocket(URI uri) {
+            try {
+                return connectionPool.lease(uri);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
-
-            return socket;
         }
 
         @Override
         public RawHttpResponse<Void> onResponse(Socket socket,
                                                 URI uri,
                                                 RawHttpResponse<Void> httpResponse) throws IOException {
-            if (httpResponse.getHeaders()
-                    .getFirst("Connection")
-                    .orElse("")
-                    .equalsIgnoreCase("close") ||
-                    httpResponse.getStartLine().getHttpVersion().isOlderThan(HttpVersion.HTTP_1_1)) {
-
-                socketByHost.remove(uri.getHost());
+            boolean reusable = !httpResponse.getHeaders().isConnectionClose() &&
+                    !httpResponse.getStartLine().getHttpVersion().isOlderThan(HttpVersion.HTTP_1_1) &&
+                    httpResponse.getBody().map(b -> b.getBodyType() != BodyType.CLOSE_TERMINATED).orElse(true);
 
-                // resolve the full response before closing the socket
-                return httpResponse.eagerly(false);
+            EagerHttpResponse<Void> response;
+            try {
+                // resolve the full response before the socket can be used by another request
+                response = httpResponse.eagerly(reusable);
+            } catch (IOException | RuntimeException e) {
+                connectionPool.release(socket, uri, false);
+                throw e;
             }
 
-            return httpResponse;
+            connectionPool.release(socket, uri, reusable);
+            return response;
+        }
+
+        @Override
+        public void onError(Socket socket, URI uri) {
+            connectionPool.release(socket, uri, false);
         }
 
         @Override
         public void close() {
-            for (Socket socket : socketByHost.values()) {
-                try {
-                    socket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            connectionPool.close();
         }
 
     }
@@ -0,0 +1,110 @@
+package com.athaydes.rawhttp.core.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * The input stream of a client {@link Socket}, which enforces the timeouts of {@link TcpRawHttpServer}.
+ * <p>
+ * While waiting for a request, reads fail once the keep-alive timeout expires. As soon as the first bytes of
+ * the request arrive, the whole request head must be received before the header-read timeout expires. Once the
+ * head has been received, each read of the request body may wait for up to the header-read timeout.
+ * <p>
+ * The timeouts are enforced by adjusting the socket's {@code SO_TIMEOUT} before each read, so no extra Thread
+ * is required.
+ */
+final class DeadlineInputStream extends FilterInputStream {
+
+    private enum Phase {
+        AWAITING_REQUEST, READING_HEAD, READING_BODY
+    }
+
+    private final Socket socket;
+    private final int keepAliveTimeout;
+    private final int headerReadTimeout;
+
+    private Phase phase = Phase.AWAITING_REQUEST;
+    private long deadline;
+
+    /**
+     * @param socket            client socket
+     * @param keepAliveTimeout  maximum time, in milliseconds, to wait for the next request to start
+     * @param headerReadTimeout maximum time, in milliseconds, to receive a request head
+     * @throws IOException if the socket's input stream cannot be obtained
+     */
+    DeadlineInputStream(Socket socket, int keepAliveTimeout, int headerReadTimeout) throws IOException {
+        super(socket.getInputStream());
+        this.socket = socket;
+        this.keepAliveTimeout = keepAliveTimeout;
+        this.headerReadTimeout = headerReadTimeout;
+    }
+
+    /**
+     * Start waiting for the next request.
+     */
+    void awaitRequest() {
+        phase = Phase.AWAITING_REQUEST;
+        deadline = deadlineAfter(keepAliveTimeout);
+    }
+
+    /**
+     * Signal that the head of the current request has been received.
+     */
+    void headReceived() {
+        phase = Phase.READING_BODY;
+    }
+
+    private static long deadlineAfter(int timeout) {
+        return timeout > 0 ? System.currentTimeMillis() + timeout : 0L;
+    }
+
+    private void beforeRead() throws IOException {
+        int timeout;
+        if (phase == Phase.READING_BODY) {
+            timeout = headerReadTimeout;
+        } else if (deadline == 0L) {
+            timeout = 0;
+        } else {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException(phase == Phase.AWAITING_REQUEST ?
+                        "Keep-alive timeout expired" : "Header-read timeout expired");
+            }
+            timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+        socket.setSoTimeout(timeout);
+    }
+
+    private void afterRead(int bytesRead) {
+        if (bytesRead > 0 && phase == Phase.AWAITING_REQUEST) {
+            phase = Phase.READING_HEAD;
+            deadline = deadlineAfter(headerReadTimeout);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        beforeRead();
+        int b = in.read();
+        afterRead(b < 0 ? -1 : 1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        beforeRead();
+        int bytesRead = in.read(b, off, len);
+        afterRead(bytesRead);
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        beforeRead();
+        return in.skip(n);
+    }
+
+}
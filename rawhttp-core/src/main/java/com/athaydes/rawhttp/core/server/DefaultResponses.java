@@ -0,0 +1,101 @@
+package com.athaydes.rawhttp.core.server;
+
+import com.athaydes.rawhttp.core.BodyReader.BodyType;
+import com.athaydes.rawhttp.core.EagerBodyReader;
+import com.athaydes.rawhttp.core.EagerHttpResponse;
+import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpResponse;
+import com.athaydes.rawhttp.core.ResponseTemplate;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Default responses sent by the {@link RawHttpServer} implementations.
+ */
+final class DefaultResponses {
+
+    private DefaultResponses() {
+        // not instantiable
+    }
+
+    /**
+     * @param http to parse the response with
+     * @return the default ServerError (500) response, sent when the {@link Router} throws an Exception.
+     */
+    static EagerHttpResponse<Void> serverError(RawHttp http) throws IOException {
+        return http.parseResponse("HTTP/1.1 500 Server Error\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Length: 28\r\n" +
+                "Cache-Control: no-cache\r\n" +
+                "Pragma: no-cache\r\n" +
+                "\r\n" +
+                "A Server Error has occurred.").eagerly();
+    }
+
+    /**
+     * @param http to parse the response with
+     * @return the default NotFound (404) response, sent when the {@link Router} does not return a response.
+     */
+    static EagerHttpResponse<Void> notFound(RawHttp http) throws IOException {
+        return http.parseResponse("HTTP/1.1 404 Not Found\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Length: 23\r\n" +
+                "Cache-Control: no-cache\r\n" +
+                "Pragma: no-cache\r\n" +
+                "\r\n" +
+                "Resource was not found.").eagerly();
+    }
+
+    /**
+     * @param http to parse the response with
+     * @return the default ServiceUnavailable (503) response, sent when the server is too busy to handle a
+     * connection.
+     */
+    static EagerHttpResponse<Void> serviceUnavailable(RawHttp http) throws IOException {
+        return http.parseResponse("HTTP/1.1 503 Service Unavailable\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Length: 47\r\n" +
+                "Retry-After: 1\r\n" +
+                "Cache-Control: no-cache\r\n" +
+                "Pragma: no-cache\r\n" +
+                "Connection: close\r\n" +
+                "\r\n" +
+                "The server is too busy, please try again later.").eagerly();
+    }
+
+    /**
+     * @param http           to parse the response with
+     * @param allowedMethods the methods that are allowed for the requested resource
+     * @return the default MethodNotAllowed (405) response, sent when a resource does not support the requested
+     * method.
+     */
+    static EagerHttpResponse<Void> methodNotAllowed(RawHttp http, Collection<String> allowedMethods)
+            throws IOException {
+        return http.parseResponse("HTTP/1.1 405 Method Not Allowed\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Length: 22\r\n" +
+                "Allow: " + String.join(", ", allowedMethods) + "\r\n" +
+                "Cache-Control: no-cache\r\n" +
+                "Pragma: no-cache\r\n" +
+                "\r\n" +
+                "Method is not allowed.").eagerly();
+    }
+
+    /**
+     * Pre-encode the status line and headers of a response that is sent many times, so that they are not
+     * serialized again every time the response is sent.
+     *
+     * @param response to pre-encode
+     * @return an equivalent response, or the given response if its body is not delimited by its length
+     */
+    static RawHttpResponse<Void> preEncoded(EagerHttpResponse<Void> response) {
+        Optional<EagerBodyReader> body = response.getBody();
+        if (!body.isPresent() || body.get().getBodyType() != BodyType.CONTENT_LENGTH) {
+            return response;
+        }
+        return ResponseTemplate.from(response).withBody(body.get().asBytes());
+    }
+
+}
@@ -0,0 +1,466 @@
+package com.athaydes.rawhttp.core.server;
+
+import com.athaydes.rawhttp.core.EagerHttpResponse;
+import com.athaydes.rawhttp.core.HttpMessageWriter;
+import com.athaydes.rawhttp.core.HttpPushParser;
+import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpRequest;
+import com.athaydes.rawhttp.core.RawHttpResponse;
+import com.athaydes.rawhttp.core.errors.InvalidHttpRequest;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking implementation of {@link RawHttpServer}.
+ * <p>
+ * This implementation uses a small, fixed number of event loops (by default, one per available processor),
+ * each one serving many connections via a {@link Selector}. Connections that are idle do not use any Thread,
+ * so this server can hold a large number of keep-alive connections.
+ * <p>
+ * Requests are parsed incrementally by a {@link HttpPushParser} as their bytes arrive, and are only routed once
+ * they have been fully received, so the {@link Router} always gets requests with an eagerly-read body.
+ * The memory used by a request being received is bounded by the options of the server's {@link RawHttp} instance:
+ * see {@link HttpPushParser} for details.
+ * The router is called from the event loop that received the request, hence it must not block, otherwise all other
+ * connections served by the same event loop will be delayed.
+ * <p>
+ * Responses are written incrementally, as the client's connection becomes writable, using a
+ * {@link HttpMessageWriter}, so a response body is never fully copied into memory before being sent. Notice that
+ * bodies which are not kept in memory nor read from a file are read from their stream by the event loop, so such
+ * streams should not block either.
+ * <p>
+ * Connections which do not send or receive any bytes for longer than
+ * {@link NioRawHttpServerOptions#getKeepAliveTimeout()} are closed.
+ * <p>
+ * It is possible to configure this server by passing an instance of {@link NioRawHttpServerOptions} to its
+ * constructor.
+ */
+public class NioRawHttpServer implements RawHttpServer {
+
+    private final AtomicReference<RouterAndChannel> routerRef = new AtomicReference<>();
+    private final NioRawHttpServerOptions options;
+
+    public NioRawHttpServer(int port) {
+        this.options = () -> ServerSocketChannel.open().bind(new InetSocketAddress(port));
+    }
+
+    public NioRawHttpServer(NioRawHttpServerOptions options) {
+        this.options = options;
+    }
+
+    public NioRawHttpServerOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public void start(Router router) {
+        try {
+            stop();
+        } catch (RuntimeException e) {
+            // ignore because this means the previous channel probably was already dead,
+            // but that shouldn't make it impossible to start another server
+        }
+
+        try {
+            routerRef.set(new RouterAndChannel(router, options));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        RouterAndChannel current = routerRef.getAndSet(null);
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Configuration options for {@link NioRawHttpServer}.
+     */
+    public interface NioRawHttpServerOptions {
+
+        /**
+         * Create a server socket channel for the server to use.
+         * <p>
+         * The channel must be bound, and must be in blocking mode, as it is used by a dedicated acceptor Thread.
+         *
+         * @return a bound server socket channel
+         * @throws IOException if an error occurs when binding the channel
+         */
+        ServerSocketChannel getServerSocketChannel() throws IOException;
+
+        /**
+         * @return the {@link RawHttp} instance to use to parse requests and responses
+         */
+        default RawHttp getRawHttp() {
+            return new RawHttp();
+        }
+
+        /**
+         * @return the number of event loops (each running on its own Thread) to serve connections with
+         */
+        default int getEventLoopCount() {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        /**
+         * @return the maximum time, in milliseconds, that a connection may stay idle (not sending a request nor
+         * receiving a response) before it is closed, or 0 to wait forever
+         */
+        default int getKeepAliveTimeout() {
+            return 60_000;
+        }
+
+        /**
+         * @return the default ServerError (500) response to send out when an Exception occurs in the {@link Router}.
+         */
+        default EagerHttpResponse<Void> serverErrorResponse() {
+            return null;
+        }
+
+        /**
+         * @return the default NotFound (404) response to send out when an Exception occurs in the {@link Router}.
+         */
+        default EagerHttpResponse<Void> notFoundResponse() {
+            return null;
+        }
+
+    }
+
+    private static class RouterAndChannel {
+
+        private final Router router;
+        private final ServerSocketChannel serverChannel;
+        private final RawHttp http;
+        private final RawHttpResponse<Void> serverErrorResponse;
+        private final RawHttpResponse<Void> notFoundResponse;
+        private final int keepAliveTimeout;
+        private final EventLoop[] eventLoops;
+
+        RouterAndChannel(Router router, NioRawHttpServerOptions options) throws IOException {
+            this.router = router;
+            this.serverChannel = options.getServerSocketChannel();
+            this.http = options.getRawHttp();
+            this.serverErrorResponse = DefaultResponses.preEncoded(options.serverErrorResponse() != null ?
+                    options.serverErrorResponse() : DefaultResponses.serverError(http));
+            this.notFoundResponse = DefaultResponses.preEncoded(options.notFoundResponse() != null ?
+                    options.notFoundResponse() : DefaultResponses.notFound(http));
+            this.keepAliveTimeout = options.getKeepAliveTimeout();
+            if (keepAliveTimeout < 0) {
+                throw new IllegalArgumentException("Keep-alive timeout must not be negative: " + keepAliveTimeout);
+            }
+
+            int eventLoopCount = options.getEventLoopCount();
+            if (eventLoopCount < 1) {
+                throw new IllegalArgumentException("Event loop count must be at least 1: " + eventLoopCount);
+            }
+            this.eventLoops = new EventLoop[eventLoopCount];
+            for (int i = 0; i < eventLoopCount; i++) {
+                eventLoops[i] = new EventLoop(this, i);
+            }
+
+            start();
+        }
+
+        private void start() {
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.start();
+            }
+
+            new Thread(() -> {
+                int failedAccepts = 0;
+                int next = 0;
+
+                while (true) {
+                    try {
+                        SocketChannel client = serverChannel.accept();
+                        eventLoops[next].register(client);
+                        next = (next + 1) % eventLoops.length;
+                        failedAccepts = 0;
+                    } catch (ClosedChannelException e) {
+                        break; // server channel was closed
+                    } catch (IOException e) {
+                        failedAccepts++;
+                        e.printStackTrace();
+                        if (failedAccepts > 10) {
+                            break; // give up, too many accept failures
+                        }
+                    }
+                }
+            }, "nio-raw-http-server-acceptor").start();
+        }
+
+        private RawHttpResponse<?> route(RawHttpRequest request) {
+            try {
+                RawHttpResponse<?> response = router.route(request);
+                if (response == null) {
+                    return notFoundResponse;
+                } else {
+                    return response;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                return serverErrorResponse;
+            }
+        }
+
+        void stop() {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                for (EventLoop eventLoop : eventLoops) {
+                    eventLoop.stop();
+                }
+            }
+        }
+    }
+
+    private static class EventLoop implements Runnable {
+
+        private final RouterAndChannel server;
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> newClients = new ConcurrentLinkedQueue<>();
+
+        // all connections of this loop are served from the same Thread, so they can share the read buffer
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+
+        // how often idle connections are looked for, so that they are closed at most this late
+        private final long idleCheckInterval;
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        private volatile boolean running = true;
+
+        EventLoop(RouterAndChannel server, int index) throws IOException {
+            this.server = server;
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-raw-http-server-" + index);
+            this.idleCheckInterval = server.keepAliveTimeout == 0 ? 0 : Math.max(1, server.keepAliveTimeout / 10);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void register(SocketChannel client) {
+            newClients.add(client);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(idleCheckInterval);
+                    registerNewClients();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.onReadable(readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (IOException e) {
+                            // the client closed the connection or it got broken
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            // only the connection being served is affected by an unexpected error
+                            e.printStackTrace();
+                            connection.close();
+                        }
+                    }
+                    closeIdleConnections();
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void registerNewClients() {
+            SocketChannel client;
+            while ((client = newClients.poll()) != null) {
+                try {
+                    client.configureBlocking(false);
+                    SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(server, client, key));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    closeQuietly(client);
+                }
+            }
+        }
+
+        private void closeIdleConnections() {
+            if (idleCheckInterval == 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastIdleCheck < idleCheckInterval) {
+                return;
+            }
+            lastIdleCheck = now;
+            for (SelectionKey key : selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                if (connection != null && now - connection.lastActivity > server.keepAliveTimeout) {
+                    connection.close();
+                }
+            }
+        }
+
+        private void closeAll() {
+            SocketChannel client;
+            while ((client = newClients.poll()) != null) {
+                closeQuietly(client);
+            }
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly((SocketChannel) key.channel());
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException ignore) {
+                // nothing else we can do
+            }
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+    }
+
+    private static class Connection {
+
+        private final RouterAndChannel server;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final HttpPushParser<RawHttpRequest> parser;
+        private final Queue<HttpMessageWriter> pendingWrites = new ArrayDeque<>(2);
+        private boolean closeAfterWrites = false;
+        private long lastActivity = System.currentTimeMillis();
+
+        Connection(RouterAndChannel server, SocketChannel channel, SelectionKey key) {
+            this.server = server;
+            this.channel = channel;
+            this.key = key;
+            this.parser = HttpPushParser.requestParser(server.http);
+        }
+
+        void onReadable(ByteBuffer readBuffer) throws IOException {
+            readBuffer.clear();
+            int bytesRead = channel.read(readBuffer);
+            if (bytesRead < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            lastActivity = System.currentTimeMillis();
+
+            // all bytes read must be consumed, as the buffer is shared with other connections
+            while (readBuffer.hasRemaining() && !closeAfterWrites) {
+                HttpPushParser.Status status;
+                try {
+                    status = parser.feed(readBuffer);
+                } catch (RuntimeException e) {
+                    if (!(e instanceof InvalidHttpRequest)) {
+                        e.printStackTrace();
+                    }
+                    // the request cannot be answered, so the connection is closed as TcpRawHttpServer does,
+                    // but only after sending the responses to the previous requests
+                    closeAfterWrites = true;
+                    break;
+                }
+                if (status == HttpPushParser.Status.MESSAGE_COMPLETE) {
+                    handle(parser.getMessage());
+                }
+            }
+
+            if (channel.isOpen()) {
+                flush();
+            }
+        }
+
+        void onWritable() throws IOException {
+            flush();
+        }
+
+        private void handle(RawHttpRequest request) throws IOException {
+            RawHttpResponse<?> response = server.route(request);
+            pendingWrites.add(new HttpMessageWriter(response, 8192));
+
+            if (request.getHeaders().isConnectionClose() || response.getHeaders().isConnectionClose()) {
+                closeAfterWrites = true;
+            }
+        }
+
+        private void flush() throws IOException {
+            @Nullable HttpMessageWriter writer;
+            while ((writer = pendingWrites.peek()) != null) {
+                boolean done = writer.write(channel);
+                lastActivity = System.currentTimeMillis();
+                if (!done) {
+                    // the socket buffer is full, so stop reading requests until the client catches up
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                pendingWrites.poll();
+                writer.close();
+            }
+            if (closeAfterWrites) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+            // discard any partially received request and any responses not yet sent
+            parser.reset();
+            @Nullable HttpMessageWriter writer;
+            while ((writer = pendingWrites.poll()) != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignore) {
+                    // the response was not going to be sent anyway
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+            // we wanted to forget the client, so this is fine
+        }
+    }
+
+}
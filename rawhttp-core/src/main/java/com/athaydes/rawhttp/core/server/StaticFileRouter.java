@@ -0,0 +1,399 @@
+package com.athaydes.rawhttp.core.server;
+
+import com.athaydes.rawhttp.core.BodyReader;
+import com.athaydes.rawhttp.core.EagerBodyReader;
+import com.athaydes.rawhttp.core.EagerHttpResponse;
+import com.athaydes.rawhttp.core.HeaderName;
+import com.athaydes.rawhttp.core.HttpDates;
+import com.athaydes.rawhttp.core.HttpVersion;
+import com.athaydes.rawhttp.core.LazyBodyReader;
+import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpHeaders;
+import com.athaydes.rawhttp.core.RawHttpRequest;
+import com.athaydes.rawhttp.core.RawHttpResponse;
+import com.athaydes.rawhttp.core.StatusCodeLine;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A {@link Router} that serves the files of a directory to GET and HEAD requests.
+ * <p>
+ * The request path is resolved against the root directory (paths outside of it are never served). If the path
+ * points to a directory, its {@code index.html} file is served. If no file exists, this router returns null
+ * (so the server sends a NotFound (404) response).
+ * <p>
+ * Information about the files that have been served is kept in a cache, which is bounded by the total size of its
+ * entries, evicting the least recently used entries first. The contents of small files are cached as well,
+ * while larger files are streamed from disk (directly to the socket if the server writes to a channel).
+ * A cached file is only checked for changes on disk once the revalidation interval has elapsed, so modifications
+ * become visible within that interval.
+ * <p>
+ * Responses include the {@code ETag} and {@code Last-Modified} headers. Requests containing a matching
+ * {@code If-None-Match} (or {@code If-Modified-Since}) header receive a NotModified (304) response, which,
+ * for recently validated files, does not require any disk access.
+ */
+public class StaticFileRouter implements Router {
+
+    /**
+     * The default maximum total size, in bytes, of the cache.
+     */
+    public static final long DEFAULT_MAX_CACHE_SIZE = 64L * 1024L * 1024L;
+
+    /**
+     * The default maximum size, in bytes, of files whose contents are cached.
+     */
+    public static final long DEFAULT_MAX_CACHED_FILE_SIZE = 256L * 1024L;
+
+    /**
+     * The default time, in milliseconds, after which a cached file is checked for changes.
+     */
+    public static final long DEFAULT_REVALIDATE_INTERVAL = 1_000L;
+
+    // approximate memory used by a cache entry, excluding the file contents
+    private static final long ENTRY_OVERHEAD = 512L;
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final Map<String, String> CONTENT_TYPE_BY_EXTENSION = contentTypes();
+
+    private static final StatusCodeLine OK = new StatusCodeLine(HttpVersion.HTTP_1_1, 200, "OK");
+    private static final StatusCodeLine NOT_MODIFIED = new StatusCodeLine(HttpVersion.HTTP_1_1, 304, "Not Modified");
+
+    private final Path rootDirectory;
+    private final long maxCacheSize;
+    private final long maxCachedFileSize;
+    private final long revalidateInterval;
+    private final EagerHttpResponse<Void> methodNotAllowed;
+
+    // access-ordered, so iteration starts from the least recently used entry. Guarded by itself.
+    private final LinkedHashMap<String, CachedFile> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cacheSize = 0L;
+
+    /**
+     * Create a {@link StaticFileRouter} with the default cache settings.
+     *
+     * @param rootDirectory directory whose files should be served
+     */
+    public StaticFileRouter(File rootDirectory) {
+        this(rootDirectory, DEFAULT_MAX_CACHE_SIZE, DEFAULT_MAX_CACHED_FILE_SIZE, DEFAULT_REVALIDATE_INTERVAL);
+    }
+
+    /**
+     * Create a {@link StaticFileRouter}.
+     *
+     * @param rootDirectory      directory whose files should be served
+     * @param maxCacheSize       maximum total size, in bytes, of the cache
+     * @param maxCachedFileSize  maximum size, in bytes, of files whose contents are cached
+     * @param revalidateInterval time, in milliseconds, after which a cached file is checked for changes
+     */
+    public StaticFileRouter(File rootDirectory, long maxCacheSize, long maxCachedFileSize, long revalidateInterval) {
+        if (!rootDirectory.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + rootDirectory);
+        }
+        if (maxCachedFileSize > maxCacheSize) {
+            throw new IllegalArgumentException("Maximum cached file size must not exceed the maximum cache size");
+        }
+        this.rootDirectory = rootDirectory.toPath().toAbsolutePath().normalize();
+        this.maxCacheSize = maxCacheSize;
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.revalidateInterval = revalidateInterval;
+        try {
+            this.methodNotAllowed = DefaultResponses.methodNotAllowed(new RawHttp(), Arrays.asList("GET", "HEAD"));
+        } catch (IOException e) {
+            // cannot happen as the response is parsed from a String
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public RawHttpResponse<?> route(RawHttpRequest request) {
+        String method = request.getMethod();
+        boolean isHead = method.equals("HEAD");
+        if (!isHead && !method.equals("GET")) {
+            return methodNotAllowed;
+        }
+
+        @Nullable String path = request.getUri().getPath();
+        if (path == null) {
+            return null;
+        }
+        return route(request, path, isHead, true);
+    }
+
+    @Nullable
+    private RawHttpResponse<?> route(RawHttpRequest request, String path, boolean isHead, boolean canRetry) {
+        @Nullable CachedFile file = lookup(path);
+        if (file == null) {
+            return null;
+        }
+
+        if (isNotModified(request.getHeaders(), file)) {
+            return new RawHttpResponse<Void>(null, request, NOT_MODIFIED, file.notModifiedHeaders, null);
+        }
+        if (isHead) {
+            return new RawHttpResponse<Void>(null, request, OK, file.headers, null);
+        }
+
+        @Nullable BodyReader body;
+        if (file.contents != null) {
+            body = new EagerBodyReader(file.contents);
+        } else {
+            body = openFile(file);
+            if (body == null) {
+                // the file changed since the cache entry was validated, so its headers cannot be used
+                invalidate(path);
+                return canRetry ? route(request, path, isHead, false) : null;
+            }
+        }
+        return new RawHttpResponse<Void>(null, request, OK, file.headers, body);
+    }
+
+    /**
+     * Open a file whose contents are not cached, checking that its length is still the cached one, as the
+     * Content-Length header sent with it is taken from the cache entry.
+     *
+     * @param file cached file
+     * @return a reader of the file, or null if it cannot be opened or its length has changed
+     */
+    @Nullable
+    private static BodyReader openFile(CachedFile file) {
+        FileInputStream stream;
+        try {
+            stream = new FileInputStream(file.file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            if (stream.getChannel().size() == file.length) {
+                // not buffered, so that the file can be transferred directly to a channel
+                return new LazyBodyReader(BodyReader.BodyType.CONTENT_LENGTH, stream, file.length, false);
+            }
+        } catch (IOException e) {
+            // the file cannot be used
+        }
+        try {
+            stream.close();
+        } catch (IOException ignore) {
+            // the file is not used anyway
+        }
+        return null;
+    }
+
+    /**
+     * @return the total size, in bytes, of the entries currently in the cache.
+     */
+    public long getCacheSize() {
+        synchronized (cache) {
+            return cacheSize;
+        }
+    }
+
+    @Nullable
+    private CachedFile lookup(String path) {
+        long now = System.currentTimeMillis();
+        @Nullable CachedFile cached;
+        synchronized (cache) {
+            cached = cache.get(path);
+        }
+        if (cached != null && now - cached.validatedAt < revalidateInterval) {
+            return cached;
+        }
+
+        @Nullable File file = resolve(path);
+        if (file == null) {
+            invalidate(path);
+            return null;
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (cached != null && cached.file.equals(file) &&
+                cached.lastModified == lastModified && cached.length == length) {
+            cached.validatedAt = now;
+            return cached;
+        }
+
+        @Nullable byte[] contents = null;
+        if (length <= maxCachedFileSize) {
+            try {
+                contents = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                invalidate(path);
+                return null;
+            }
+            length = contents.length;
+        }
+        CachedFile loaded = new CachedFile(file, lastModified, length, contents, now);
+        put(path, loaded);
+        return loaded;
+    }
+
+    @Nullable
+    private File resolve(String path) {
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        Path target;
+        try {
+            target = rootDirectory.resolve(path.substring(start)).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!target.startsWith(rootDirectory)) {
+            return null;
+        }
+        File file = target.toFile();
+        if (file.isDirectory()) {
+            file = new File(file, "index.html");
+        }
+        return file.isFile() && file.canRead() ? file : null;
+    }
+
+    private void put(String path, CachedFile file) {
+        synchronized (cache) {
+            @Nullable CachedFile previous = cache.put(path, file);
+            if (previous != null) {
+                cacheSize -= previous.size();
+            }
+            cacheSize += file.size();
+            Iterator<CachedFile> iterator = cache.values().iterator();
+            while (cacheSize > maxCacheSize && iterator.hasNext()) {
+                cacheSize -= iterator.next().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void invalidate(String path) {
+        synchronized (cache) {
+            @Nullable CachedFile previous = cache.remove(path);
+            if (previous != null) {
+                cacheSize -= previous.size();
+            }
+        }
+    }
+
+    private static boolean isNotModified(RawHttpHeaders headers, CachedFile file) {
+        // If-Modified-Since must be ignored if If-None-Match is present (see RFC-7232, Section 3.3)
+        List<String> ifNoneMatch = headers.get(HeaderName.IF_NONE_MATCH);
+        if (!ifNoneMatch.isEmpty()) {
+            for (String value : ifNoneMatch) {
+                for (String tag : value.split(",")) {
+                    tag = tag.trim();
+                    // weak comparison, as required for If-None-Match
+                    if (tag.startsWith("W/")) {
+                        tag = tag.substring(2);
+                    }
+                    if (tag.equals("*") || tag.equals(file.etag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        Optional<String> ifModifiedSince = headers.getFirst(HeaderName.IF_MODIFIED_SINCE);
+        if (ifModifiedSince.isPresent()) {
+            try {
+                Instant since = HttpDates.parse(ifModifiedSince.get());
+                return file.lastModified / 1000L <= since.getEpochSecond();
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String contentTypeOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+        return CONTENT_TYPE_BY_EXTENSION.getOrDefault(
+                name.substring(dot + 1).toLowerCase(Locale.ROOT), DEFAULT_CONTENT_TYPE);
+    }
+
+    private static Map<String, String> contentTypes() {
+        Map<String, String> types = new HashMap<>();
+        types.put("html", "text/html");
+        types.put("htm", "text/html");
+        types.put("css", "text/css");
+        types.put("js", "application/javascript");
+        types.put("mjs", "application/javascript");
+        types.put("json", "application/json");
+        types.put("map", "application/json");
+        types.put("xml", "application/xml");
+        types.put("txt", "text/plain");
+        types.put("md", "text/markdown");
+        types.put("csv", "text/csv");
+        types.put("svg", "image/svg+xml");
+        types.put("png", "image/png");
+        types.put("jpg", "image/jpeg");
+        types.put("jpeg", "image/jpeg");
+        types.put("gif", "image/gif");
+        types.put("webp", "image/webp");
+        types.put("ico", "image/x-icon");
+        types.put("woff", "font/woff");
+        types.put("woff2", "font/woff2");
+        types.put("ttf", "font/ttf");
+        types.put("otf", "font/otf");
+        types.put("wasm", "application/wasm");
+        types.put("pdf", "application/pdf");
+        types.put("zip", "application/zip");
+        types.put("gz", "application/gzip");
+        types.put("mp3", "audio/mpeg");
+        types.put("mp4", "video/mp4");
+        types.put("webm", "video/webm");
+        return types;
+    }
+
+    private static final class CachedFile {
+        final File file;
+        final long lastModified;
+        final long length;
+        @Nullable
+        final byte[] contents;
+        final String etag;
+        final RawHttpHeaders headers;
+        final RawHttpHeaders notModifiedHeaders;
+        volatile long validatedAt;
+
+        CachedFile(File file, long lastModified, long length, @Nullable byte[] contents, long validatedAt) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.contents = contents;
+            this.validatedAt = validatedAt;
+            this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+            this.notModifiedHeaders = RawHttpHeaders.Builder.newBuilder()
+                    .with(HeaderName.ETAG, etag)
+                    .with(HeaderName.LAST_MODIFIED, HttpDates.format(Instant.ofEpochMilli(lastModified)))
+                    .build();
+            this.headers = RawHttpHeaders.Builder.newBuilder(notModifiedHeaders)
+                    .with(HeaderName.CONTENT_TYPE, contentTypeOf(file))
+                    .with(HeaderName.CONTENT_LENGTH, Long.toString(length))
+                    .build();
+        }
+
+        long size() {
+            return ENTRY_OVERHEAD + (contents == null ? 0L : contents.length);
+        }
+    }
+
+}
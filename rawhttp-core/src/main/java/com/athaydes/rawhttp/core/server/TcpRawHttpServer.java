@@ -1,25 +1,61 @@
 package com.athaydes.rawhttp.core.server;
 
+import com.athaydes.rawhttp.core.BodyReader;
+import com.athaydes.rawhttp.core.BufferedHttpInputStream;
 import com.athaydes.rawhttp.core.EagerHttpResponse;
+import com.athaydes.rawhttp.core.HeaderName;
+import com.athaydes.rawhttp.core.LazyBodyReader;
 import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpHeaders;
 import com.athaydes.rawhttp.core.RawHttpRequest;
 import com.athaydes.rawhttp.core.RawHttpResponse;
 import com.athaydes.rawhttp.core.errors.InvalidHttpRequest;
 
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Simple implementation of {@link RawHttpServer}.
  * <p>
- * This implementation, by default, spans a Thread for each client that connects, re-using Threads as possible.
- * Notice that this does not scale to a large number of clients, so this server is not recommended for production use.
+ * This implementation, by default, serves each client that connects from a bounded pool of Threads. Connections
+ * accepted while all Threads are busy wait in a bounded queue. If the queue is also full, the connection is
+ * immediately answered with a ServiceUnavailable (503) response, without calling the {@link Router}, and closed.
+ * The same happens when the maximum number of concurrent connections is reached.
+ * The number of connections rejected in this way is available via {@link #getRejectedConnectionCount()}.
+ * <p>
+ * Connections are closed when they stay idle for longer than the keep-alive timeout, when a client takes too
+ * long to send a request head, or after the maximum number of requests per connection has been served
+ * (the last response then contains the "Connection: close" header).
+ * <p>
+ * Requests pipelined by a client are routed one at a time by default. If
+ * {@link TcpRawHttpServerOptions#getMaxPipelinedRequests()} is greater than 1, requests already received are
+ * read ahead and routed concurrently, while their responses are still sent in order.
+ * <p>
+ * Notice that each Thread serves a single connection at a time, so this does not scale to a large number of clients.
+ * See {@link NioRawHttpServer} for a server that does.
  * <p>
  * It is possible to configure this server by passing an instance of {@link TcpRawHttpServerOptions} to its
  * constructor.
@@ -27,10 +63,12 @@ import java.util.concurrent.atomic.AtomicReference;
 public class TcpRawHttpServer implements RawHttpServer {
 
     private final AtomicReference<RouterAndSocket> routerRef = new AtomicReference<>();
+    private final AtomicLong rejectedConnections = new AtomicLong();
     private final TcpRawHttpServerOptions options;
 
     public TcpRawHttpServer(int port) {
-        this.options = () -> new ServerSocket(port);
+        // use a channel-backed socket so that responses can be written via channels (see HttpMessage#writeTo)
+        this.options = () -> ServerSocketChannel.open().bind(new InetSocketAddress(port)).socket();
     }
 
     public TcpRawHttpServer(TcpRawHttpServerOptions options) {
@@ -41,6 +79,14 @@ public class TcpRawHttpServer implements RawHttpServer {
         return options;
     }
 
+    /**
+     * @return the number of connections that were rejected with a ServiceUnavailable (503) response because
+     * the server was too busy to serve them.
+     */
+    public long getRejectedConnectionCount() {
+        return rejectedConnections.get();
+    }
+
     @Override
     public void start(Router router) {
         try {
@@ -51,7 +97,7 @@ public class TcpRawHttpServer implements RawHttpServer {
         }
 
         try {
-            routerRef.set(new RouterAndSocket(router, options));
+            routerRef.set(new RouterAndSocket(router, options, rejectedConnections));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -86,11 +132,134 @@ public class TcpRawHttpServer implements RawHttpServer {
         }
 
         /**
-         * @return executor service to use to run client-serving {@link Runnable}s. Each {@link Runnable} runs until
-         * the connection with the client is closed or lost.
+         * @return the maximum number of Threads used by the default {@link #getExecutorService()}.
+         * By default, this is 200, or {@link #getMaxConnections()} if that is smaller.
+         */
+        default int getMaxThreads() {
+            return Math.min(200, getMaxConnections());
+        }
+
+        /**
+         * @return the maximum number of accepted connections that may wait for a Thread to become available
+         * in the default {@link #getExecutorService()}. By default, this is the number of connections that
+         * {@link #getMaxConnections()} allows beyond {@link #getMaxThreads()}, so that connections are only
+         * rejected once that limit is reached.
+         */
+        default int getAcceptQueueSize() {
+            return Math.max(1, getMaxConnections() - getMaxThreads());
+        }
+
+        /**
+         * @return the maximum number of connections that may be open at the same time, including the ones waiting
+         * for a Thread to become available. Connections accepted beyond this limit are rejected with
+         * the {@link #serviceUnavailableResponse()}.
+         */
+        default int getMaxConnections() {
+            return 1000;
+        }
+
+        /**
+         * @return the maximum time, in milliseconds, that a connection may stay idle waiting for the next request
+         * before it is closed, or 0 to wait forever
+         */
+        default int getKeepAliveTimeout() {
+            return 60_000;
+        }
+
+        /**
+         * @return the maximum time, in milliseconds, that a client may take to send the head of a request
+         * (the method line and headers) once it starts sending it, or 0 to wait forever. This is also the maximum
+         * time to wait for each read of a request body.
+         */
+        default int getHeaderReadTimeout() {
+            return 30_000;
+        }
+
+        /**
+         * @return the maximum number of requests served on a single connection, or 0 for no limit
+         */
+        default int getMaxRequestsPerConnection() {
+            return 1000;
+        }
+
+        /**
+         * @return the maximum number of requests that may be read ahead from a connection on which the client
+         * pipelines requests, so that they are routed concurrently by the Threads of the
+         * {@link #getPipelinedRequestExecutorService()}. Responses are still sent in the same order as the
+         * requests were received.
+         * Request bodies are always read eagerly when this is greater than 1.
+         * By default, this is 1, so requests on a connection are routed one at a time.
+         */
+        default int getMaxPipelinedRequests() {
+            return 1;
+        }
+
+        /**
+         * @return whether to set the {@code TCP_NODELAY} option on client sockets, disabling Nagle's algorithm.
+         * As this server writes each response in as few writes as possible, this is enabled by default so that
+         * responses are not delayed waiting for the client to acknowledge previous packets.
+         */
+        default boolean isTcpNoDelay() {
+            return true;
+        }
+
+        /**
+         * @return the size of the send buffer ({@code SO_SNDBUF}) of client sockets, or 0 to use the
+         * operating system's default
+         */
+        default int getSocketSendBufferSize() {
+            return 0;
+        }
+
+        /**
+         * @return the size of the receive buffer ({@code SO_RCVBUF}) of client sockets, or 0 to use the
+         * operating system's default. Sizes larger than 64KB only take effect if also set on the
+         * {@link #getServerSocket()} before it is bound.
+         */
+        default int getSocketReceiveBufferSize() {
+            return 0;
+        }
+
+        /**
+         * @return the size of the buffers used to read requests from, and write responses to, each connection
+         */
+        default int getBufferSize() {
+            return BufferedHttpInputStream.DEFAULT_BUFFER_SIZE;
+        }
+
+        /**
+         * Create the executor service to use to run client-serving {@link Runnable}s.
+         * Each {@link Runnable} runs until the connection with the client is closed or lost.
+         * <p>
+         * When the executor service rejects a {@link Runnable}, the client is sent the
+         * {@link #serviceUnavailableResponse()}.
+         * <p>
+         * By default, a pool with up to {@link #getMaxThreads()} Threads and a queue holding up to
+         * {@link #getAcceptQueueSize()} connections is used.
+         *
+         * @return executor service to use to run client-serving {@link Runnable}s
          */
         default ExecutorService getExecutorService() {
-            return Executors.newCachedThreadPool();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(getMaxThreads(), getMaxThreads(),
+                    60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(getAcceptQueueSize()));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+        /**
+         * Create the executor service to use to route requests read ahead from connections on which the client
+         * pipelines requests. This is only called if {@link #getMaxPipelinedRequests()} is greater than 1.
+         * <p>
+         * This must not be the {@link #getExecutorService()}, as routing tasks would then compete with, and
+         * eventually cause the rejection of, new connections. When this executor service rejects a task,
+         * the request is routed by the Thread serving its connection.
+         * <p>
+         * By default, a pool with up to {@link #getMaxThreads()} Threads and no queue is used.
+         *
+         * @return executor service to use to route pipelined requests
+         */
+        default ExecutorService getPipelinedRequestExecutorService() {
+            return new ThreadPoolExecutor(0, getMaxThreads(), 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
         }
 
         /**
@@ -107,6 +276,14 @@ public class TcpRawHttpServer implements RawHttpServer {
             return null;
         }
 
+        /**
+         * @return the default ServiceUnavailable (503) response to send out when the server is too busy to
+         * serve a connection. The connection is closed after this response is sent.
+         */
+        default EagerHttpResponse<Void> serviceUnavailableResponse() {
+            return null;
+        }
+
     }
 
     private static class RouterAndSocket {
@@ -114,34 +291,49 @@ public class TcpRawHttpServer implements RawHttpServer {
         private final Router router;
         private final ServerSocket socket;
         private final ExecutorService executorService;
+        @Nullable
+        private final ExecutorService pipelinedRequestExecutorService;
         private final RawHttp http;
-        private final EagerHttpResponse<Void> serverErrorResponse;
-        private final EagerHttpResponse<Void> notFoundResponse;
+        private final RawHttpResponse<Void> serverErrorResponse;
+        private final RawHttpResponse<Void> notFoundResponse;
+        private final byte[] serviceUnavailableResponse;
+        private final AtomicLong rejectedConnections;
+        private final AtomicInteger openConnections = new AtomicInteger();
+        private final int maxConnections;
+        private final int keepAliveTimeout;
+        private final int headerReadTimeout;
+        private final int maxRequestsPerConnection;
+        private final int maxPipelinedRequests;
+        private final boolean tcpNoDelay;
+        private final int socketSendBufferSize;
+        private final int socketReceiveBufferSize;
+        private final int bufferSize;
 
-        public RouterAndSocket(Router router, TcpRawHttpServerOptions options) throws IOException {
+        public RouterAndSocket(Router router, TcpRawHttpServerOptions options,
+                               AtomicLong rejectedConnections) throws IOException {
             this.router = router;
             this.socket = options.getServerSocket();
             this.http = options.getRawHttp();
             this.executorService = options.getExecutorService();
-            this.serverErrorResponse = Optional.<RawHttpResponse<Void>>ofNullable(
-                    options.serverErrorResponse()).orElseGet(() ->
-                    http.parseResponse("HTTP/1.1 500 Server Error\r\n" +
-                            "Content-Type: text/plain\r\n" +
-                            "Content-Length: 28\r\n" +
-                            "Cache-Control: no-cache\r\n" +
-                            "Pragma: no-cache\r\n" +
-                            "\r\n" +
-                            "A Server Error has occurred.")).eagerly();
-
-            this.notFoundResponse = Optional.<RawHttpResponse<Void>>ofNullable(
-                    options.notFoundResponse()).orElseGet(() ->
-                    http.parseResponse("HTTP/1.1 404 Not Found\r\n" +
-                            "Content-Type: text/plain\r\n" +
-                            "Content-Length: 23\r\n" +
-                            "Cache-Control: no-cache\r\n" +
-                            "Pragma: no-cache\r\n" +
-                            "\r\n" +
-                            "Resource was not found.")).eagerly();
+            this.pipelinedRequestExecutorService = options.getMaxPipelinedRequests() > 1
+                    ? options.getPipelinedRequestExecutorService()
+                    : null;
+            this.serverErrorResponse = DefaultResponses.preEncoded(options.serverErrorResponse() != null ?
+                    options.serverErrorResponse() : DefaultResponses.serverError(http));
+            this.notFoundResponse = DefaultResponses.preEncoded(options.notFoundResponse() != null ?
+                    options.notFoundResponse() : DefaultResponses.notFound(http));
+            this.serviceUnavailableResponse = toBytes(options.serviceUnavailableResponse() != null ?
+                    options.serviceUnavailableResponse() : DefaultResponses.serviceUnavailable(http));
+            this.rejectedConnections = rejectedConnections;
+            this.maxConnections = options.getMaxConnections();
+            this.keepAliveTimeout = options.getKeepAliveTimeout();
+            this.headerReadTimeout = options.getHeaderReadTimeout();
+            this.maxRequestsPerConnection = options.getMaxRequestsPerConnection();
+            this.maxPipelinedRequests = options.getMaxPipelinedRequests();
+            this.tcpNoDelay = options.isTcpNoDelay();
+            this.socketSendBufferSize = options.getSocketSendBufferSize();
+            this.socketReceiveBufferSize = options.getSocketReceiveBufferSize();
+            this.bufferSize = options.getBufferSize();
 
             start();
         }
@@ -154,9 +346,19 @@ public class TcpRawHttpServer implements RawHttpServer {
                     Socket client;
                     try {
                         client = socket.accept();
-                        executorService.submit(() -> handle(client));
+                        if (openConnections.incrementAndGet() > maxConnections) {
+                            openConnections.decrementAndGet();
+                            reject(client);
+                        } else {
+                            try {
+                                executorService.submit(() -> handle(client));
+                            } catch (RejectedExecutionException e) {
+                                openConnections.decrementAndGet();
+                                reject(client);
+                            }
+                        }
                         failedAccepts = 0;
-                    } catch (SocketException e) {
+                    } catch (SocketException | ClosedChannelException e) {
                         break; // server socket was closed or got broken
                     } catch (IOException e) {
                         failedAccepts++;
@@ -169,33 +371,232 @@ public class TcpRawHttpServer implements RawHttpServer {
             }, "tcp-raw-http-server").start();
         }
 
+        private static byte[] toBytes(EagerHttpResponse<Void> response) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            response.writeTo(out);
+            return out.toByteArray();
+        }
+
+        private void reject(Socket client) {
+            rejectedConnections.incrementAndGet();
+            try {
+                // the response is small enough to fit in the socket's send buffer, so this should not block
+                client.getOutputStream().write(serviceUnavailableResponse);
+                client.shutdownOutput();
+            } catch (IOException ignore) {
+                // the client is being rejected anyway
+            } finally {
+                try {
+                    client.close();
+                } catch (IOException ignore) {
+                    // we wanted to forget the client, so this is fine
+                }
+            }
+        }
+
         private void handle(Socket client) {
+            try {
+                serve(client);
+            } finally {
+                openConnections.decrementAndGet();
+                try {
+                    client.close();
+                } catch (IOException ignore) {
+                    // we wanted to forget the client, so this is fine
+                }
+            }
+        }
+
+        private void serve(Socket client) {
+            DeadlineInputStream deadlineStream;
+            BufferedHttpInputStream inputStream;
+            @Nullable OutputStream outputStream;
+            try {
+                configure(client);
+                deadlineStream = new DeadlineInputStream(client, keepAliveTimeout, headerReadTimeout);
+                inputStream = new BufferedHttpInputStream(deadlineStream, bufferSize);
+                // channel-backed sockets write responses directly via their channel
+                outputStream = client.getChannel() == null
+                        ? new BufferedOutputStream(client.getOutputStream(), bufferSize)
+                        : null;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            if (maxPipelinedRequests > 1) {
+                servePipelined(client, deadlineStream, inputStream, outputStream);
+                return;
+            }
+            int requestCount = 0;
             while (true) {
                 try {
-                    RawHttpRequest request = http.parseRequest(client.getInputStream());
+                    deadlineStream.awaitRequest();
+                    RawHttpRequest request = http.parseRequest(inputStream);
+                    deadlineStream.headReceived();
+                    requestCount++;
                     RawHttpResponse<?> response = route(request);
-                    response.writeTo(client.getOutputStream());
+                    boolean lastRequest = maxRequestsPerConnection > 0 && requestCount >= maxRequestsPerConnection;
+                    if (lastRequest && !response.getHeaders().isConnectionClose()) {
+                        response = withConnectionClose(response);
+                    }
+                    writeResponse(client, outputStream, response, true);
+                    if (request.getHeaders().isConnectionClose() || response.getHeaders().isConnectionClose()) {
+                        break;
+                    }
+                    drainBody(request);
                 } catch (Exception e) {
-                    if (!(e instanceof SocketException)) {
-                        // only print stack trace if this is not due to a client closing the connection
-                        boolean clientClosedConnection = e instanceof InvalidHttpRequest &&
-                                ((InvalidHttpRequest) e).getLineNumber() == 0;
+                    printUnlessClientIsGone(e);
+                    break; // cannot keep listening anymore
+                }
+            }
+        }
 
-                        if (!clientClosedConnection) {
-                            e.printStackTrace();
-                        }
+        /**
+         * Serve a client that may pipeline requests: requests the client has already sent are read ahead
+         * (up to the maximum number of pipelined requests) and routed concurrently, while their responses are
+         * written back in the same order as the requests were received.
+         */
+        private void servePipelined(Socket client, DeadlineInputStream deadlineStream,
+                                    BufferedHttpInputStream inputStream, @Nullable OutputStream outputStream) {
+            Deque<FutureTask<RawHttpResponse<?>>> pending = new ArrayDeque<>(maxPipelinedRequests);
+            int requestCount = 0;
+            boolean lastRequestRead = false;
+            try {
+                while (true) {
+                    // only block waiting for a request when there are no responses to write
+                    while (!lastRequestRead && pending.size() < maxPipelinedRequests &&
+                            (pending.isEmpty() || inputStream.available() > 0)) {
+                        RawHttpRequest request;
                         try {
-                            client.close();
-                        } catch (IOException ignore) {
-                            // we wanted to forget the client, so this is fine
+                            deadlineStream.awaitRequest();
+                            request = http.parseRequest(inputStream);
+                            deadlineStream.headReceived();
+                            // the body must be read before the next request can be read
+                            request = request.eagerly();
+                        } catch (Exception e) {
+                            if (pending.isEmpty()) {
+                                throw e;
+                            }
+                            // answer the requests already received before closing the connection
+                            printUnlessClientIsGone(e);
+                            lastRequestRead = true;
+                            break;
                         }
+                        requestCount++;
+                        boolean limitReached = maxRequestsPerConnection > 0 &&
+                                requestCount >= maxRequestsPerConnection;
+                        lastRequestRead = limitReached || request.getHeaders().isConnectionClose();
+                        FutureTask<RawHttpResponse<?>> task = routeTask(request, limitReached);
+                        if (!pending.isEmpty() && pipelinedRequestExecutorService != null) {
+                            // the first pending request is routed by this Thread, the others by worker Threads
+                            try {
+                                pipelinedRequestExecutorService.execute(task);
+                            } catch (RejectedExecutionException ignore) {
+                                // the task is run by this Thread when its response is due
+                            }
+                        }
+                        pending.add(task);
                     }
 
-                    break; // cannot keep listening anymore
+                    @Nullable FutureTask<RawHttpResponse<?>> next = pending.poll();
+                    if (next == null) {
+                        break; // the last request has been answered
+                    }
+                    // does nothing if a worker Thread has already run, or is running, the task
+                    next.run();
+                    RawHttpResponse<?> response = next.get();
+                    // responses that are already available are sent together
+                    @Nullable FutureTask<RawHttpResponse<?>> following = pending.peek();
+                    boolean flush = following == null || !following.isDone() ||
+                            response.getHeaders().isConnectionClose();
+                    writeResponse(client, outputStream, response, flush);
+                    if (response.getHeaders().isConnectionClose()) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                printUnlessClientIsGone(e);
+            } finally {
+                for (FutureTask<RawHttpResponse<?>> task : pending) {
+                    task.cancel(false);
                 }
             }
         }
 
+        private FutureTask<RawHttpResponse<?>> routeTask(RawHttpRequest request, boolean limitReached) {
+            return new FutureTask<>(() -> {
+                RawHttpResponse<?> response = route(request);
+                if (limitReached && !response.getHeaders().isConnectionClose()) {
+                    response = withConnectionClose(response);
+                }
+                return response;
+            });
+        }
+
+        private void configure(Socket client) throws SocketException {
+            if (tcpNoDelay) {
+                client.setTcpNoDelay(true);
+            }
+            if (socketSendBufferSize > 0) {
+                client.setSendBufferSize(socketSendBufferSize);
+            }
+            if (socketReceiveBufferSize > 0) {
+                client.setReceiveBufferSize(socketReceiveBufferSize);
+            }
+        }
+
+        /**
+         * Write a response to the client, via the socket's channel if it has one, otherwise via the given
+         * buffered stream, which is flushed if requested (at the end of the response to be sent last).
+         */
+        private void writeResponse(Socket client, @Nullable OutputStream outputStream,
+                                   RawHttpResponse<?> response, boolean flush) throws IOException {
+            try {
+                if (outputStream == null) {
+                    response.writeTo(client.getChannel(), bufferSize);
+                } else {
+                    response.writeTo(outputStream, bufferSize);
+                    if (flush) {
+                        outputStream.flush();
+                    }
+                }
+            } finally {
+                // a lazy body (e.g. a file being streamed) is consumed by writing it, so release its resources
+                Optional<? extends BodyReader> body = response.getBody();
+                if (body.isPresent() && body.get() instanceof LazyBodyReader) {
+                    body.get().close();
+                }
+            }
+        }
+
+        private static void printUnlessClientIsGone(Exception e) {
+            // only print stack trace if this is not due to a client closing the connection or timing out
+            boolean clientClosedConnection = e instanceof SocketException ||
+                    (e instanceof InvalidHttpRequest && ((InvalidHttpRequest) e).getLineNumber() == 0);
+
+            if (!clientClosedConnection && !(e instanceof SocketTimeoutException)) {
+                e.printStackTrace();
+            }
+        }
+
+        private static RawHttpResponse<?> withConnectionClose(RawHttpResponse<?> response) {
+            RawHttpHeaders headers = RawHttpHeaders.Builder.newBuilder(response.getHeaders())
+                    .overwrite(HeaderName.CONNECTION, "close")
+                    .build();
+            return new RawHttpResponse<>(null, response.getRequest().orElse(null),
+                    response.getStartLine(), headers, response.getBody().orElse(null));
+        }
+
+        private static void drainBody(RawHttpRequest request) throws IOException {
+            // make sure the next request can be read even if the router did not consume this request's body
+            Optional<? extends BodyReader> body = request.getBody();
+            if (body.isPresent() && body.get() instanceof LazyBodyReader) {
+                ((LazyBodyReader) body.get()).drain();
+            }
+        }
+
         private RawHttpResponse<?> route(RawHttpRequest request) {
             try {
                 RawHttpResponse<?> response = router.route(request);
@@ -217,6 +618,9 @@ public class TcpRawHttpServer implements RawHttpServer {
                 throw new RuntimeException(e);
             } finally {
                 executorService.shutdown();
+                if (pipelinedRequestExecutorService != null) {
+                    pipelinedRequestExecutorService.shutdown();
+                }
             }
         }
     }
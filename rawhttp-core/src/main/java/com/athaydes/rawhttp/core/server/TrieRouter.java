@@ -0,0 +1,320 @@
+package com.athaydes.rawhttp.core.server;
+
+import com.athaydes.rawhttp.core.EagerHttpResponse;
+import com.athaydes.rawhttp.core.RawHttp;
+import com.athaydes.rawhttp.core.RawHttpRequest;
+import com.athaydes.rawhttp.core.RawHttpResponse;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Router} that dispatches requests to {@link Handler}s based on the request method and path.
+ * <p>
+ * Routes are given as path patterns, where each segment (the text between slashes) may be:
+ * <ul>
+ * <li>a literal, such as {@code users}, which matches only the same text.</li>
+ * <li>a parameter, such as {@code {id}}, which matches any single segment.</li>
+ * <li>a wildcard, {@code *}, which may only be the last segment and matches the rest of the path,
+ * including any number of segments (or none).</li>
+ * </ul>
+ * Path parameters, and the path matched by a wildcard (under the name {@code *}), are given to the handler.
+ * <p>
+ * Patterns are compiled into a prefix tree, so the time it takes to find a route does not depend on how many
+ * routes exist. When more than one route matches a path, literals take precedence over parameters,
+ * and parameters over wildcards. If the more specific route does not lead to a route for the request method,
+ * the less specific ones are tried. In the common case, this takes time proportional to the number of segments in
+ * the request path, but notice that in the worst case, where many consecutive segments may be matched by both
+ * a literal and a parameter, the time may grow exponentially with the number of such segments.
+ * Empty segments are ignored, so {@code /users/} and {@code /users} are the same path.
+ * <p>
+ * If no route matches the request path, this router returns null (so the server sends a NotFound (404) response).
+ * If routes match the path, but none of them the method, a MethodNotAllowed (405) response is returned, allowing
+ * the methods of all routes that match the path.
+ * <p>
+ * Example usage:
+ * <pre>{@code
+ * Router router = TrieRouter.Builder.newBuilder()
+ *         .route("GET", "/users/{id}", (request, params) -> getUser(params.get("id")))
+ *         .route("GET", "/static/*", (request, params) -> getFile(params.get("*")))
+ *         .build();
+ * server.start(router);
+ * }</pre>
+ */
+public final class TrieRouter implements Router {
+
+    /**
+     * Name of the path parameter holding the path matched by a wildcard.
+     */
+    public static final String WILDCARD = "*";
+
+    /**
+     * Handler of the requests sent to a route of a {@link TrieRouter}.
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * Handle a HTTP request.
+         *
+         * @param request        HTTP request
+         * @param pathParameters the path parameters extracted from the request path, by name
+         * @return a HTTP response to send to the client (see {@link Router#route(RawHttpRequest)})
+         */
+        RawHttpResponse<?> handle(RawHttpRequest request, Map<String, String> pathParameters);
+
+    }
+
+    private final Node root;
+    private final RawHttp http = new RawHttp();
+
+    // the responses are cached by the allowed methods, as the same few sets of methods are allowed for most paths
+    private final Map<List<String>, EagerHttpResponse<Void>> methodNotAllowedResponses = new ConcurrentHashMap<>();
+
+    private TrieRouter(Node root) {
+        this.root = root;
+    }
+
+    @Override
+    public RawHttpResponse<?> route(RawHttpRequest request) {
+        String path = request.getUri().getPath();
+        if (path == null) {
+            path = "";
+        }
+        String method = request.getMethod();
+        List<String> parameters = new ArrayList<>(4);
+        @Nullable Node node = root.find(path, 0, method, parameters);
+        if (node != null) {
+            return node.handlers.get(method).handle(request, toMap(parameters));
+        }
+        Set<String> allowedMethods = new LinkedHashSet<>(4);
+        root.collectMethods(path, 0, allowedMethods);
+        if (allowedMethods.isEmpty()) {
+            return null;
+        }
+        return methodNotAllowedResponses.computeIfAbsent(new ArrayList<>(allowedMethods), this::methodNotAllowed);
+    }
+
+    private EagerHttpResponse<Void> methodNotAllowed(List<String> allowedMethods) {
+        try {
+            return DefaultResponses.methodNotAllowed(http, allowedMethods);
+        } catch (IOException e) {
+            // cannot happen as the response is parsed from a String
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> toMap(List<String> parameters) {
+        if (parameters.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> result = new LinkedHashMap<>(parameters.size());
+        for (int i = 0; i < parameters.size(); i += 2) {
+            result.put(parameters.get(i), parameters.get(i + 1));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static final class Node {
+        final Map<String, Node> literals = new HashMap<>(4);
+        @Nullable
+        Node parameter;
+        @Nullable
+        String parameterName;
+        @Nullable
+        Node wildcard;
+
+        // preserve insertion order so that the Allow header lists methods in the order they were given
+        final Map<String, Handler> handlers = new LinkedHashMap<>(4);
+
+        /**
+         * Find the node matching the path from the given index which has a handler for the given method,
+         * backtracking to less specific routes if a more specific one leads to no such node.
+         *
+         * @param path       request path
+         * @param start      index of the path to continue matching from
+         * @param method     request method
+         * @param parameters names and values of the parameters matched so far, in alternation
+         * @return the matching node, or null if no route matches
+         */
+        @Nullable
+        Node find(String path, int start, String method, List<String> parameters) {
+            start = skipSlashes(path, start);
+            if (start == path.length()) {
+                if (handlers.containsKey(method)) {
+                    return this;
+                }
+                if (wildcard != null && wildcard.handlers.containsKey(method)) {
+                    parameters.add(WILDCARD);
+                    parameters.add("");
+                    return wildcard;
+                }
+                return null;
+            }
+
+            int end = segmentEnd(path, start);
+            String segment = path.substring(start, end);
+
+            @Nullable Node literal = literals.get(segment);
+            if (literal != null) {
+                @Nullable Node match = literal.find(path, end, method, parameters);
+                if (match != null) {
+                    return match;
+                }
+            }
+            if (parameter != null) {
+                int size = parameters.size();
+                parameters.add(parameterName);
+                parameters.add(segment);
+                @Nullable Node match = parameter.find(path, end, method, parameters);
+                if (match != null) {
+                    return match;
+                }
+                parameters.subList(size, parameters.size()).clear();
+            }
+            if (wildcard != null && wildcard.handlers.containsKey(method)) {
+                parameters.add(WILDCARD);
+                parameters.add(path.substring(start));
+                return wildcard;
+            }
+            return null;
+        }
+
+        /**
+         * Collect the methods of all routes matching the path from the given index.
+         *
+         * @param path    request path
+         * @param start   index of the path to continue matching from
+         * @param methods to add the methods to, in order of precedence of the routes
+         */
+        void collectMethods(String path, int start, Set<String> methods) {
+            start = skipSlashes(path, start);
+            if (start == path.length()) {
+                methods.addAll(handlers.keySet());
+            } else {
+                int end = segmentEnd(path, start);
+                @Nullable Node literal = literals.get(path.substring(start, end));
+                if (literal != null) {
+                    literal.collectMethods(path, end, methods);
+                }
+                if (parameter != null) {
+                    parameter.collectMethods(path, end, methods);
+                }
+            }
+            if (wildcard != null) {
+                methods.addAll(wildcard.handlers.keySet());
+            }
+        }
+
+        private static int skipSlashes(String path, int start) {
+            while (start < path.length() && path.charAt(start) == '/') {
+                start++;
+            }
+            return start;
+        }
+
+        private static int segmentEnd(String path, int start) {
+            int end = path.indexOf('/', start);
+            return end < 0 ? path.length() : end;
+        }
+    }
+
+    /**
+     * Builder for {@link TrieRouter}.
+     */
+    public static class Builder {
+
+        private final Node root = new Node();
+        private boolean built = false;
+
+        /**
+         * @return a new builder of {@link TrieRouter}.
+         */
+        public static Builder newBuilder() {
+            return new Builder();
+        }
+
+        private Builder() {
+            // private
+        }
+
+        /**
+         * Add a route.
+         *
+         * @param method      HTTP method of the requests to route, e.g. "GET"
+         * @param pathPattern pattern of the paths of the requests to route, e.g. "/users/{id}"
+         * @param handler     handler of the requests
+         * @return this
+         * @throws IllegalArgumentException if the pattern is invalid, uses a different parameter name than
+         *                                  another pattern in the same position, or the route was already added
+         */
+        public Builder route(String method, String pathPattern, Handler handler) {
+            if (built) {
+                throw new IllegalStateException("Router has already been built");
+            }
+            if (!pathPattern.startsWith("/")) {
+                throw new IllegalArgumentException("Path pattern must start with '/': " + pathPattern);
+            }
+            Node node = root;
+            int start = 0;
+            while (start < pathPattern.length()) {
+                int end = pathPattern.indexOf('/', start);
+                if (end < 0) {
+                    end = pathPattern.length();
+                }
+                String segment = pathPattern.substring(start, end);
+                start = end + 1;
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (segment.equals(WILDCARD)) {
+                    if (start < pathPattern.length()) {
+                        throw new IllegalArgumentException("Wildcard must be the last segment: " + pathPattern);
+                    }
+                    if (node.wildcard == null) {
+                        node.wildcard = new Node();
+                    }
+                    node = node.wildcard;
+                } else if (segment.startsWith("{") && segment.endsWith("}")) {
+                    String name = segment.substring(1, segment.length() - 1);
+                    if (name.isEmpty() || name.equals(WILDCARD)) {
+                        throw new IllegalArgumentException("Invalid path parameter name: " + pathPattern);
+                    }
+                    if (node.parameter == null) {
+                        node.parameter = new Node();
+                        node.parameterName = name;
+                    } else if (!name.equals(node.parameterName)) {
+                        throw new IllegalArgumentException("Path parameter '" + name + "' conflicts with '" +
+                                node.parameterName + "' in the same position: " + pathPattern);
+                    }
+                    node = node.parameter;
+                } else {
+                    node = node.literals.computeIfAbsent(segment, s -> new Node());
+                }
+            }
+            if (node.handlers.putIfAbsent(method, handler) != null) {
+                throw new IllegalArgumentException("Route already exists: " + method + " " + pathPattern);
+            }
+            return this;
+        }
+
+        /**
+         * @return a {@link TrieRouter} with the routes added to this builder.
+         */
+        public TrieRouter build() {
+            built = true;
+            return new TrieRouter(root);
+        }
+
+    }
+
+}
@@ -7,6 +7,7 @@ import com.athaydes.rawhttp.core.RawHttpHeaders.Builder.emptyRawHttpHeaders
 import io.kotlintest.matchers.should
 import io.kotlintest.matchers.shouldBe
 import io.kotlintest.matchers.shouldEqual
+import io.kotlintest.matchers.shouldThrow
 import io.kotlintest.specs.StringSpec
 import kotlin.text.Charsets.UTF_8
 
@@ -51,6 +52,83 @@ class EagerBodyReaderTest : StringSpec({
         }
     }
 
+    "Can read bodies bigger than the maximum body size in memory" {
+        val body = "Hello world"
+
+        val reader = EagerBodyReader(CONTENT_LENGTH, body.byteInputStream(), body.length.toLong(), true, 4)
+        reader.run {
+            length shouldBe body.length.toLong()
+            asString(Charsets.UTF_8) shouldBe body
+            asStream().readBytes() shouldHaveSameElementsAs body.toByteArray()
+        }
+
+        val closeTerminatedReader = EagerBodyReader(CLOSE_TERMINATED, body.byteInputStream(), null, true, 4)
+        closeTerminatedReader.run {
+            length shouldBe body.length.toLong()
+            asBytes() shouldHaveSameElementsAs body.toByteArray()
+        }
+    }
+
+    "Can read bodies larger than 64KB and bigger than the maximum body size in memory" {
+        val body = ByteArray(200_000) { (it % 251).toByte() }
+
+        val reader = EagerBodyReader(CONTENT_LENGTH, body.inputStream(), body.size.toLong(), true, 100_000)
+        reader.run {
+            length shouldBe body.size.toLong()
+            asStream().readBytes() shouldHaveSameElementsAs body
+        }
+
+        val closeTerminatedReader = EagerBodyReader(CLOSE_TERMINATED, body.inputStream(), null, true, 100_000)
+        closeTerminatedReader.run {
+            length shouldBe body.size.toLong()
+            asBytes() shouldHaveSameElementsAs body
+        }
+    }
+
+    "Can read chunked body with chunks bigger than 0xFFFF bytes" {
+        val data = ByteArray(0x12345) { (it % 256).toByte() }
+        val body = "12345\r\n".toByteArray() + data + "\r\n0\r\n\r\n".toByteArray()
+
+        val reader = EagerBodyReader(CHUNKED, body.inputStream(), null, false)
+
+        reader.run {
+            bodyType shouldBe CHUNKED
+            asChunkedBodyContents() should bePresent {
+                it.chunks.size shouldBe 2
+                it.chunks[0].size() shouldBe 0x12345
+            }
+            asBytes() shouldHaveSameElementsAs data
+        }
+    }
+
+    "Chunk sizes declared by the peer are not trusted to allocate memory" {
+        // the declared chunk is much larger than the data actually sent
+        shouldThrow<IllegalStateException> {
+            EagerBodyReader(CHUNKED, "100000\r\nshort".byteInputStream(), null, false)
+        }.message shouldBe "Unexpected EOF while reading chunk data"
+
+        // the declared chunk is larger than the maximum body size
+        shouldThrow<IllegalStateException> {
+            EagerBodyReader(CHUNKED, "7ffffff0\r\nshort".byteInputStream(), null, false)
+        }.message shouldBe "Unexpected EOF while reading chunk data"
+    }
+
+    "Can read chunked bodies bigger than the maximum body size in memory" {
+        val body = "4\r\nabcd\r\n4;ext=1\r\nefgh\r\n0\r\nTrailer: yes\r\n\r\n"
+
+        val reader = EagerBodyReader(CHUNKED, body.byteInputStream(), null, false, 6)
+
+        reader.run {
+            bodyType shouldBe CHUNKED
+            length shouldBe 8L
+            asStream().readBytes() shouldHaveSameElementsAs "abcdefgh".toByteArray()
+            asChunkedBodyContents() should notBePresent()
+            trailerHeaders should bePresent {
+                it["Trailer"] shouldBe listOf("yes")
+            }
+        }
+    }
+
     "Can read simple chunked body" {
         val body = byteArrayOf(56, 13, 10, 72, 105, 32, 116, 104, 101, 114, 101, 13, 10, 48, 13, 10, 13, 10)
 
@@ -0,0 +1,19 @@
+package com.athaydes.rawhttp.core
+
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.specs.StringSpec
+import java.time.Instant
+
+class HttpDatesTest : StringSpec({
+
+    "Dates are formatted as IMF-fixdate, with a two-digit day of the month" {
+        HttpDates.format(Instant.parse("2021-03-05T07:08:09Z")) shouldBe "Fri, 05 Mar 2021 07:08:09 GMT"
+        HttpDates.format(Instant.parse("1994-11-16T08:49:37.512Z")) shouldBe "Wed, 16 Nov 1994 08:49:37 GMT"
+    }
+
+    "Dates with a one or two-digit day of the month can be parsed" {
+        HttpDates.parse("Fri, 05 Mar 2021 07:08:09 GMT") shouldBe Instant.parse("2021-03-05T07:08:09Z")
+        HttpDates.parse("Fri, 5 Mar 2021 07:08:09 GMT") shouldBe Instant.parse("2021-03-05T07:08:09Z")
+    }
+
+})
@@ -4,7 +4,9 @@ import io.kotlintest.matchers.beEmpty
 import io.kotlintest.matchers.should
 import io.kotlintest.matchers.shouldBe
 import io.kotlintest.matchers.shouldEqual
+import io.kotlintest.matchers.shouldThrow
 import io.kotlintest.specs.StringSpec
+import java.util.Optional
 
 class HttpHeadersTest : StringSpec({
 
@@ -59,4 +61,91 @@ class HttpHeadersTest : StringSpec({
                 "\r\n"
     }
 
-})
\ No newline at end of file
+    "Headers can be overwritten and removed regardless of case" {
+        val builder = RawHttpHeaders.Builder.newBuilder()
+                .with("Content-Type", "text/plain")
+                .with("Accept", "application/json")
+                .with("ACCEPT", "text/html")
+                .with("X-Id", "123")
+
+        builder.overwrite("content-type", "text/html")
+        builder.remove("accept")
+
+        builder.build().run {
+            get("Content-Type") shouldEqual listOf("text/html")
+            get("Accept") should beEmpty()
+            contains("ACCEPT") shouldBe false
+            get("x-id") shouldEqual listOf("123")
+            headerNames shouldEqual listOf("content-type", "X-Id")
+        }
+    }
+
+    "Equal headers have the same hashCode" {
+        val headers1 = RawHttpHeaders.Builder.newBuilder()
+                .with("Accept", "text/html")
+                .with("Server", "nginx")
+                .build()
+        val headers2 = RawHttpHeaders.Builder.newBuilder()
+                .with("server", "nginx")
+                .with("ACCEPT", "text/html")
+                .build()
+
+        headers1 shouldEqual headers2
+        headers1.hashCode() shouldBe headers2.hashCode()
+    }
+
+    "Built headers are not affected by later modifications of the builder" {
+        val builder = RawHttpHeaders.Builder.newBuilder()
+                .with("Accept", "text/html")
+                .with("Server", "nginx")
+        val headers = builder.build()
+
+        builder.build() shouldBe headers
+
+        val modified = RawHttpHeaders.Builder.newBuilder(headers)
+                .with("Accept", "text/plain")
+                .overwrite("Server", "apache")
+                .build()
+        builder.remove("Accept")
+
+        headers.toString() shouldEqual "Accept: text/html\r\nServer: nginx\r\n\r\n"
+        modified.toString() shouldEqual "Accept: text/html\r\nAccept: text/plain\r\nServer: apache\r\n\r\n"
+        builder.build().toString() shouldEqual "Server: nginx\r\n\r\n"
+    }
+
+    "Well-known headers can be looked up by HeaderName and typed accessors" {
+        RawHttpHeaders.Builder.newBuilder()
+                .with("content-length", "42")
+                .with("Transfer-Encoding", "gzip")
+                .with("TRANSFER-ENCODING", "chunked")
+                .with("Connection", "Upgrade, Close")
+                .build().run {
+            get(HeaderName.CONTENT_LENGTH) shouldEqual listOf("42")
+            getFirst(HeaderName.of("Transfer-encoding")) shouldEqual Optional.of("gzip")
+            contains(HeaderName.HOST) shouldBe false
+            contentLength() shouldBe 42L
+            isChunked shouldBe true
+            isConnectionClose shouldBe true
+        }
+
+        RawHttpHeaders.Builder.emptyRawHttpHeaders().run {
+            contentLength() shouldBe -1L
+            isChunked shouldBe false
+            isConnectionClose shouldBe false
+        }
+
+        HeaderName.of("HOST") shouldBe HeaderName.HOST
+    }
+
+    "Invalid or negative Content-Length values are rejected" {
+        for (value in listOf("-1", "ten", "")) {
+            val headers = RawHttpHeaders.Builder.newBuilder()
+                    .with("Content-Length", value)
+                    .build()
+            shouldThrow<NumberFormatException> {
+                headers.contentLength()
+            }
+        }
+    }
+
+})
@@ -0,0 +1,286 @@
+package com.athaydes.rawhttp.core
+
+import com.athaydes.rawhttp.core.HttpPushParser.Status.BODY_BYTES_AVAILABLE
+import com.athaydes.rawhttp.core.HttpPushParser.Status.HEAD_COMPLETE
+import com.athaydes.rawhttp.core.HttpPushParser.Status.MESSAGE_COMPLETE
+import com.athaydes.rawhttp.core.HttpPushParser.Status.NEED_MORE_BYTES
+import com.athaydes.rawhttp.core.errors.InvalidHttpRequest
+import com.athaydes.rawhttp.core.errors.InvalidHttpResponse
+import io.kotlintest.matchers.should
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.matchers.shouldThrow
+import io.kotlintest.specs.StringSpec
+import java.nio.ByteBuffer
+
+class HttpPushParserTest : StringSpec({
+
+    "Can parse requests fed one byte at a time" {
+        val requests = "POST /hello HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "5;ext=1\r\nHello\r\n0\r\nTrailer: yes\r\n\r\n" +
+                "GET /bye HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "\r\n" +
+                "PUT /data HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Content-Length: 4\r\n" +
+                "\r\n" +
+                "data"
+
+        val parser = HttpPushParser.requestParser(RawHttp())
+        val statuses = mutableListOf<HttpPushParser.Status>()
+        val parsed = mutableListOf<RawHttpRequest>()
+
+        for (byte in requests.toByteArray()) {
+            val status = parser.feed(ByteBuffer.wrap(byteArrayOf(byte)))
+            if (status != NEED_MORE_BYTES) {
+                statuses += status
+            }
+            if (status == MESSAGE_COMPLETE) {
+                parsed += parser.message
+            }
+        }
+
+        statuses shouldBe listOf(HEAD_COMPLETE, MESSAGE_COMPLETE, MESSAGE_COMPLETE, HEAD_COMPLETE, MESSAGE_COMPLETE)
+        parsed.map { it.method } shouldBe listOf("POST", "GET", "PUT")
+        parsed.map { it.uri.toString() } shouldBe listOf(
+                "http://example.com/hello", "http://example.com/bye", "http://example.com/data")
+
+        parsed[0].body should bePresent {
+            it.bodyType shouldBe BodyReader.BodyType.CHUNKED
+            it.eager().asString(Charsets.UTF_8) shouldBe "Hello"
+            val chunkedBody = it.eager().asChunkedBodyContents().get()
+            chunkedBody.chunks.map { chunk -> chunk.extensions.asMap() } shouldBe listOf(
+                    mapOf("EXT" to listOf("1")), emptyMap())
+            chunkedBody.trailerHeaders["Trailer"] shouldBe listOf("yes")
+        }
+        parsed[1].body should notBePresent()
+        parsed[2].body should bePresent {
+            it.eager().asString(Charsets.UTF_8) shouldBe "data"
+        }
+    }
+
+    "Can parse responses with a body terminated by the end of input" {
+        val parser = HttpPushParser.responseParser(RawHttp(), null)
+        val buffer = ByteBuffer.wrap("HTTP/1.1 200 OK\r\nServer: RawHTTP\r\n\r\nHello".toByteArray())
+
+        parser.feed(buffer) shouldBe HEAD_COMPLETE
+        parser.head.statusCode shouldBe 200
+        parser.head.headers["Server"] shouldBe listOf("RawHTTP")
+
+        parser.feed(buffer) shouldBe NEED_MORE_BYTES
+        parser.feed(ByteBuffer.wrap(" World".toByteArray())) shouldBe NEED_MORE_BYTES
+        parser.endOfInput() shouldBe MESSAGE_COMPLETE
+
+        parser.message.body should bePresent {
+            it.eager().asString(Charsets.UTF_8) shouldBe "Hello World"
+        }
+    }
+
+    "Does not consume bytes beyond the end of a message" {
+        val parser = HttpPushParser.responseParser(RawHttp(), null)
+        val buffer = ByteBuffer.wrap("HTTP/1.1 204 No Content\r\n\r\nHTTP/1.1 304".toByteArray())
+
+        parser.feed(buffer) shouldBe MESSAGE_COMPLETE
+        parser.message.body should notBePresent()
+        buffer.remaining() shouldBe "HTTP/1.1 304".length
+    }
+
+    "Reports invalid requests" {
+        val parser = HttpPushParser.requestParser(RawHttp())
+        val buffer = ByteBuffer.wrap(("POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "zz\r\n").toByteArray())
+
+        parser.feed(buffer) shouldBe HEAD_COMPLETE
+
+        shouldThrow<InvalidHttpRequest> {
+            parser.feed(buffer)
+        }.run {
+            message shouldBe "Invalid chunk-size"
+            lineNumber shouldBe 5
+        }
+    }
+
+    "Rejects chunk sizes that do not fit in a long" {
+        val parser = HttpPushParser.requestParser(RawHttp())
+        val buffer = ByteBuffer.wrap(("POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "FFFFFFFFFFFFFFFF\r\n").toByteArray())
+
+        parser.feed(buffer) shouldBe HEAD_COMPLETE
+
+        shouldThrow<InvalidHttpRequest> {
+            parser.feed(buffer)
+        }.message shouldBe "Invalid chunk-size (too big)"
+    }
+
+    "Requires a new-line after each return in the chunk framing" {
+        val head = "POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n"
+        val strictHttp = RawHttp(RawHttpOptions.Builder.newBuilder().doNotAllowNewLineWithoutReturn().build())
+
+        for ((http, body, error) in listOf(
+                Triple(RawHttp(), "1\r2\r\n", "Illegal character after return"),
+                Triple(RawHttp(), "1;a\rb\r\n", "Illegal character after return"),
+                Triple(RawHttp(), "1\r\nx\rx", "Illegal character after return"),
+                Triple(strictHttp, "1\nx\r\n", "Illegal new-line character without preceding return"),
+                Triple(strictHttp, "1\r\nx\n", "Illegal new-line character without preceding return"))) {
+            val parser = HttpPushParser.requestParser(http)
+            val buffer = ByteBuffer.wrap((head + body).toByteArray())
+            parser.feed(buffer) shouldBe HEAD_COMPLETE
+            shouldThrow<InvalidHttpRequest> {
+                parser.feed(buffer)
+            }.message shouldBe error
+        }
+    }
+
+    "Rejects empty lines before the start-line, like RawHttp does" {
+        val parser = HttpPushParser.requestParser(RawHttp())
+
+        shouldThrow<InvalidHttpRequest> {
+            parser.feed(ByteBuffer.wrap("\r\nGET / HTTP/1.1\r\nHost: example.com\r\n\r\n".toByteArray()))
+        }.message shouldBe "No content"
+    }
+
+    "Can stream bodies as they are decoded" {
+        val parser = HttpPushParser.requestParser(RawHttp())
+        val buffer = ByteBuffer.wrap(("POST /chunked HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "5;ext=1\r\nHello\r\n6\r\n World\r\n0\r\nTrailer: yes\r\n\r\n" +
+                "POST /sized HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Content-Length: 3\r\n" +
+                "\r\n" +
+                "abc").toByteArray())
+
+        for ((path, expectedParts) in listOf("/chunked" to listOf("Hello", " World"), "/sized" to listOf("abc"))) {
+            parser.feed(buffer) shouldBe HEAD_COMPLETE
+            parser.streamBody()
+
+            val parts = mutableListOf<String>()
+            while (parser.feed(buffer) == BODY_BYTES_AVAILABLE) {
+                val bytes = parser.bodyBytes
+                parts += String(ByteArray(bytes.remaining()).also { bytes.get(it) })
+            }
+
+            parts shouldBe expectedParts
+            parser.message.uri.path shouldBe path
+            parser.message.body should notBePresent()
+        }
+
+        parser.trailerHeaders.isPresent shouldBe false
+        buffer.hasRemaining() shouldBe false
+    }
+
+    "The trailer headers of a streamed chunked body are available once the message is complete" {
+        val parser = HttpPushParser.responseParser(RawHttp(), null)
+        val buffer = ByteBuffer.wrap(("HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n").toByteArray())
+
+        parser.feed(buffer) shouldBe HEAD_COMPLETE
+        parser.streamBody()
+        parser.feed(ByteBuffer.wrap("3\r\nabc\r\n".toByteArray())) shouldBe BODY_BYTES_AVAILABLE
+        parser.feed(ByteBuffer.wrap("0\r\nTrailer: yes\r\n\r\n".toByteArray())) shouldBe MESSAGE_COMPLETE
+
+        parser.trailerHeaders should bePresent {
+            it["Trailer"] shouldBe listOf("yes")
+        }
+    }
+
+    "Rejects message heads larger than the maximum head size" {
+        val http = RawHttp(RawHttpOptions.Builder.newBuilder().withMaxHeadSize(64).build())
+        val parser = HttpPushParser.requestParser(http)
+
+        shouldThrow<InvalidHttpRequest> {
+            parser.feed(ByteBuffer.wrap(("GET / HTTP/1.1\r\n" +
+                    "Host: example.com\r\n" +
+                    "X-Big: " + "x".repeat(64) + "\r\n").toByteArray()))
+        }.run {
+            message shouldBe "Message head is too big (more than 64 bytes)"
+            lineNumber shouldBe 3
+        }
+    }
+
+    "Does not trust the declared Content-Length to allocate memory" {
+        val parser = HttpPushParser.requestParser(RawHttp())
+        val buffer = ByteBuffer.wrap(("POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Content-Length: 2000000000\r\n" +
+                "\r\n" +
+                "Hello").toByteArray())
+
+        parser.feed(buffer) shouldBe HEAD_COMPLETE
+        parser.feed(buffer) shouldBe NEED_MORE_BYTES
+
+        shouldThrow<InvalidHttpRequest> {
+            parser.endOfInput()
+        }.message shouldBe "Unexpected end of input"
+    }
+
+    "Bodies larger than the maximum body size in memory are kept in a temporary file" {
+        val http = RawHttp(RawHttpOptions.Builder.newBuilder().withMaxBodySizeInMemory(100).build())
+        val body = ByteArray(1000) { ('a' + it % 26).toByte() }
+
+        val requestParser = HttpPushParser.requestParser(http)
+        requestParser.feed(ByteBuffer.wrap(("POST / HTTP/1.1\r\n" +
+                "Host: example.com\r\n" +
+                "Content-Length: 1000\r\n" +
+                "\r\n").toByteArray())) shouldBe HEAD_COMPLETE
+        for (i in 0 until 10) {
+            val status = requestParser.feed(ByteBuffer.wrap(body, i * 100, 100))
+            status shouldBe (if (i == 9) MESSAGE_COMPLETE else NEED_MORE_BYTES)
+        }
+
+        val responseParser = HttpPushParser.responseParser(http, null)
+        responseParser.feed(ByteBuffer.wrap("HTTP/1.1 200 OK\r\n\r\n".toByteArray())) shouldBe HEAD_COMPLETE
+        responseParser.feed(ByteBuffer.wrap(body, 0, 50)) shouldBe NEED_MORE_BYTES
+        responseParser.feed(ByteBuffer.wrap(body, 50, 950)) shouldBe NEED_MORE_BYTES
+        responseParser.endOfInput() shouldBe MESSAGE_COMPLETE
+
+        for (message in listOf(requestParser.message, responseParser.message)) {
+            message.body should bePresent {
+                it.eager().length shouldBe 1000L
+                it.eager().asStream().readBytes() shouldBe body
+            }
+        }
+    }
+
+    "Chunked bodies larger than the maximum body size in memory are kept in a temporary file" {
+        val http = RawHttp(RawHttpOptions.Builder.newBuilder().withMaxBodySizeInMemory(100).build())
+        val parser = HttpPushParser.responseParser(http, null)
+        val data = "x".repeat(80) + "y".repeat(60)
+        val buffer = ByteBuffer.wrap(("HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "50\r\n" + data.substring(0, 80) + "\r\n" +
+                "3C\r\n" + data.substring(80) + "\r\n" +
+                "0\r\n" +
+                "Trailer: yes\r\n" +
+                "\r\n").toByteArray())
+
+        parser.feed(buffer) shouldBe HEAD_COMPLETE
+        parser.feed(buffer) shouldBe MESSAGE_COMPLETE
+
+        parser.message.body should bePresent {
+            val body = it.eager()
+            body.length shouldBe 140L
+            String(body.asStream().readBytes()) shouldBe data
+            body.trailerHeaders should bePresent { trailer ->
+                trailer["Trailer"] shouldBe listOf("yes")
+            }
+        }
+    }
+
+})
@@ -18,6 +18,7 @@ class RawHttpErrorsTest : StringSpec({
                 row("    ", 1, "Invalid method line"),
                 row("POST", 1, "Invalid method line"),
                 row("A B C D", 1, "Invalid method line"),
+                row("GET / HTTP/1.7", 1, "Invalid HTTP version"),
                 row("GET / HTTP/1.1\r\nINVALID\r\n", 2, "Invalid header"),
                 row("GET / HTTP/1.1\r\nAccept: all\r\nINVALID\r\n", 3, "Invalid header"),
                 row("GET / HTTP/1.1\r\nAccept: all\r\n", 1, "Host not given either in method line or Host header"),
@@ -94,9 +95,9 @@ class RawHttpErrorsTest : StringSpec({
             RawHttp(RawHttpOptions.Builder.newBuilder()
                     .doNotAllowNewLineWithoutReturn()
                     .build()
-            ).parseRequest("GET http://localhost\r\nTransfer-Encoding: chunked\r\n\r\n12345\r\n0\r\n\r\n").eagerly()
+            ).parseRequest("GET http://localhost\r\nTransfer-Encoding: chunked\r\n\r\n12345678901234567\r\n0\r\n\r\n").eagerly()
         }.run {
-            message shouldBe "Invalid chunk-size (too big, more than 4 hex-digits)"
+            message shouldBe "Invalid chunk-size (too big, more than 16 hex-digits)"
         }
     }
 
@@ -5,6 +5,7 @@ import io.kotlintest.matchers.should
 import io.kotlintest.matchers.shouldBe
 import io.kotlintest.matchers.shouldEqual
 import io.kotlintest.specs.StringSpec
+import java.io.ByteArrayOutputStream
 import java.io.File
 import java.net.URI
 import java.nio.charset.StandardCharsets.UTF_8
@@ -140,6 +141,106 @@ class SimpleHttpRequestTests : StringSpec({
         }
     }
 
+    "Should be able to parse several HTTP Requests from the same buffered stream" {
+        val requests = "POST http://host.com/first\r\n" +
+                "Content-Length: 5\r\n" +
+                "Accept: text/plain\r\n" +
+                "\r\n" +
+                "hello" +
+                "GET /second HTTP/1.1\r\n" +
+                "Host: www.example.com\r\n" +
+                "\r\n" +
+                "DELETE http://host.com/third\r\n\r\n"
+
+        // use a tiny buffer to make sure the buffer can grow and be compacted
+        val stream = BufferedHttpInputStream(requests.byteInputStream(), 8)
+        val http = RawHttp()
+
+        http.parseRequest(stream).eagerly().run {
+            method shouldBe "POST"
+            uri shouldEqual URI.create("http://host.com/first")
+            headers.asMap() shouldEqual mapOf(
+                    "CONTENT-LENGTH" to listOf("5"),
+                    "ACCEPT" to listOf("text/plain"),
+                    "HOST" to listOf("host.com"))
+            body should bePresent { it.asString(UTF_8) shouldEqual "hello" }
+        }
+
+        http.parseRequest(stream).eagerly().run {
+            method shouldBe "GET"
+            uri shouldEqual URI.create("http://www.example.com/second")
+            body should notBePresent()
+        }
+
+        http.parseRequest(stream).eagerly().run {
+            method shouldBe "DELETE"
+            uri shouldEqual URI.create("http://host.com/third")
+            body should notBePresent()
+        }
+
+        stream.read() shouldBe -1
+    }
+
+    "Should be able to parse HTTP Requests following bodies that were not fully read" {
+        val requests = "POST /first HTTP/1.1\r\n" +
+                "Host: host.com\r\n" +
+                "Content-Length: 5\r\n" +
+                "\r\n" +
+                "hello" +
+                "POST /second HTTP/1.1\r\n" +
+                "Host: host.com\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "5\r\nhello\r\n0\r\nX-Trailer: yes\r\n\r\n" +
+                "GET /third HTTP/1.1\r\n" +
+                "Host: host.com\r\n" +
+                "\r\n"
+
+        val stream = BufferedHttpInputStream(requests.byteInputStream(), 8)
+        val http = RawHttp()
+
+        http.parseRequest(stream).run {
+            uri.path shouldBe "/first"
+            body should bePresent {
+                // the body stream ends at the end of the body
+                it.asStream().readBytes() shouldHaveSameElementsAs "hello".toByteArray()
+            }
+        }
+
+        http.parseRequest(stream).run {
+            uri.path shouldBe "/second"
+            body should bePresent { (it as LazyBodyReader).drain() }
+        }
+
+        http.parseRequest(stream).run {
+            uri.path shouldBe "/third"
+            body should notBePresent()
+        }
+
+        stream.read() shouldBe -1
+    }
+
+    "Request is written with the request-target and headers it was parsed from" {
+        val request = RawHttp().parseRequest("GET http://host.com/a%20b/%C3%A9?x=1&y=%20z HTTP/1.1\r\n" +
+                "Accept: */*\r\n" +
+                "Content-Length: 5\r\n" +
+                "\r\n" +
+                "hello").eagerly()
+
+        val expected = "GET /a%20b/%C3%A9?x=1&y=%20z HTTP/1.1\r\n" +
+                "Accept: */*\r\n" +
+                "Content-Length: 5\r\n" +
+                "Host: host.com\r\n" +
+                "\r\n" +
+                "hello"
+
+        val out = ByteArrayOutputStream()
+        request.writeTo(out, 2)
+
+        String(out.toByteArray(), UTF_8) shouldEqual expected
+        request.toString() shouldEqual expected
+    }
+
 })
 
 class SimpleHttpResponseTests : StringSpec({
@@ -155,6 +256,19 @@ class SimpleHttpResponseTests : StringSpec({
         }
     }
 
+    "Should be able to parse HTTP Response with irregular whitespace in the status line" {
+        RawHttp().parseResponse("HTTP/1.1 \t 201  Created   Now \r\n\r\n").run {
+            startLine.httpVersion shouldBe HttpVersion.HTTP_1_1
+            startLine.statusCode shouldBe 201
+            startLine.reason shouldEqual "Created   Now "
+        }
+        RawHttp().parseResponse("204").run {
+            startLine.httpVersion shouldBe HttpVersion.HTTP_1_1
+            startLine.statusCode shouldBe 204
+            startLine.reason shouldEqual ""
+        }
+    }
+
     "Should be able to parse HTTP Response that may not have a body" {
         RawHttp().parseResponse("HTTP/1.1 100 CONTINUE").eagerly().run {
             startLine.httpVersion shouldBe HttpVersion.HTTP_1_1
@@ -0,0 +1,64 @@
+package com.athaydes.rawhttp.core
+
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.matchers.shouldEqual
+import io.kotlintest.specs.StringSpec
+import java.io.ByteArrayOutputStream
+
+class ResponseTemplateTest : StringSpec({
+
+    val http = RawHttp()
+
+    fun RawHttpResponse<*>.bytesWritten(): String {
+        val out = ByteArrayOutputStream()
+        writeTo(out)
+        return String(out.toByteArray(), Charsets.ISO_8859_1)
+    }
+
+    "Responses created from a template have the template's headers and their own Content-Length" {
+        val template = ResponseTemplate.from(http.parseResponse("HTTP/1.1 200 OK\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Length: 100\r\n" +
+                "Server: raw\r\n"))
+
+        val response = template.withBody("hello".toByteArray())
+
+        val expected = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Server: raw\r\n" +
+                "Content-Length: 5\r\n" +
+                "\r\n" +
+                "hello"
+
+        response.bytesWritten() shouldEqual expected
+        response.toString() shouldEqual expected
+        response.headers.asMap() shouldEqual mapOf(
+                "CONTENT-TYPE" to listOf("text/plain"),
+                "SERVER" to listOf("raw"),
+                "CONTENT-LENGTH" to listOf("5"))
+
+        // responses can be written many times
+        response.bytesWritten() shouldEqual expected
+    }
+
+    "Responses created from a template with a Date header get the current date" {
+        val template = ResponseTemplate.from(http.parseResponse("HTTP/1.1 200 OK\r\n" +
+                "Date: Thu, 01 Jan 1970 00:00:00 GMT\r\n"))
+
+        val response = template.withBody(ByteArray(0))
+        val date = response.headers["Date"]
+
+        date.size shouldBe 1
+        (date.first() != "Thu, 01 Jan 1970 00:00:00 GMT") shouldBe true
+        http.parseResponse(response.bytesWritten()).headers shouldEqual response.headers
+    }
+
+    "Responses without a body have no Content-Length header" {
+        val response = ResponseTemplate.from(http.parseResponse("HTTP/1.1 304 Not Modified\r\n" +
+                "ETag: \"abc\"\r\n")).withoutBody()
+
+        response.bytesWritten() shouldEqual "HTTP/1.1 304 Not Modified\r\nETag: \"abc\"\r\n\r\n"
+        response.body.isPresent shouldBe false
+    }
+
+})
@@ -1,14 +1,27 @@
 package com.athaydes.rawhttp.core.body
 
 import com.athaydes.rawhttp.core.BodyReader
+import com.athaydes.rawhttp.core.ChunkedBodyInputStream
+import com.athaydes.rawhttp.core.LazyBodyReader
+import com.athaydes.rawhttp.core.RawHttp
+import com.athaydes.rawhttp.core.RawHttpOptions
 import com.athaydes.rawhttp.core.bePresent
 import com.athaydes.rawhttp.core.shouldHaveSameElementsAs
 import io.kotlintest.matchers.should
 import io.kotlintest.matchers.shouldBe
+import io.kotlintest.matchers.shouldThrow
 import io.kotlintest.specs.StringSpec
 
 class ChunkedBodyTest : StringSpec({
 
+    fun parseChunkedBody(body: String, http: RawHttp = RawHttp()): ChunkedBodyInputStream {
+        val response = http.parseResponse(("HTTP/1.1 200 OK\r\n" +
+                "Transfer-Encoding: chunked\r\n\r\n" + body).byteInputStream())
+        val bodyReader = response.body.get()
+        (bodyReader is LazyBodyReader) shouldBe true
+        return bodyReader.asDecodedStream() as ChunkedBodyInputStream
+    }
+
     "Can encode chunked body with single chunk" {
         val stream = "Hi".byteInputStream()
         val body = ChunkedBody(null, stream, 2)
@@ -62,5 +75,88 @@ class ChunkedBodyTest : StringSpec({
         }
     }
 
+    "Can decode chunked body lazily" {
+        val stream = "Hello world".byteInputStream()
+        val body = ChunkedBody(null, stream, 4)
+
+        val decodedStream = body.toBodyReader().asDecodedStream()
+        decodedStream.readBytes() shouldHaveSameElementsAs "Hello world".toByteArray()
+        (decodedStream as ChunkedBodyInputStream).trailerHeaders should bePresent {
+            it.asMap().size shouldBe 0
+        }
+    }
+
+    "Can encode binary chunked body, reading it in bulk or one byte at a time" {
+        val data = ByteArray(1000) { it.toByte() }
+        val expected = "1f4\r\n".toByteArray() + data.copyOfRange(0, 500) + "\r\n".toByteArray() +
+                "1f4\r\n".toByteArray() + data.copyOfRange(500, 1000) + "\r\n".toByteArray() +
+                "0\r\n\r\n".toByteArray()
+
+        ChunkedBody(null, data.inputStream(), 500).toBodyReader().asStream()
+                .readBytes(4096) shouldHaveSameElementsAs expected
+
+        val stream = ChunkedBody(null, data.inputStream(), 500).toBodyReader().asStream()
+        generateSequence { stream.read().takeIf { it >= 0 } }
+                .map { it.toByte() }.toList().toByteArray() shouldHaveSameElementsAs expected
+    }
+
+    "Can decode chunked body lazily, ignoring chunk extensions" {
+        val decodedStream = parseChunkedBody("5;name=value\r\nHello\r\n" +
+                "6;a;b=\"c d\"\r\n world\r\n" +
+                "0;last\r\n\r\n")
+
+        decodedStream.readBytes() shouldHaveSameElementsAs "Hello world".toByteArray()
+        decodedStream.trailerHeaders should bePresent {
+            it.asMap().size shouldBe 0
+        }
+    }
+
+    "Trailer headers are available once the lazily decoded chunked body has been read" {
+        val decodedStream = parseChunkedBody("5\r\nHello\r\n0\r\nX-Checksum: abc\r\nX-Other: 1\r\n\r\n")
+
+        decodedStream.trailerHeaders.isPresent shouldBe false
+        decodedStream.readBytes() shouldHaveSameElementsAs "Hello".toByteArray()
+        decodedStream.trailerHeaders should bePresent {
+            it["X-Checksum"] shouldBe listOf("abc")
+            it["X-Other"] shouldBe listOf("1")
+        }
+    }
+
+    "Truncated chunked bodies cannot be decoded lazily" {
+        shouldThrow<IllegalStateException> {
+            parseChunkedBody("5\r\nHel").readBytes()
+        }.message shouldBe "Unexpected EOF while reading chunk data"
+
+        // the last chunk is missing
+        shouldThrow<IllegalStateException> {
+            parseChunkedBody("5\r\nHello\r\n").readBytes()
+        }.message shouldBe "Missing chunk-size"
+    }
+
+    "Chunked bodies with an invalid chunk-size cannot be decoded lazily" {
+        shouldThrow<IllegalStateException> {
+            parseChunkedBody("xyz\r\nHello\r\n0\r\n\r\n").readBytes()
+        }.message shouldBe "Invalid chunk-size (For input string: \"xyz\" under radix 16)"
+
+        shouldThrow<IllegalStateException> {
+            parseChunkedBody("-5\r\nHello\r\n0\r\n\r\n").readBytes()
+        }.message shouldBe "Invalid chunk-size (sign is not allowed)"
+    }
+
+    "Chunked bodies without a CRLF after the chunk-data cannot be decoded lazily" {
+        shouldThrow<IllegalStateException> {
+            parseChunkedBody("5\r\nHelloX\r\n0\r\n\r\n").readBytes()
+        }.message shouldBe "Illegal character after chunk-data (missing CRLF)"
+
+        // a new-line without a preceding return is accepted by default, but not if the options forbid it
+        parseChunkedBody("5\r\nHello\n0\n\n").readBytes() shouldHaveSameElementsAs "Hello".toByteArray()
+
+        val strictHttp = RawHttp(RawHttpOptions.Builder.newBuilder()
+                .doNotAllowNewLineWithoutReturn()
+                .build())
+        shouldThrow<IllegalStateException> {
+            parseChunkedBody("5\r\nHello\n0\n\n", strictHttp).readBytes()
+        }.message shouldBe "Illegal character after chunk-data (new-line character without preceding return)"
+    }
 
-})
\ No newline at end of file
+})
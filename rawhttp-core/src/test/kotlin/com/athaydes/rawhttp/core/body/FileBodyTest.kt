@@ -9,6 +9,8 @@ import io.kotlintest.matchers.should
 import io.kotlintest.matchers.shouldBe
 import io.kotlintest.matchers.shouldEqual
 import io.kotlintest.specs.StringSpec
+import java.io.File
+import java.io.FileOutputStream
 import java.net.URI
 
 class FileBodyTest : StringSpec({
@@ -84,4 +86,20 @@ class FileBodyTest : StringSpec({
         }
     }
 
+    "A HTTP Response with a file body can be written to a channel" {
+        val fileBody = FileBody(fileFromResource("404.png"), "image/png", false)
+        val response = RawHttp().parseResponse("HTTP/1.1 200 OK\r\nServer: Apache").replaceBody(fileBody)
+
+        val out = File.createTempFile("raw-http", "channel")
+        FileOutputStream(out).channel.use { channel -> response.writeTo(channel) }
+
+        val head = "HTTP/1.1 200 OK\r\n" +
+                "Server: Apache\r\n" +
+                "Content-Type: image/png\r\n" +
+                "Content-Length: ${fileBody.file.length()}\r\n" +
+                "\r\n"
+
+        out.readBytes() shouldHaveSameElementsAs (head.toByteArray() + fileBody.file.readBytes())
+    }
+
 })
\ No newline at end of file
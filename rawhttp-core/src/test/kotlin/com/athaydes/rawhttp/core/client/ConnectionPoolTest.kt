@@ -0,0 +1,145 @@
+package com.athaydes.rawhttp.core.client
+
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.matchers.shouldThrow
+import io.kotlintest.specs.StringSpec
+import java.io.IOException
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.URI
+import java.util.Collections
+import kotlin.concurrent.thread
+
+class ConnectionPoolTest : StringSpec({
+
+    fun acceptAll(serverSocket: ServerSocket): List<Socket> {
+        val clients = Collections.synchronizedList(mutableListOf<Socket>())
+        thread(isDaemon = true) {
+            try {
+                while (true) clients += serverSocket.accept()
+            } catch (e: IOException) {
+                synchronized(clients) { clients.forEach { it.close() } }
+            }
+        }
+        return clients
+    }
+
+    "Sockets are re-used per route, and routes are distinguished by port" {
+        ServerSocket(0).use { server1 ->
+            ServerSocket(0).use { server2 ->
+                acceptAll(server1)
+                acceptAll(server2)
+                val uri1 = URI.create("http://localhost:${server1.localPort}/a")
+                val uri2 = URI.create("http://localhost:${server2.localPort}/b")
+
+                ConnectionPool().use { pool ->
+                    val socket1 = pool.lease(uri1)
+                    pool.leasedCount shouldBe 1
+                    pool.release(socket1, uri1, true)
+                    pool.idleCount shouldBe 1
+
+                    pool.lease(uri1) shouldBe socket1
+
+                    val socket2 = pool.lease(uri2)
+                    (socket2 === socket1) shouldBe false
+                    socket2.port shouldBe server2.localPort
+
+                    pool.release(socket1, uri1, false)
+                    socket1.isClosed shouldBe true
+                    pool.release(socket2, uri2, true)
+
+                    pool.leasedCount shouldBe 0
+                    pool.idleCount shouldBe 1
+                }
+            }
+        }
+    }
+
+    "Leasing fails after the lease timeout when the pool is exhausted" {
+        ServerSocket(0).use { server ->
+            acceptAll(server)
+            val uri = URI.create("http://localhost:${server.localPort}/")
+
+            ConnectionPool(1, 1, 30_000L, 100L).use { pool ->
+                val socket = pool.lease(uri)
+
+                shouldThrow<IOException> {
+                    pool.lease(uri)
+                }.message shouldBe "Timed out waiting for a connection to http://localhost:${server.localPort}"
+
+                pool.release(socket, uri, true)
+                pool.lease(uri) shouldBe socket
+            }
+        }
+    }
+
+    "Sockets are closed once they have been idle for longer than the idle timeout" {
+        ServerSocket(0).use { server ->
+            acceptAll(server)
+            val uri = URI.create("http://localhost:${server.localPort}/")
+
+            ConnectionPool(8, 64, 50L, 1_000L).use { pool ->
+                val socket = pool.lease(uri)
+                pool.release(socket, uri, true)
+                pool.idleCount shouldBe 1
+
+                Thread.sleep(100L)
+
+                val newSocket = pool.lease(uri)
+                (newSocket === socket) shouldBe false
+                socket.isClosed shouldBe true
+                pool.idleCount shouldBe 0
+            }
+        }
+    }
+
+    "The oldest idle socket of any route is closed to open a new one when the total limit is reached" {
+        ServerSocket(0).use { server1 ->
+            ServerSocket(0).use { server2 ->
+                ServerSocket(0).use { server3 ->
+                    listOf(server1, server2, server3).forEach { acceptAll(it) }
+                    val uri1 = URI.create("http://localhost:${server1.localPort}/")
+                    val uri2 = URI.create("http://localhost:${server2.localPort}/")
+                    val uri3 = URI.create("http://localhost:${server3.localPort}/")
+
+                    ConnectionPool(2, 2, 30_000L, 100L).use { pool ->
+                        val socket1 = pool.lease(uri1)
+                        pool.release(socket1, uri1, true)
+                        Thread.sleep(10L)
+                        val socket2 = pool.lease(uri2)
+                        pool.release(socket2, uri2, true)
+
+                        val socket3 = pool.lease(uri3)
+                        socket3.port shouldBe server3.localPort
+                        socket1.isClosed shouldBe true
+                        socket2.isClosed shouldBe false
+                        pool.idleCount shouldBe 1
+                    }
+                }
+            }
+        }
+    }
+
+    "Idle sockets closed by the server are not re-used" {
+        ServerSocket(0).use { server ->
+            val accepted = acceptAll(server)
+            val uri = URI.create("http://localhost:${server.localPort}/")
+
+            ConnectionPool().use { pool ->
+                val socket = pool.lease(uri)
+                pool.release(socket, uri, true)
+
+                while (accepted.isEmpty()) Thread.sleep(10L)
+                accepted.first().close()
+                Thread.sleep(100L)
+
+                val newSocket = pool.lease(uri)
+                (newSocket === socket) shouldBe false
+                socket.isClosed shouldBe true
+                pool.idleCount shouldBe 0
+                pool.leasedCount shouldBe 1
+            }
+        }
+    }
+
+})
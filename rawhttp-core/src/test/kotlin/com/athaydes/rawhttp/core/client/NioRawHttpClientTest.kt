@@ -0,0 +1,158 @@
+package com.athaydes.rawhttp.core.client
+
+import com.athaydes.rawhttp.core.BufferedHttpInputStream
+import com.athaydes.rawhttp.core.RawHttp
+import com.athaydes.rawhttp.core.bePresent
+import com.athaydes.rawhttp.core.body.BytesBody
+import com.athaydes.rawhttp.core.body.StringBody
+import com.athaydes.rawhttp.core.notBePresent
+import com.athaydes.rawhttp.core.server.TcpRawHttpServer
+import io.kotlintest.Spec
+import io.kotlintest.matchers.should
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.specs.StringSpec
+import java.io.IOException
+import java.net.ConnectException
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketTimeoutException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+class NioRawHttpClientTest : StringSpec() {
+
+    private val http = RawHttp()
+    private val server = TcpRawHttpServer(8097)
+    private val client = NioRawHttpClient()
+
+    override fun interceptSpec(context: Spec, spec: () -> Unit) {
+        server.start { req ->
+            val text = if (req.method == "POST") {
+                "Got ${req.body.get().eager().asBytes().size} bytes"
+            } else {
+                "Hello ${req.uri.path}"
+            }
+            http.parseResponse("HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: text/plain"
+            ).replaceBody(StringBody(text))
+        }
+        waitForPortToBeTaken(8097)
+        try {
+            spec()
+        } finally {
+            client.close()
+            server.stop()
+        }
+    }
+
+    init {
+        "Can send many concurrent requests" {
+            val futures = (1..100).map { i ->
+                client.send(http.parseRequest("GET http://localhost:8097/$i"))
+            }
+
+            futures.forEachIndexed { index, future ->
+                val response = future.get(5, TimeUnit.SECONDS)
+                response.statusCode shouldBe 200
+                response.body should bePresent {
+                    it.eager().asString(Charsets.UTF_8) shouldBe "Hello /${index + 1}"
+                }
+            }
+        }
+
+        "Responses to HEAD requests have no body" {
+            val response = client.send(http.parseRequest("HEAD http://localhost:8097/"))
+                    .get(5, TimeUnit.SECONDS)
+
+            response.statusCode shouldBe 200
+            response.body should notBePresent()
+        }
+
+        "Can send request bodies larger than the socket buffers" {
+            val body = ByteArray(4 * 1024 * 1024) { it.toByte() }
+            val response = client.send(http.parseRequest("POST http://localhost:8097/").replaceBody(BytesBody(body)))
+                    .get(10, TimeUnit.SECONDS)
+
+            response.statusCode shouldBe 200
+            response.body should bePresent {
+                it.eager().asString(Charsets.UTF_8) shouldBe "Got ${body.size} bytes"
+            }
+        }
+
+        "Idle connections are closed after the idle timeout" {
+            ServerSocket(0).use { server ->
+                NioRawHttpClient(object : NioRawHttpClient.NioRawHttpClientOptions {
+                    override fun getIdleTimeout() = 200L
+                }).use { idleClient ->
+                    val future = idleClient.send(http.parseRequest("GET http://localhost:${server.localPort}/"))
+
+                    server.accept().use { socket ->
+                        val inputStream = BufferedHttpInputStream(socket.getInputStream())
+                        http.parseRequest(inputStream)
+                        socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK".toByteArray())
+
+                        future.get(5, TimeUnit.SECONDS).statusCode shouldBe 200
+
+                        // the client closes the connection once it has been idle for too long
+                        socket.soTimeout = 5000
+                        inputStream.read() shouldBe -1
+                    }
+                }
+            }
+        }
+
+        "Future completes exceptionally if the connection cannot be established" {
+            val future = client.send(http.parseRequest("GET http://localhost:8098/"))
+
+            val error = try {
+                future.get(5, TimeUnit.SECONDS)
+                null
+            } catch (e: ExecutionException) {
+                e.cause
+            }
+
+            (error is ConnectException) shouldBe true
+        }
+
+        "Requests wait for a connection when the limit per route is reached, and time out without a response" {
+            ServerSocket(0).use { server ->
+                val accepted = AtomicInteger()
+                thread(isDaemon = true) {
+                    val sockets = mutableListOf<Socket>()
+                    try {
+                        while (true) {
+                            sockets += server.accept()
+                            accepted.incrementAndGet()
+                        }
+                    } catch (e: IOException) {
+                        sockets.forEach { it.close() }
+                    }
+                }
+
+                NioRawHttpClient(object : NioRawHttpClient.NioRawHttpClientOptions {
+                    override fun getMaxConnectionsPerRoute() = 2
+                    override fun getResponseTimeout() = 300L
+                }).use { limitedClient ->
+                    val futures = (1..5).map {
+                        limitedClient.send(http.parseRequest("GET http://localhost:${server.localPort}/"))
+                    }
+
+                    futures.forEach { future ->
+                        val error = try {
+                            future.get(5, TimeUnit.SECONDS)
+                            null
+                        } catch (e: ExecutionException) {
+                            e.cause
+                        }
+                        (error is SocketTimeoutException) shouldBe true
+                    }
+                }
+
+                accepted.get() shouldBe 2
+            }
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package com.athaydes.rawhttp.core.client
 
 import com.athaydes.rawhttp.core.RawHttp
 import com.athaydes.rawhttp.core.bePresent
+import com.athaydes.rawhttp.core.notBePresent
 import com.athaydes.rawhttp.core.shouldBeOneOf
 import io.kotlintest.Spec
 import io.kotlintest.matchers.should
@@ -131,6 +132,29 @@ class TcpRawHttp11ClientTest : StringSpec() {
             }
         }
 
+
+        "Must be able to pipeline HTTP 1.1 requests against a real HTTP server" {
+            val http = RawHttp()
+            val request = { method: String ->
+                http.parseRequest("$method /say-hi HTTP/1.1\r\n" +
+                        "Host: localhost:8083\r\n" +
+                        "Accept: text/plain")
+            }
+
+            TcpRawHttpClient().use { client ->
+                val responses = client.sendPipelined(listOf(request("GET"), request("HEAD"), request("GET")))
+
+                responses.size shouldBe 3
+                responses[0].body should bePresent {
+                    it.eager().asString(UTF_8) shouldBe "Hi there"
+                }
+                responses[1].body should notBePresent()
+                responses[2].body should bePresent {
+                    it.eager().asString(UTF_8) shouldBe "Hi there"
+                }
+            }
+        }
+
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package com.athaydes.rawhttp.core.server
+
+import com.athaydes.rawhttp.core.BodyReader
+import com.athaydes.rawhttp.core.BufferedHttpInputStream
+import com.athaydes.rawhttp.core.LazyBodyReader
+import com.athaydes.rawhttp.core.bePresent
+import com.athaydes.rawhttp.core.body.BytesBody
+import com.athaydes.rawhttp.core.body.HttpMessageBody
+import com.athaydes.rawhttp.core.body.StringBody
+import com.athaydes.rawhttp.core.client.TcpRawHttpClient
+import com.athaydes.rawhttp.core.client.waitForPortToBeTaken
+import io.kotlintest.Spec
+import io.kotlintest.matchers.should
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.specs.StringSpec
+import java.io.InputStream
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.nio.channels.ServerSocketChannel
+import java.util.OptionalLong
+
+class NioRawHttpServerTests : StringSpec() {
+
+    private val largeBody = ByteArray(4 * 1024 * 1024) { it.toByte() }
+
+    private val server = NioRawHttpServer(8094)
+    private val http = server.options.rawHttp
+
+    private val httpClient = TcpRawHttpClient()
+
+    private fun startServer() {
+        server.start { req ->
+            when (req.uri.path) {
+                "/hello", "/" ->
+                    when (req.method) {
+                        "GET" ->
+                            http.parseResponse("HTTP/1.1 200 OK\n" +
+                                    "Content-Type: text/plain"
+                            ).replaceBody(StringBody("Hello RawHTTP!"))
+                        "POST" ->
+                            http.parseResponse("HTTP/1.1 200 OK\n" +
+                                    "Content-Type: text/plain"
+                            ).replaceBody(StringBody("Got " + req.body.get().eager().asString(Charsets.UTF_8)))
+                        else ->
+                            http.parseResponse("HTTP/1.1 405 Method Not Allowed\n" +
+                                    "Content-Type: text/plain"
+                            ).replaceBody(StringBody("Sorry, can't handle this method"))
+                    }
+                "/throw" -> throw Exception("Not doing it!")
+                "/large" -> http.parseResponse("HTTP/1.1 200 OK").replaceBody(BytesBody(largeBody))
+                "/broken" -> http.parseResponse("HTTP/1.1 200 OK").replaceBody(BrokenBody())
+                else -> null
+            }
+        }
+    }
+
+    private fun cleanup() {
+        server.stop()
+        httpClient.close()
+    }
+
+    override fun interceptSpec(context: Spec, spec: () -> Unit) {
+        startServer()
+        waitForPortToBeTaken(8094)
+        try {
+            spec()
+        } finally {
+            cleanup()
+        }
+    }
+
+    init {
+        "Server can handle successful http client request" {
+            val request = http.parseRequest("GET http://localhost:8094/hello")
+            val response = httpClient.send(request).eagerly()
+
+            response.statusCode shouldBe 200
+            response.body should bePresent {
+                it.asString(Charsets.UTF_8) shouldBe "Hello RawHTTP!"
+            }
+        }
+
+        "Server returns default not found response when router does not return a response" {
+            val request = http.parseRequest("GET http://localhost:8094/wrong/path")
+            val response = httpClient.send(request).eagerly()
+
+            response.statusCode shouldBe 404
+            response.body should bePresent {
+                it.asString(Charsets.UTF_8) shouldBe "Resource was not found."
+            }
+        }
+
+        "Server returns default error response when router throws an Exception" {
+            val request = http.parseRequest("POST http://localhost:8094/throw")
+            val response = httpClient.send(request).eagerly()
+
+            response.statusCode shouldBe 500
+            response.body should bePresent {
+                it.asString(Charsets.UTF_8) shouldBe "A Server Error has occurred."
+            }
+        }
+
+        "Server can handle several requests sent at once on the same connection" {
+            Socket("localhost", 8094).use { socket ->
+                socket.getOutputStream().write(("GET /hello HTTP/1.1\r\n" +
+                        "Host: localhost\r\n" +
+                        "\r\n" +
+                        "POST /hello HTTP/1.1\r\n" +
+                        "Host: localhost\r\n" +
+                        "Content-Length: 5\r\n" +
+                        "\r\n" +
+                        "hello" +
+                        "POST /hello HTTP/1.1\r\n" +
+                        "Host: localhost\r\n" +
+                        "Transfer-Encoding: chunked\r\n" +
+                        "\r\n" +
+                        "3\r\nbye\r\n0\r\n\r\n").toByteArray())
+
+                val inputStream = BufferedHttpInputStream(socket.getInputStream())
+
+                val responses = (1..3).map {
+                    http.parseResponse(inputStream).eagerly(true).body.get().asString(Charsets.UTF_8)
+                }
+
+                responses shouldBe listOf("Hello RawHTTP!", "Got hello", "Got bye")
+            }
+        }
+
+        "A response body failing only closes its own connection" {
+            Socket("localhost", 8094).use { socket ->
+                val inputStream = BufferedHttpInputStream(socket.getInputStream())
+                val request = "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n"
+
+                socket.getOutputStream().write(request.toByteArray())
+                http.parseResponse(inputStream).eagerly(true).statusCode shouldBe 200
+
+                Socket("localhost", 8094).use { broken ->
+                    broken.getOutputStream().write("GET /broken HTTP/1.1\r\nHost: localhost\r\n\r\n".toByteArray())
+                    broken.getInputStream().read() shouldBe -1
+                }
+
+                socket.getOutputStream().write(request.toByteArray())
+                http.parseResponse(inputStream).eagerly(true).statusCode shouldBe 200
+            }
+        }
+
+        "Server can send responses larger than the socket buffers to slow clients" {
+            Socket("localhost", 8094).use { socket ->
+                socket.getOutputStream().write("GET /large HTTP/1.1\r\nHost: localhost\r\n\r\n".toByteArray())
+
+                // let the socket buffers fill up before starting to read
+                Thread.sleep(200L)
+
+                val response = http.parseResponse(socket.getInputStream()).eagerly(true)
+                response.statusCode shouldBe 200
+                response.body should bePresent {
+                    it.asBytes().contentEquals(largeBody) shouldBe true
+                }
+            }
+        }
+
+        "Server closes idle connections" {
+            val idleServer = NioRawHttpServer(object : NioRawHttpServer.NioRawHttpServerOptions {
+                override fun getServerSocketChannel() = ServerSocketChannel.open().bind(InetSocketAddress(8101))
+                override fun getKeepAliveTimeout() = 200
+            })
+            idleServer.start { _ -> http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("OK")) }
+
+            try {
+                Socket("localhost", 8101).use { socket ->
+                    socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".toByteArray())
+                    val inputStream = BufferedHttpInputStream(socket.getInputStream())
+                    http.parseResponse(inputStream).eagerly(true).statusCode shouldBe 200
+
+                    // the server closes the connection once it has been idle for too long
+                    inputStream.read() shouldBe -1
+                }
+            } finally {
+                idleServer.stop()
+            }
+        }
+    }
+
+    private class BrokenBody : HttpMessageBody(null) {
+        override fun getContentLength() = OptionalLong.of(10L)
+
+        override fun toBodyReader() = LazyBodyReader(BodyReader.BodyType.CONTENT_LENGTH, object : InputStream() {
+            override fun read(): Int = throw IllegalStateException("broken body")
+        }, 10L, false)
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.athaydes.rawhttp.core.server
 
+import com.athaydes.rawhttp.core.BufferedHttpInputStream
 import com.athaydes.rawhttp.core.RawHttp
 import com.athaydes.rawhttp.core.bePresent
 import com.athaydes.rawhttp.core.body.StringBody
@@ -8,8 +9,14 @@ import com.athaydes.rawhttp.core.client.waitForPortToBeTaken
 import io.kotlintest.matchers.should
 import io.kotlintest.matchers.shouldBe
 import io.kotlintest.specs.StringSpec
+import java.io.IOException
 import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
 
 class RawHttpServerTests : StringSpec({
 
@@ -67,4 +74,236 @@ class RawHttpServerTests : StringSpec({
         }
     }
 
-})
\ No newline at end of file
+    "TcpRawHttpServer rejects connections with 503 when it is saturated" {
+        val http = RawHttp()
+        val latch = CountDownLatch(1)
+        val server = TcpRawHttpServer(object : TcpRawHttpServer.TcpRawHttpServerOptions {
+            override fun getServerSocket() = ServerSocket(8095)
+            override fun getMaxThreads() = 1
+            override fun getAcceptQueueSize() = 1
+        })
+
+        server.start { _ ->
+            latch.await()
+            http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("OK"))
+        }
+
+        val sockets = (1..3).map {
+            Socket("localhost", 8095).apply {
+                getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".toByteArray())
+                Thread.sleep(100L)
+            }
+        }
+
+        try {
+            // the first connection is being served, the second is queued, the third is rejected
+            val rejected = http.parseResponse(sockets[2].getInputStream()).eagerly()
+            rejected.statusCode shouldBe 503
+            rejected.headers["Retry-After"] shouldBe listOf("1")
+            server.rejectedConnectionCount shouldBe 1L
+
+            latch.countDown()
+
+            http.parseResponse(sockets[0].getInputStream()).eagerly().statusCode shouldBe 200
+            sockets[0].close()
+            http.parseResponse(sockets[1].getInputStream()).eagerly().statusCode shouldBe 200
+        } finally {
+            latch.countDown()
+            sockets.forEach { it.close() }
+            server.stop()
+        }
+    }
+
+    "TcpRawHttpServer closes idle connections and limits the number of requests per connection" {
+        val http = RawHttp()
+        val server = TcpRawHttpServer(object : TcpRawHttpServer.TcpRawHttpServerOptions {
+            override fun getServerSocket() = ServerSocket(8096)
+            override fun getKeepAliveTimeout() = 200
+            override fun getMaxRequestsPerConnection() = 2
+        })
+
+        server.start { _ ->
+            http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("OK"))
+        }
+
+        try {
+            Socket("localhost", 8096).use { idleSocket ->
+                // the server closes the connection without sending anything
+                idleSocket.getInputStream().read() shouldBe -1
+            }
+
+            Socket("localhost", 8096).use { socket ->
+                val request = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                socket.getOutputStream().write((request + request + request).toByteArray())
+                val inputStream = BufferedHttpInputStream(socket.getInputStream())
+
+                http.parseResponse(inputStream).eagerly(true).headers["Connection"] shouldBe emptyList<String>()
+                http.parseResponse(inputStream).eagerly(true).headers["Connection"] shouldBe listOf("close")
+                inputStream.read() shouldBe -1
+            }
+        } finally {
+            server.stop()
+        }
+    }
+
+    "TcpRawHttpServer closes connections from clients that send the request head too slowly" {
+        val http = RawHttp()
+        val routedRequests = AtomicInteger()
+        val server = TcpRawHttpServer(object : TcpRawHttpServer.TcpRawHttpServerOptions {
+            override fun getServerSocket() = ServerSocket(8102)
+            override fun getHeaderReadTimeout() = 300
+        })
+
+        server.start { _ ->
+            routedRequests.incrementAndGet()
+            http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("OK"))
+        }
+
+        try {
+            Socket("localhost", 8102).use { socket ->
+                val head = "GET / HTTP/1.1\r\nHost: localhost\r\nX-Padding: ${"a".repeat(50)}\r\n\r\n"
+                val start = System.currentTimeMillis()
+
+                // send one byte of the head every 100ms, so that the whole head would take several seconds
+                val writer = thread(isDaemon = true) {
+                    try {
+                        for (byte in head.toByteArray()) {
+                            socket.getOutputStream().write(byte.toInt())
+                            Thread.sleep(100L)
+                        }
+                    } catch (e: IOException) {
+                        // the server closed the connection
+                    }
+                }
+
+                val closed = try {
+                    socket.getInputStream().read() == -1
+                } catch (e: IOException) {
+                    true // connection reset by the server
+                }
+
+                closed shouldBe true
+                (System.currentTimeMillis() - start < 2000L) shouldBe true
+                routedRequests.get() shouldBe 0
+                writer.join(5000L)
+            }
+        } finally {
+            server.stop()
+        }
+    }
+
+    "TcpRawHttpServer rejects connections with 503 beyond the maximum number of connections" {
+        val http = RawHttp()
+        val latch = CountDownLatch(1)
+        val server = TcpRawHttpServer(object : TcpRawHttpServer.TcpRawHttpServerOptions {
+            override fun getServerSocket() = ServerSocket(8103)
+            override fun getMaxConnections() = 1
+        })
+
+        server.start { _ ->
+            latch.await()
+            http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("OK"))
+        }
+
+        val request = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+        val served = Socket("localhost", 8103).apply {
+            getOutputStream().write(request.toByteArray())
+            Thread.sleep(100L)
+        }
+        val rejected = Socket("localhost", 8103).apply {
+            getOutputStream().write(request.toByteArray())
+        }
+
+        try {
+            val response = http.parseResponse(rejected.getInputStream()).eagerly()
+            response.statusCode shouldBe 503
+            server.rejectedConnectionCount shouldBe 1L
+
+            latch.countDown()
+
+            http.parseResponse(served.getInputStream()).eagerly().statusCode shouldBe 200
+        } finally {
+            latch.countDown()
+            served.close()
+            rejected.close()
+            server.stop()
+        }
+    }
+
+    "Server routes pipelined requests concurrently, but responds in order" {
+        val http = RawHttp()
+        val server = TcpRawHttpServer(object : TcpRawHttpServer.TcpRawHttpServerOptions {
+            override fun getServerSocket() = ServerSocket(8099)
+            override fun getMaxPipelinedRequests() = 4
+        })
+
+        // the first request can only be answered after the second one has been routed
+        val secondRequestRouted = CountDownLatch(1)
+        server.start { req ->
+            if (req.uri.path == "/1") {
+                secondRequestRouted.await(5, TimeUnit.SECONDS) shouldBe true
+            } else {
+                secondRequestRouted.countDown()
+            }
+            http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("Response ${req.uri.path}"))
+        }
+        waitForPortToBeTaken(8099)
+
+        try {
+            TcpRawHttpClient().use { client ->
+                val responses = client.sendPipelined(listOf(
+                        http.parseRequest("GET http://localhost:8099/1"),
+                        http.parseRequest("GET http://localhost:8099/2")))
+
+                responses.map { it.statusCode } shouldBe listOf(200, 200)
+                responses.map { it.body.get().eager().asString(Charsets.UTF_8) } shouldBe
+                        listOf("Response /1", "Response /2")
+            }
+        } finally {
+            server.stop()
+        }
+    }
+
+    "Pipelined requests do not take the place of connections waiting for a Thread" {
+        val http = RawHttp()
+        val latch = CountDownLatch(1)
+        val server = TcpRawHttpServer(object : TcpRawHttpServer.TcpRawHttpServerOptions {
+            override fun getServerSocket() = ServerSocket(8100)
+            override fun getMaxThreads() = 1
+            override fun getAcceptQueueSize() = 1
+            override fun getMaxPipelinedRequests() = 4
+        })
+
+        server.start { _ ->
+            latch.await()
+            http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("OK"))
+        }
+
+        val request = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+        val pipelining = Socket("localhost", 8100).apply {
+            getOutputStream().write((request + request + request).toByteArray())
+            Thread.sleep(100L)
+        }
+        val queued = Socket("localhost", 8100).apply {
+            getOutputStream().write(request.toByteArray())
+            Thread.sleep(100L)
+        }
+
+        try {
+            server.rejectedConnectionCount shouldBe 0L
+
+            latch.countDown()
+
+            val inputStream = BufferedHttpInputStream(pipelining.getInputStream())
+            (1..3).map { http.parseResponse(inputStream).eagerly(true).statusCode } shouldBe listOf(200, 200, 200)
+            pipelining.close()
+            http.parseResponse(queued.getInputStream()).eagerly().statusCode shouldBe 200
+        } finally {
+            latch.countDown()
+            pipelining.close()
+            queued.close()
+            server.stop()
+        }
+    }
+
+})
@@ -0,0 +1,96 @@
+package com.athaydes.rawhttp.core.server
+
+import com.athaydes.rawhttp.core.RawHttp
+import com.athaydes.rawhttp.core.bePresent
+import com.athaydes.rawhttp.core.notBePresent
+import io.kotlintest.matchers.should
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.specs.StringSpec
+import java.io.File
+import java.nio.file.Files
+
+class StaticFileRouterTest : StringSpec({
+
+    val http = RawHttp()
+    val rootDir = Files.createTempDirectory("static-file-router").toFile().apply { deleteOnExit() }
+    val subDir = File(rootDir, "sub").apply { mkdir(); deleteOnExit() }
+    File(rootDir, "index.html").apply { writeText("<h1>Hello</h1>"); deleteOnExit() }
+    File(subDir, "style.css").apply { writeText("body {}"); deleteOnExit() }
+    File(subDir, "large.bin").apply { writeBytes(ByteArray(2048) { it.toByte() }); deleteOnExit() }
+
+    val router = StaticFileRouter(rootDir, 4096L, 1024L, 60_000L)
+
+    fun request(methodAndPath: String, vararg headers: String) =
+            http.parseRequest(methodAndPath + " HTTP/1.1\r\nHost: localhost\r\n" + headers.joinToString("\r\n"))
+
+    "Files are served with their content type and validators" {
+        val response = router.route(request("GET /sub/style.css"))!!
+
+        response.statusCode shouldBe 200
+        response.headers["Content-Type"] shouldBe listOf("text/css")
+        response.headers["Content-Length"] shouldBe listOf("7")
+        response.headers["ETag"].size shouldBe 1
+        response.headers["Last-Modified"].size shouldBe 1
+        response.body should bePresent {
+            it.eager().asString(Charsets.UTF_8) shouldBe "body {}"
+        }
+    }
+
+    "Directories are served by their index.html file" {
+        router.route(request("GET /"))!!.body should bePresent {
+            it.eager().asString(Charsets.UTF_8) shouldBe "<h1>Hello</h1>"
+        }
+    }
+
+    "Large files are streamed from disk and are not kept in the cache" {
+        val cacheSizeBefore = router.cacheSize
+        val response = router.route(request("GET /sub/large.bin"))!!
+
+        response.headers["Content-Type"] shouldBe listOf("application/octet-stream")
+        response.body should bePresent {
+            it.eager().asBytes().toList() shouldBe ByteArray(2048) { it.toByte() }.toList()
+        }
+        (router.cacheSize - cacheSizeBefore < 2048) shouldBe true
+    }
+
+    "Large files that changed since they were cached are served with their current length" {
+        val changing = File(subDir, "changing.bin").apply { writeBytes(ByteArray(2048) { 1 }); deleteOnExit() }
+        router.route(request("GET /sub/changing.bin"))!!.headers["Content-Length"] shouldBe listOf("2048")
+
+        // the cache entry is not revalidated yet, but the file is opened to be served
+        changing.writeBytes(ByteArray(3000) { 2 })
+
+        val response = router.route(request("GET /sub/changing.bin"))!!
+        response.headers["Content-Length"] shouldBe listOf("3000")
+        response.body should bePresent {
+            it.eager().asBytes().toList() shouldBe ByteArray(3000) { 2 }.toList()
+        }
+    }
+
+    "HEAD requests get no body" {
+        val response = router.route(request("HEAD /sub/style.css"))!!
+
+        response.statusCode shouldBe 200
+        response.headers["Content-Length"] shouldBe listOf("7")
+        response.body should notBePresent()
+    }
+
+    "Requests with a matching validator get a NotModified response" {
+        val etag = router.route(request("GET /sub/style.css"))!!.headers["ETag"].first()
+        val lastModified = router.route(request("GET /sub/style.css"))!!.headers["Last-Modified"].first()
+
+        router.route(request("GET /sub/style.css", "If-None-Match: \"other\", $etag"))!!.statusCode shouldBe 304
+        router.route(request("GET /sub/style.css", "If-None-Match: \"other\""))!!.statusCode shouldBe 200
+        router.route(request("GET /sub/style.css", "If-Modified-Since: $lastModified"))!!.statusCode shouldBe 304
+    }
+
+    "Files that do not exist, or are outside of the root directory, are not served" {
+        router.route(request("GET /missing.txt")) shouldBe null
+        router.route(request("GET /../../../../etc/passwd")) shouldBe null
+    }
+
+    "Only GET and HEAD requests are allowed" {
+        router.route(request("POST /sub/style.css"))!!.statusCode shouldBe 405
+    }
+
+})
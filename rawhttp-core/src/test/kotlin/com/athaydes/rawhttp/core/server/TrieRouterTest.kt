@@ -0,0 +1,97 @@
+package com.athaydes.rawhttp.core.server
+
+import com.athaydes.rawhttp.core.RawHttp
+import com.athaydes.rawhttp.core.body.StringBody
+import io.kotlintest.matchers.shouldBe
+import io.kotlintest.matchers.shouldThrow
+import io.kotlintest.specs.StringSpec
+
+class TrieRouterTest : StringSpec({
+
+    val http = RawHttp()
+
+    fun respond(text: String): TrieRouter.Handler = TrieRouter.Handler { _, params ->
+        http.parseResponse("HTTP/1.1 200 OK").replaceBody(StringBody("$text $params"))
+    }
+
+    fun request(methodAndPath: String) = http.parseRequest(methodAndPath + " HTTP/1.1\r\nHost: localhost")
+
+    fun TrieRouter.routeToText(methodAndPath: String): String? =
+            route(request(methodAndPath))?.body?.get()?.eager()?.asString(Charsets.UTF_8)
+
+    val router = TrieRouter.Builder.newBuilder()
+            .route("GET", "/", respond("root"))
+            .route("GET", "/users", respond("users"))
+            .route("POST", "/users", respond("new user"))
+            .route("GET", "/users/me", respond("me"))
+            .route("GET", "/users/{id}", respond("user"))
+            .route("GET", "/users/{id}/posts/{post}", respond("post"))
+            .route("GET", "/users/me/posts/{post}/comments", respond("my comments"))
+            .route("GET", "/files/*", respond("files"))
+            .build()
+
+    "Routes are matched by method and path, with literals taking precedence over parameters" {
+        router.routeToText("GET /") shouldBe "root {}"
+        router.routeToText("GET /users") shouldBe "users {}"
+        router.routeToText("GET /users/") shouldBe "users {}"
+        router.routeToText("POST /users") shouldBe "new user {}"
+        router.routeToText("GET /users/me") shouldBe "me {}"
+        router.routeToText("GET /users/joe") shouldBe "user {id=joe}"
+    }
+
+    "Router falls back to less specific routes when a more specific one does not match" {
+        router.routeToText("GET /users/me/posts/10") shouldBe "post {id=me, post=10}"
+        router.routeToText("GET /users/me/posts/10/comments") shouldBe "my comments {post=10}"
+    }
+
+    "Wildcards match the rest of the path" {
+        router.routeToText("GET /files") shouldBe "files {*=}"
+        router.routeToText("GET /files/a.txt") shouldBe "files {*=a.txt}"
+        router.routeToText("GET /files/docs/a.txt") shouldBe "files {*=docs/a.txt}"
+    }
+
+    "Unknown paths are not routed, and unknown methods are not allowed" {
+        router.route(request("GET /other")) shouldBe null
+        router.route(request("GET /users/joe/other")) shouldBe null
+
+        val response = router.route(request("DELETE /users"))!!
+        response.statusCode shouldBe 405
+        response.headers["Allow"] shouldBe listOf("GET, POST")
+    }
+
+    "Routes for other methods do not hide less specific routes for the request method" {
+        val methodsRouter = TrieRouter.Builder.newBuilder()
+                .route("GET", "/users/me", respond("me"))
+                .route("DELETE", "/users/{id}", respond("delete"))
+                .route("PUT", "/users/*", respond("put"))
+                .build()
+
+        methodsRouter.routeToText("GET /users/me") shouldBe "me {}"
+        methodsRouter.routeToText("DELETE /users/me") shouldBe "delete {id=me}"
+        methodsRouter.routeToText("PUT /users/me") shouldBe "put {*=me}"
+
+        val response = methodsRouter.route(request("POST /users/me"))!!
+        response.statusCode shouldBe 405
+        response.headers["Allow"] shouldBe listOf("GET, DELETE, PUT")
+    }
+
+    "Invalid routes are rejected" {
+        shouldThrow<IllegalArgumentException> {
+            TrieRouter.Builder.newBuilder().route("GET", "users", respond(""))
+        }
+        shouldThrow<IllegalArgumentException> {
+            TrieRouter.Builder.newBuilder().route("GET", "/files/*/a", respond(""))
+        }
+        shouldThrow<IllegalArgumentException> {
+            TrieRouter.Builder.newBuilder()
+                    .route("GET", "/users/{id}", respond(""))
+                    .route("GET", "/users/{name}/posts", respond(""))
+        }
+        shouldThrow<IllegalArgumentException> {
+            TrieRouter.Builder.newBuilder()
+                    .route("GET", "/users", respond(""))
+                    .route("GET", "/users/", respond(""))
+        }
+    }
+
+})